@@ -0,0 +1,133 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.zqc.opencc.android.lib.ConversionType;
+import com.zqc.opencc.android.lib.NativeConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmark of the native OpenCC conversion of all the real lyrics text files, for every ConversionType;
+ * using the host build of libChineseConverter and the app openccdata dictionaries.
+ *
+ * The cold case covers the converter creation i.e. the config and dictionaries loading, plus the first
+ * conversion of a single hymn lyrics. The warm cases convert the whole corpus with the converter already
+ * loaded, either one jni call per hymn lyrics or all in a single batch call.
+ *
+ * The assets directory is given in the system property hymnchtv.assets; see benchmark build.gradle.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ConverterBenchmark {
+    /* The lyrics file name prefix in the search display order */
+    private static final String[] HYMN_PREFIX = {"db", "bb", "xb", "xg", "yb", "er"};
+
+    /* All the ConversionType values are benchmarked unless given with the jmh -p option */
+    @Param
+    public ConversionType conversionType;
+
+    private String mDataFolder;
+    private String[] mCorpus;
+    private long mHandle;
+
+    @Setup
+    public void setup() throws IOException {
+        File assetsDir = new File(System.getProperty("hymnchtv.assets"));
+        mDataFolder = new File(assetsDir, "openccdata").getAbsolutePath();
+        mCorpus = readCorpus(assetsDir);
+
+        mHandle = NativeConverter.create(conversionType.getValue(), mDataFolder);
+        if (mHandle == 0) {
+            throw new IllegalStateException("Failed to create converter: " + conversionType);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        NativeConverter.release(mHandle);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 10)
+    public String cold() {
+        long handle = NativeConverter.create(conversionType.getValue(), mDataFolder);
+        try {
+            return NativeConverter.convert(handle, new CharSequence[]{mCorpus[0]})[0];
+        } finally {
+            NativeConverter.release(handle);
+        }
+    }
+
+    @Benchmark
+    public void warmSingle(Blackhole blackhole) {
+        for (String lyrics : mCorpus) {
+            blackhole.consume(NativeConverter.convert(mHandle, new CharSequence[]{lyrics}));
+        }
+    }
+
+    @Benchmark
+    public String[] warmBatch() {
+        return NativeConverter.convert(mHandle, mCorpus);
+    }
+
+    /**
+     * Read all the lyrics text files in the assets directory.
+     */
+    private static String[] readCorpus(File assetsDir) throws IOException {
+        List<String> corpus = new ArrayList<>();
+        for (String prefix : HYMN_PREFIX) {
+            File[] files = new File(assetsDir, "lyrics_" + prefix + "_text").listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.getName().endsWith(".txt")) {
+                        corpus.add(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        }
+        return corpus.toArray(new String[0]);
+    }
+}
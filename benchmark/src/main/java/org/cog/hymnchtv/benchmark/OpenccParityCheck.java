@@ -0,0 +1,127 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.benchmark;
+
+import com.zqc.opencc.android.lib.NativeConverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cog.hymnchtv.build.LyricsSource;
+import org.cog.hymnchtv.build.OpenccConverter;
+
+/**
+ * Check the build time OpenccConverter used for the pre-converted lyrics packs against the native OpenCC
+ * library, i.e. the host build of libChineseConverter from the same jni sources as the app. Every lyrics text is
+ * converted in the same way as the LyricsPackBuilder, with each of the pre-converted OpenCC configs.
+ *
+ * All the mismatched hymns are written to the report file; exits with error if there is any mismatch.
+ *
+ * Usage: OpenccParityCheck &lt;assetsDir> &lt;reportFile>
+ *
+ * @author Eng Chong Meng
+ */
+public class OpenccParityCheck {
+    /* The OpenCC configs of the pre-converted lyrics packs; see hymnchtv build.gradle generateConvertedLyricsPack */
+    private static final String[] CONFIGS = {"s2t", "s2tw", "s2hk"};
+
+    /* Length of the text shown before and after the first mismatch */
+    private static final int CONTEXT_LENGTH = 16;
+
+    public static void main(String[] args) throws IOException {
+        File assetsDir = new File(args[0]);
+        File reportFile = new File(args[1]);
+
+        // Build the lyrics text as in LyricsPackBuilder#addLyrics()
+        List<String> hymnIds = new ArrayList<>();
+        List<String> corpus = new ArrayList<>();
+        new LyricsSource(assetsDir).forEach((typeIdx, hymnNo, lines) -> {
+            StringBuilder text = new StringBuilder();
+            for (String line : lines) {
+                text.append(line).append('\n');
+            }
+            hymnIds.add(LyricsSource.HYMN_PREFIX[typeIdx] + hymnNo);
+            corpus.add(text.toString());
+        });
+
+        String dataFolder = new File(assetsDir, "openccdata").getAbsolutePath();
+        String[] texts = corpus.toArray(new String[0]);
+        int mismatches = 0;
+
+        File parent = reportFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory: " + parent);
+        }
+
+        try (PrintWriter report = new PrintWriter(reportFile, StandardCharsets.UTF_8)) {
+            for (String config : CONFIGS) {
+                OpenccConverter converter = OpenccConverter.create(assetsDir, config);
+                long handle = NativeConverter.create(config + ".json", dataFolder);
+                if (handle == 0) {
+                    throw new IOException("Failed to create the native converter: " + config);
+                }
+
+                String[] expected;
+                try {
+                    expected = NativeConverter.convert(handle, texts);
+                } finally {
+                    NativeConverter.release(handle);
+                }
+
+                int count = 0;
+                for (int i = 0; i < texts.length; i++) {
+                    String actual = converter.convert(texts[i]);
+                    if (!actual.equals(expected[i])) {
+                        report.printf("%s %s: %s%n", config, hymnIds.get(i), getMismatch(expected[i], actual));
+                        count++;
+                    }
+                }
+                report.printf("%s: %d of %d hymns mismatched%n", config, count, texts.length);
+                System.out.printf("%s: %d of %d hymns mismatched%n", config, count, texts.length);
+                mismatches += count;
+            }
+        }
+
+        if (mismatches != 0) {
+            System.err.printf("OpenccConverter differs from the native OpenCC conversion; see %s%n", reportFile);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Get the text around the first mismatch for the report.
+     *
+     * @param expected the native converted text
+     * @param actual the OpenccConverter converted text
+     *
+     * @return the native and the OpenccConverter text around the first mismatch
+     */
+    private static String getMismatch(String expected, String actual) {
+        int idx = 0;
+        while (idx < expected.length() && idx < actual.length() && expected.charAt(idx) == actual.charAt(idx)) {
+            idx++;
+        }
+        int start = Math.max(0, idx - CONTEXT_LENGTH);
+        return String.format("native \"%s\" <> build \"%s\"",
+                expected.substring(start, Math.min(expected.length(), idx + CONTEXT_LENGTH)).replace('\n', ' '),
+                actual.substring(start, Math.min(actual.length(), idx + CONTEXT_LENGTH)).replace('\n', ' '));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.cog.hymnchtv.search.LyricsSearchEngine;
+import org.cog.hymnchtv.search.LyricsSearchEngine.HymnBook;
+import org.cog.hymnchtv.search.SearchResult;
+
+/**
+ * Cores vs latency benchmark of the LyricsSearchEngine full scan over the real lyrics text files.
+ * Each lyrics file is read from disk on every access, same as the app asset access without the LyricsIndex.
+ *
+ * Usage: SearchBenchmark &lt;assetsDir> [runs]
+ *
+ * @author Eng Chong Meng
+ */
+public class SearchBenchmark {
+    /* The lyrics file name prefix in the search display order */
+    private static final String[] HYMN_PREFIX = {"db", "bb", "xb", "xg", "yb", "er"};
+
+    /* Search strings from a single character to one that has no match */
+    private static final String[] QUERIES = {"主", "耶稣", "荣耀归于", "哈利路亚赞美"};
+
+    private static final int WARMUP_RUNS = 3;
+
+    public static void main(String[] args) throws IOException {
+        File assetsDir = new File(args[0]);
+        int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+        HymnBook[] hymnBooks = getHymnBooks(assetsDir);
+        LyricsSearchEngine.LyricsReader reader = (hymnType, hymnNo) -> {
+            File file = new File(assetsDir, "lyrics_" + hymnType + "_text/" + hymnType + hymnNo + ".txt");
+            try {
+                return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                return null;
+            }
+        };
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        // Include the thread counts over the host cores to show the effect of over-subscription
+        TreeSet<Integer> threadCounts = new TreeSet<>(Arrays.asList(1, 2, 4, 8, cores));
+
+        System.out.printf("Host cores: %d; runs per case: %d; median (p90) latency in ms%n", cores, runs);
+        System.out.printf("%-14s %-7s", "query", "matches");
+        for (int threads : threadCounts) {
+            System.out.printf(" %14s", threads + " threads");
+        }
+        System.out.println();
+
+        for (String query : QUERIES) {
+            // Search for all matches, so the full corpus is always scanned
+            int expected = -1;
+            StringBuilder row = new StringBuilder();
+            for (int threads : threadCounts) {
+                LyricsSearchEngine engine = new LyricsSearchEngine(threads);
+                long[] times = new long[runs];
+                for (int i = -WARMUP_RUNS; i < runs; i++) {
+                    long start = System.nanoTime();
+                    int count = engine.search(hymnBooks, null, reader, LyricsSearchEngine.getTextMatcher(query),
+                            Integer.MAX_VALUE, NO_OP_CALLBACK);
+                    long time = System.nanoTime() - start;
+                    if (i >= 0)
+                        times[i] = time;
+
+                    if (expected == -1)
+                        expected = count;
+                    else if (expected != count)
+                        throw new IllegalStateException("Inconsistent search results count for threads: " + threads);
+                }
+                engine.shutdown();
+
+                Arrays.sort(times);
+                row.append(String.format(" %6.1f (%5.1f)", times[runs / 2] / 1e6, times[(runs * 9) / 10] / 1e6));
+            }
+            System.out.printf("%-14s %-7d%s%n", query, expected, row);
+        }
+    }
+
+    /**
+     * Get all the hymn books with the hymnNo of the lyrics text files found in the assets directory.
+     */
+    private static HymnBook[] getHymnBooks(File assetsDir) {
+        HymnBook[] hymnBooks = new HymnBook[HYMN_PREFIX.length];
+        for (int typeIdx = 0; typeIdx < HYMN_PREFIX.length; typeIdx++) {
+            String prefix = HYMN_PREFIX[typeIdx];
+            Pattern pattern = Pattern.compile("^" + prefix + "([0-9]+)\\.txt$");
+            List<Integer> hymnNos = new ArrayList<>();
+
+            File[] files = new File(assetsDir, "lyrics_" + prefix + "_text").listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    Matcher matcher = pattern.matcher(file.getName());
+                    if (matcher.matches()) {
+                        hymnNos.add(Integer.parseInt(matcher.group(1)));
+                    }
+                }
+            }
+            hymnBooks[typeIdx] = new HymnBook(typeIdx, prefix, hymnNos.stream().sorted().mapToInt(i -> i).toArray());
+        }
+        return hymnBooks;
+    }
+
+    private static final LyricsSearchEngine.SearchCallback NO_OP_CALLBACK = new LyricsSearchEngine.SearchCallback() {
+        @Override
+        public void onBookResults(HymnBook hymnBook, List<SearchResult> results) {
+        }
+
+        @Override
+        public void onProgress(int progress) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+}
@@ -0,0 +1,34 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+/**
+ * Host stub of the android SystemClock for the unit tests of the app pure java components.
+ *
+ * @author Eng Chong Meng
+ */
+public final class SystemClock {
+    private SystemClock() {
+    }
+
+    /**
+     * @return the monotonic time in ms
+     */
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+}
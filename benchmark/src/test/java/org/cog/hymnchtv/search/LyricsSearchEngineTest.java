@@ -0,0 +1,193 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cog.hymnchtv.search.LyricsSearchEngine.HymnBook;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests of the LyricsSearchEngine search and rank modes with the LyricsRanker, over an in-memory corpus.
+ *
+ * @author Eng Chong Meng
+ */
+public class LyricsSearchEngineTest {
+    /* Filler lines to move the next line past the weighted first lines of the LyricsRanker */
+    private static final String FILLER = "一\n二\n三\n四\n五\n六\n七\n";
+
+    private static final HymnBook[] HYMN_BOOKS = {
+            new HymnBook(0, "db", new int[]{1, 2, 3, 4, 5}),
+            new HymnBook(1, "bb", new int[]{1, 2})
+    };
+
+    private final Map<String, String> mCorpus = new HashMap<>();
+
+    private final LyricsSearchEngine mEngine = new LyricsSearchEngine(2);
+
+    public LyricsSearchEngineTest() {
+        // db1: the term in the title; db3: twice in a body line; db2, db4 and bb1: once in a body line
+        mCorpus.put("db1", "1\n赞美主\n" + FILLER);
+        mCorpus.put("db2", "2\n标题\n" + FILLER + "主在这里\n");
+        mCorpus.put("db3", "3\n标题\n" + FILLER + "主啊主\n");
+        mCorpus.put("db4", "4\n标题\n" + FILLER + "主在这里\n");
+        mCorpus.put("db5", "5\n标题\n" + FILLER);
+        mCorpus.put("bb1", "1\n标题\n" + FILLER + "主在这里\n");
+        mCorpus.put("bb2", "2\n标题\n" + FILLER);
+    }
+
+    @After
+    public void tearDown() {
+        mEngine.shutdown();
+    }
+
+    @Test
+    public void testRankOrder() {
+        ResultCollector collector = new ResultCollector();
+        int count = mEngine.rank(HYMN_BOOKS, null, this::getLyrics, new LyricsRanker("主"), 100, null, collector);
+
+        // Descending score, and the same score results in book then hymnNo order
+        assertEquals(5, count);
+        assertEquals("db1 db3 db2 db4 bb1", collector.getHymnIds());
+        for (int i = 1; i < collector.results.size(); i++) {
+            assertTrue(collector.results.get(i - 1).score >= collector.results.get(i).score);
+        }
+    }
+
+    @Test
+    public void testRankPages() {
+        LyricsSearchEngine.RankCursor cursor = new LyricsSearchEngine.RankCursor();
+        LyricsRanker ranker = new LyricsRanker("主");
+
+        ResultCollector collector = new ResultCollector();
+        assertEquals(2, mEngine.rank(HYMN_BOOKS, null, this::getLyrics, ranker, 2, cursor, collector));
+        assertEquals("db1 db3", collector.getHymnIds());
+        assertTrue(cursor.hasMore());
+
+        collector = new ResultCollector();
+        assertEquals(2, mEngine.rank(HYMN_BOOKS, null, this::getLyrics, ranker, 2, cursor, collector));
+        assertEquals("db2 db4", collector.getHymnIds());
+        assertTrue(cursor.hasMore());
+
+        collector = new ResultCollector();
+        assertEquals(1, mEngine.rank(HYMN_BOOKS, null, this::getLyrics, ranker, 2, cursor, collector));
+        assertEquals("bb1", collector.getHymnIds());
+        assertFalse(cursor.hasMore());
+    }
+
+    @Test
+    public void testRankMatchOffset() {
+        ResultCollector collector = new ResultCollector();
+        mEngine.rank(HYMN_BOOKS, null, this::getLyrics, new LyricsRanker("主"), 100, null, collector);
+
+        // The match offset is the start of the best scored line
+        for (SearchResult result : collector.results) {
+            String hymnId = result.hymnType + result.hymnNo;
+            String lyrics = mCorpus.get(hymnId);
+            String line = lyrics.substring(result.matchOffset, lyrics.indexOf('\n', result.matchOffset));
+            assertEquals(hymnId, hymnId.equals("db1") ? "赞美主" : hymnId.equals("db3") ? "主啊主" : "主在这里", line);
+        }
+    }
+
+    @Test
+    public void testSearchOrder() {
+        ResultCollector collector = new ResultCollector();
+        int count = mEngine.search(HYMN_BOOKS, null, this::getLyrics, LyricsSearchEngine.getTextMatcher("主在"),
+                Integer.MAX_VALUE, collector);
+        assertEquals(3, count);
+        assertEquals("db2 db4 bb1", collector.getHymnIds());
+
+        // The search stops at the max results count
+        collector = new ResultCollector();
+        assertEquals(2, mEngine.search(HYMN_BOOKS, null, this::getLyrics, LyricsSearchEngine.getTextMatcher("主在"),
+                2, collector));
+        assertEquals("db2 db4", collector.getHymnIds());
+    }
+
+    @Test
+    public void testSearchFilter() {
+        ResultCollector collector = new ResultCollector();
+        mEngine.search(HYMN_BOOKS, (typeIdx, hymnNo) -> typeIdx == 1, this::getLyrics,
+                LyricsSearchEngine.getTextMatcher("主"), Integer.MAX_VALUE, collector);
+        assertEquals("bb1", collector.getHymnIds());
+    }
+
+    @Test
+    public void testMatchOffset() {
+        // The matched line offset is independent of the hymn number line length
+        assertEquals(2, LyricsSearchEngine.getMatchOffset("7\n主啊\n", "主"));
+        assertEquals(5, LyricsSearchEngine.getMatchOffset("1024\n主啊\n", "主"));
+        assertEquals(8, LyricsSearchEngine.getMatchOffset("1024\n标题\n我主\n", "主"));
+
+        // The hymn number line is never matched
+        assertEquals(-1, LyricsSearchEngine.getMatchOffset("1024\n标题\n", "10"));
+        assertEquals(-1, LyricsSearchEngine.getMatchOffset("1024", "10"));
+        assertEquals(-1, LyricsSearchEngine.getMatchOffset(null, "主"));
+    }
+
+    @Test
+    public void testMatchText() {
+        String lyrics = "1024\n标题\n我主\n";
+        assertEquals("我主\n", LyricsSearchEngine.getMatchText(lyrics, LyricsSearchEngine.getMatchOffset(lyrics, "主")));
+        assertNull(LyricsSearchEngine.getMatchText(lyrics, -1));
+        assertNull(LyricsSearchEngine.getMatchText(null, 0));
+    }
+
+    private String getLyrics(String hymnType, int hymnNo) {
+        return mCorpus.get(hymnType + hymnNo);
+    }
+
+    /**
+     * Collect all the results of a search in their delivered order.
+     */
+    private static class ResultCollector implements LyricsSearchEngine.SearchCallback {
+        final List<SearchResult> results = new ArrayList<>();
+
+        @Override
+        public void onBookResults(HymnBook hymnBook, List<SearchResult> bookResults) {
+            results.addAll(bookResults);
+        }
+
+        @Override
+        public void onProgress(int progress) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        String getHymnIds() {
+            StringBuilder hymnIds = new StringBuilder();
+            for (SearchResult result : results) {
+                if (hymnIds.length() > 0)
+                    hymnIds.append(' ');
+                hymnIds.append(result.hymnType).append(result.hymnNo);
+            }
+            return hymnIds.toString();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.service.download;
+
+import static org.cog.hymnchtv.service.download.DownloadChunk.CHUNK_MIN_SIZE;
+import static org.cog.hymnchtv.service.download.DownloadChunk.MAX_CHUNKS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the DownloadJob chunks split, and the chunks progress save and resume.
+ *
+ * @author Eng Chong Meng
+ */
+public class DownloadChunkTest {
+    @Test
+    public void testSplitNotRanged() {
+        List<DownloadChunk> chunks = DownloadChunk.split(10 * CHUNK_MIN_SIZE, false);
+        assertEquals(1, chunks.size());
+        assertChunk(chunks.get(0), 0, 10 * CHUNK_MIN_SIZE - 1, 0);
+
+        // Unknown file size is downloaded till the end of stream
+        chunks = DownloadChunk.split(-1, false);
+        assertEquals(1, chunks.size());
+        assertChunk(chunks.get(0), 0, -1, 0);
+        assertFalse(chunks.get(0).isComplete());
+    }
+
+    @Test
+    public void testSplitRanged() {
+        assertEquals(1, DownloadChunk.split(1, true).size());
+        assertEquals(1, DownloadChunk.split(2 * CHUNK_MIN_SIZE - 1, true).size());
+        assertEquals(2, DownloadChunk.split(2 * CHUNK_MIN_SIZE, true).size());
+        assertEquals(MAX_CHUNKS, DownloadChunk.split(100 * CHUNK_MIN_SIZE, true).size());
+
+        // The chunks cover all the file bytes without overlap, for any file size
+        for (long totalBytes : new long[]{1, CHUNK_MIN_SIZE, 5 * CHUNK_MIN_SIZE + 3, 100 * CHUNK_MIN_SIZE + 7}) {
+            List<DownloadChunk> chunks = DownloadChunk.split(totalBytes, true);
+            long next = 0;
+            for (DownloadChunk chunk : chunks) {
+                assertEquals(next, chunk.start);
+                assertEquals(chunk.start, chunk.position);
+                assertTrue(chunk.end >= chunk.start);
+                next = chunk.end + 1;
+            }
+            assertEquals(totalBytes, next);
+        }
+    }
+
+    @Test
+    public void testStateRoundTrip() {
+        List<DownloadChunk> chunks = DownloadChunk.split(5 * CHUNK_MIN_SIZE, true);
+        chunks.get(0).position = chunks.get(0).end + 1;
+        chunks.get(1).position = chunks.get(1).start + 1000;
+
+        List<DownloadChunk> resumed = DownloadChunk.parse(DownloadChunk.format(chunks));
+        assertEquals(chunks.size(), resumed.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            assertChunk(resumed.get(i), chunks.get(i).start, chunks.get(i).end, chunks.get(i).position);
+        }
+
+        // Only the incomplete chunks are to be resumed
+        assertTrue(resumed.get(0).isComplete());
+        assertFalse(resumed.get(1).isComplete());
+        assertEquals(chunks.get(0).end + 1 + 1000, DownloadChunk.getDownloadedBytes(resumed));
+    }
+
+    @Test
+    public void testStateUnknownSize() {
+        List<DownloadChunk> chunks = DownloadChunk.split(-1, false);
+        chunks.get(0).position = 12345;
+
+        List<DownloadChunk> resumed = DownloadChunk.parse(DownloadChunk.format(chunks));
+        assertChunk(resumed.get(0), 0, -1, 12345);
+        assertEquals(12345, DownloadChunk.getDownloadedBytes(resumed));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseInvalidFields() {
+        DownloadChunk.parse("0:99");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseInvalidNumber() {
+        DownloadChunk.parse("0:99:x");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseInvalidPosition() {
+        DownloadChunk.parse("100:199:201");
+    }
+
+    private static void assertChunk(DownloadChunk chunk, long start, long end, long position) {
+        assertEquals(start, chunk.start);
+        assertEquals(end, chunk.end);
+        assertEquals(position, chunk.position);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.service.download;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the ThroughputEstimator moving average decay, and the transfer restart.
+ *
+ * @author Eng Chong Meng
+ */
+public class ThroughputEstimatorTest {
+    private static final long TIME_CONSTANT = 3000;
+
+    @Test
+    public void testSteadyRate() {
+        ThroughputEstimator estimator = new ThroughputEstimator(TIME_CONSTANT);
+        estimator.update(0, 10000, 0);
+        assertEquals(0, estimator.getBytesPerSecond());
+        assertEquals(-1, estimator.getRemainingSeconds());
+
+        estimator.update(1000, 10000, 1000);
+        estimator.update(2000, 10000, 2000);
+        assertEquals(1000, estimator.getBytesPerSecond());
+        assertEquals(8, estimator.getRemainingSeconds());
+    }
+
+    @Test
+    public void testDecay() {
+        ThroughputEstimator estimator = new ThroughputEstimator(TIME_CONSTANT);
+        estimator.update(0, -1, 0);
+        estimator.update(1000, -1, 1000);
+
+        // The rate decays to 1/e of the old rate after one time constant of stalled transfer
+        estimator.update(1000, -1, 1000 + TIME_CONSTANT);
+        assertEquals((long) (1000 / Math.E), estimator.getBytesPerSecond());
+        assertEquals(-1, estimator.getRemainingSeconds());
+    }
+
+    @Test
+    public void testDecayIndependentOfUpdateRate() {
+        ThroughputEstimator estimator1 = new ThroughputEstimator(TIME_CONSTANT);
+        ThroughputEstimator estimator2 = new ThroughputEstimator(TIME_CONSTANT);
+        for (ThroughputEstimator estimator : new ThroughputEstimator[]{estimator1, estimator2}) {
+            estimator.update(0, -1, 0);
+            estimator.update(1000, -1, 1000);
+        }
+
+        // The same stalled period in one or in many progress updates
+        estimator1.update(1000, -1, 4000);
+        for (long time = 1100; time <= 4000; time += 100) {
+            estimator2.update(1000, -1, time);
+        }
+        assertEquals(estimator1.getBytesPerSecond(), estimator2.getBytesPerSecond(), 1);
+    }
+
+    @Test
+    public void testRestart() {
+        ThroughputEstimator estimator = new ThroughputEstimator(TIME_CONSTANT);
+        estimator.update(0, 10000, 0);
+        estimator.update(5000, 10000, 1000);
+
+        // The transfer restarts from a lower position; no negative rate is taken
+        estimator.update(0, 10000, 2000);
+        assertEquals(0, estimator.getTransferredBytes());
+        assertEquals(5000, estimator.getBytesPerSecond());
+
+        estimator.update(5000, 10000, 3000);
+        assertEquals(5000, estimator.getBytesPerSecond());
+        assertEquals(1, estimator.getRemainingSeconds());
+    }
+
+    @Test
+    public void testReset() {
+        ThroughputEstimator estimator = new ThroughputEstimator(TIME_CONSTANT);
+        estimator.update(0, 10000, 0);
+        estimator.update(1000, 10000, 1000);
+
+        estimator.reset();
+        assertEquals(0, estimator.getTransferredBytes());
+        assertEquals(-1, estimator.getTotalBytes());
+        assertEquals(0, estimator.getBytesPerSecond());
+        assertEquals(-1, estimator.getRemainingSeconds());
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.build;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Build the character fold table that maps each character to its canonical search form: the traditional
+ * and the regional variant characters are folded to simplified Chinese, and the special hymns characters
+ * e.g. 祂 are folded to their common form. Both the lyrics index and the user search string are folded with
+ * the same table, so the search matches in either script without the OpenCC conversion of the search string.
+ *
+ * The mapping is taken from the app OpenCC dictionaries, with only the one-to-one BMP characters mapping;
+ * so the folded text always has the same length as the original text.
+ *
+ * The binary file format (DataOutputStream encoding):
+ * <pre>
+ * int     MAGIC ('HYCF')
+ * int     VERSION
+ * int     count
+ * char[]  keys[count]: sorted
+ * char[]  values[count]: the folded character of each key
+ * </pre>
+ *
+ * @author Eng Chong Meng
+ */
+public class CharFoldBuilder {
+    public static final int MAGIC = 0x48594346;
+    public static final int VERSION = 1;
+
+    /*
+     * The OpenCC dictionaries used for the fold; the traditional to simplified mapping is added first, so the
+     * regional variants are folded to simplified too, while a simplified character is never folded to a variant.
+     */
+    private static final String[] OPENCC_DICTS = {
+            "TSCharacters.ocd2", "TWVariantsRev.ocd2", "HKVariantsRev.ocd2"
+    };
+
+    /* The special hymns characters variants and their common form */
+    private static final String[][] HYMN_VARIANTS = {
+            {"祂", "他"},
+    };
+
+    private final TreeMap<Character, Character> mFolds = new TreeMap<>();
+
+    /* All the simplified characters in the OpenCC dictionary values; these are never folded e.g. 么 */
+    private final Set<Character> mSimplified = new HashSet<>();
+
+    /**
+     * Generate the char fold table file from the OpenCC dictionaries in the given assets directory.
+     *
+     * @param args args[0]: the app assets directory; args[1]: the output char fold file
+     */
+    public static void main(String[] args) throws IOException {
+        build(new File(args[0]), new File(args[1]));
+    }
+
+    /**
+     * Generate the char fold table file from the OpenCC dictionaries in the given assets directory.
+     *
+     * @param assetsDir the app assets directory containing the openccdata sub-dir
+     * @param outFile the generated char fold file
+     */
+    public static void build(File assetsDir, File outFile) throws IOException {
+        create(assetsDir).write(outFile);
+    }
+
+    /**
+     * Create the char fold table from the OpenCC dictionaries in the given assets directory.
+     *
+     * @param assetsDir the app assets directory containing the openccdata sub-dir
+     *
+     * @return the CharFoldBuilder
+     */
+    public static CharFoldBuilder create(File assetsDir) throws IOException {
+        CharFoldBuilder builder = new CharFoldBuilder();
+        builder.addSimplified(OpenccDictReader.read(new File(assetsDir, "openccdata/" + OPENCC_DICTS[0])));
+        for (int i = 0; i < OPENCC_DICTS.length; i++) {
+            builder.addFolds(OpenccDictReader.read(new File(assetsDir, "openccdata/" + OPENCC_DICTS[i])), i > 0);
+        }
+        for (String[] variant : HYMN_VARIANTS) {
+            builder.addFold(variant[0], variant[1], false);
+        }
+        return builder;
+    }
+
+    private void addSimplified(Map<String, String[]> entries) {
+        for (String[] values : entries.values()) {
+            for (String value : values) {
+                if (value.length() == 1)
+                    mSimplified.add(value.charAt(0));
+            }
+        }
+    }
+
+    private void addFolds(Map<String, String[]> entries, boolean isVariant) {
+        for (Map.Entry<String, String[]> entry : entries.entrySet()) {
+            // Use the first i.e. the most common conversion
+            addFold(entry.getKey(), entry.getValue()[0], isVariant);
+        }
+    }
+
+    /**
+     * Add the one-to-one BMP character mapping to the fold table; the existing folds to the key are
+     * chained to the new value, so every character is folded in one single lookup.
+     *
+     * @param key the character to fold
+     * @param value the folded character
+     * @param isVariant true if the value is a traditional character; the mapping is added only if the value
+     * has a simplified form, so a simplified character is not folded to a traditional only character e.g. 抬
+     */
+    private void addFold(String key, String value, boolean isVariant) {
+        if (key.length() != 1 || value.length() != 1 || key.equals(value))
+            return;
+
+        char from = key.charAt(0);
+        char to = fold(value.charAt(0));
+        if (from == to || mFolds.containsKey(from) || mSimplified.contains(from)
+                || (isVariant && to == value.charAt(0)))
+            return;
+
+        for (Map.Entry<Character, Character> entry : mFolds.entrySet()) {
+            if (entry.getValue() == from)
+                entry.setValue(to);
+        }
+        mFolds.put(from, to);
+    }
+
+    public char fold(char c) {
+        Character value = mFolds.get(c);
+        return (value == null) ? c : value;
+    }
+
+    /**
+     * Fold all the characters in the given text.
+     *
+     * @param text the text to fold
+     *
+     * @return the folded text, with the same length as the given text
+     */
+    public String fold(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Write out the char fold table in the binary format as described in the class doc.
+     *
+     * @param outFile the output char fold file
+     */
+    public void write(File outFile) throws IOException {
+        File parent = outFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory: " + parent);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mFolds.size());
+            for (char key : mFolds.keySet()) {
+                out.writeChar(key);
+            }
+            for (char value : mFolds.values()) {
+                out.writeChar(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.build;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build the hymn metadata catalog with one record per hymn, so the app can get the hymn title, category,
+ * first phrase, English hymn number and the lyrics score page count without parsing the lyrics or toc files.
+ *
+ * The English hymn number is taken from the lyrics_toc/toc_xx_ch2eng.txt files; and the page count is the number
+ * of the lyrics score png files of the hymn i.e. xx123.png, xx123a.png, xx123b.png etc.
+ *
+ * The binary file format (DataOutputStream encoding):
+ * <pre>
+ * int     MAGIC ('HYCT')
+ * int     VERSION
+ * int     count
+ * int[]   hymnKeys[count]: sorted; (hymnType index << 12) | hymnNo
+ * short[] engNos[count]: the English hymn number; 0 if none
+ * byte[]  pages[count]: the lyrics score page count
+ * int[]   bounds[FIELD_COUNT * count + 1]: the start of each record field in the text block;
+ *         the fields of each record are in the order of category, title, titleInfo and firstPhrase
+ * int     charCount
+ * char[]  text[charCount]
+ * </pre>
+ *
+ * @author Eng Chong Meng
+ */
+public class HymnCatalogBuilder {
+    public static final int MAGIC = 0x48594354;
+    public static final int VERSION = 1;
+
+    public static final int FIELD_COUNT = 4;
+
+    /* Max number of lyrics score pages for a hymn i.e. xx123.png to xx123d.png */
+    private static final int PAGE_MAX = 5;
+
+    private final File mAssetsDir;
+
+    private final List<Integer> mHymnKeys = new ArrayList<>();
+    private final List<Integer> mEngNos = new ArrayList<>();
+    private final List<Integer> mPages = new ArrayList<>();
+    private final List<Integer> mBounds = new ArrayList<>();
+    private final StringBuilder mText = new StringBuilder();
+
+    /* The Chinese to English hymn number cross-reference of each hymnType */
+    private final Map<Integer, Map<Integer, Integer>> mCh2Eng = new HashMap<>();
+
+    public HymnCatalogBuilder(File assetsDir) {
+        mAssetsDir = assetsDir;
+    }
+
+    /**
+     * Generate the hymn catalog file from the lyrics and the toc files in the given assets directory.
+     *
+     * @param args args[0]: the app assets directory; args[1]: the output catalog file
+     */
+    public static void main(String[] args) throws IOException {
+        build(new File(args[0]), new File(args[1]));
+    }
+
+    /**
+     * Generate the hymn catalog file from the lyrics and the toc files in the given assets directory.
+     *
+     * @param assetsDir the app assets directory containing the lyrics_xx_text and lyrics_toc sub-dirs
+     * @param outFile the generated catalog file
+     */
+    public static void build(File assetsDir, File outFile) throws IOException {
+        HymnCatalogBuilder builder = new HymnCatalogBuilder(assetsDir);
+        new LyricsSource(assetsDir).forEach(builder::addHymn);
+        builder.write(outFile);
+    }
+
+    /**
+     * Add the catalog record of the given hymn; must be called in the hymn key order.
+     *
+     * @param typeIdx the hymnType index
+     * @param hymnNo the hymn number
+     * @param lines the lyrics text lines
+     */
+    public void addHymn(int typeIdx, int hymnNo, String[] lines) throws IOException {
+        String category = "";
+        String title = (lines.length < 2) ? "" : lines[1].trim();
+        int idx = title.lastIndexOf("－");
+        if (idx != -1) {
+            category = title.substring(0, idx);
+            title = title.substring(idx + 1);
+        }
+
+        // The third line may contain additional info e.g.（诗篇二篇）（英1094）
+        String titleInfo = "";
+        if (lines.length > 2 && (idx = lines[2].indexOf("（")) != -1) {
+            titleInfo = lines[2].substring(idx).trim();
+        }
+
+        Integer engNo = getCh2Eng(typeIdx).get(hymnNo);
+
+        mHymnKeys.add((typeIdx << 12) | hymnNo);
+        mEngNos.add((engNo == null) ? 0 : engNo);
+        mPages.add(getPageCount(typeIdx, hymnNo));
+        for (String field : new String[]{category, title, titleInfo, getFirstPhrase(lines)}) {
+            mBounds.add(mText.length());
+            mText.append(field);
+        }
+    }
+
+    /**
+     * Do the best guess to find the first phrase of the lyrics, with at least 6 characters if possible;
+     * same as the app ContentHandler#getHymnInfo().
+     *
+     * @param lines the lyrics text lines
+     *
+     * @return the first phrase of the lyrics
+     */
+    public static String getFirstPhrase(String[] lines) {
+        StringBuilder phrase = new StringBuilder();
+        for (String s : LyricsSource.getFirstLine(lines).split("[，、‘’！：；。？]")) {
+            if (phrase.length() < 6) {
+                phrase.append(s);
+            }
+        }
+        return phrase.toString();
+    }
+
+    /**
+     * Get the number of the lyrics score pages of the given hymn; the 儿童诗歌 score has no prefix.
+     */
+    private int getPageCount(int typeIdx, int hymnNo) {
+        String prefix = LyricsSource.HYMN_PREFIX[typeIdx];
+        File scoreDir = new File(mAssetsDir, "lyrics_" + prefix + "_score");
+        String scoreName = ("er".equals(prefix) ? "" : prefix) + hymnNo;
+
+        int pages = 1;
+        while (pages < PAGE_MAX && new File(scoreDir, scoreName + (char) ('a' + pages - 1) + ".png").exists()) {
+            pages++;
+        }
+        return pages;
+    }
+
+    /**
+     * Get the Chinese to English hymn number cross-reference of the given hymnType from the toc ch2eng file.
+     *
+     * @param typeIdx the hymnType index
+     *
+     * @return the hymnNo to English hymn number map; empty if none
+     */
+    private Map<Integer, Integer> getCh2Eng(int typeIdx) throws IOException {
+        Map<Integer, Integer> xRef = mCh2Eng.get(typeIdx);
+        if (xRef == null) {
+            xRef = new HashMap<>();
+            File xRefFile = new File(mAssetsDir, "lyrics_toc/toc_" + LyricsSource.HYMN_PREFIX[typeIdx] + "_ch2eng.txt");
+            if (xRefFile.exists()) {
+                for (String line : Files.readAllLines(xRefFile.toPath(), StandardCharsets.UTF_8)) {
+                    if (line.matches("[0-9]+,[0-9]+")) {
+                        String[] token = line.split(",");
+                        xRef.put(Integer.parseInt(token[0]), Integer.parseInt(token[1]));
+                    }
+                }
+            }
+            mCh2Eng.put(typeIdx, xRef);
+        }
+        return xRef;
+    }
+
+    /**
+     * Write out the catalog in the binary format as described in the class doc.
+     *
+     * @param outFile the output catalog file
+     */
+    public void write(File outFile) throws IOException {
+        File parent = outFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory: " + parent);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mHymnKeys.size());
+            for (int hymnKey : mHymnKeys) {
+                out.writeInt(hymnKey);
+            }
+            for (int engNo : mEngNos) {
+                out.writeShort(engNo);
+            }
+            for (int pages : mPages) {
+                out.writeByte(pages);
+            }
+            for (int bound : mBounds) {
+                out.writeInt(bound);
+            }
+            // The end bound of the last record field
+            out.writeInt(mText.length());
+
+            out.writeInt(mText.length());
+            out.writeChars(mText.toString());
+        }
+    }
+}
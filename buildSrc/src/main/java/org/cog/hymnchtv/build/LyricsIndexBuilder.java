@@ -0,0 +1,192 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.build;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Build the inverted n-gram index for all the hymn lyrics text files. The generated binary asset is used by
+ * the app ContentSearch to get the candidate hymns for a given search string without scanning all the lyrics files.
+ *
+ * Every character (unigram) and every adjacent characters pair (bigram) within a lyrics line is indexed.
+ * The hymn number line i.e. line 0 is excluded. The lyrics text is folded to its canonical search form with the
+ * CharFoldBuilder fold table before indexing; so the app must fold the search string with the same table.
+ * Each posting entry refers to a lyrics line and is encoded as:
+ * (hymnType index << 20) | (hymnNo << 8) | line; the posting entries in each list are in ascending order.
+ *
+ * The binary file format (all values are big-endian):
+ * <pre>
+ * int     MAGIC ('HYIX')
+ * int     VERSION
+ * int     gramCount
+ * int[]   grams[gramCount]: sorted gram keys; (c1 << 16) | c2, with c2 = 0 for unigram
+ * int[]   offsets[gramCount + 1]: the start of each posting list, relative to the postings data block
+ * byte[]  postings: varint delta-encoded posting entries
+ * </pre>
+ *
+ * @author Eng Chong Meng
+ */
+public class LyricsIndexBuilder {
+    public static final int MAGIC = 0x48594958;
+    public static final int VERSION = 2;
+
+    /* Posting entries accumulated for each gram key */
+    private final Map<Integer, IntList> mPostings = new HashMap<>();
+
+    private final CharFoldBuilder mCharFold;
+
+    public LyricsIndexBuilder(CharFoldBuilder charFold) {
+        mCharFold = charFold;
+    }
+
+    /**
+     * Generate the lyrics index file from the lyrics text files in the given assets directory.
+     *
+     * @param args args[0]: the app assets directory; args[1]: the output index file
+     */
+    public static void main(String[] args) throws IOException {
+        build(new File(args[0]), new File(args[1]));
+    }
+
+    /**
+     * Generate the lyrics index file from the lyrics text files in the given assets directory.
+     *
+     * @param assetsDir the app assets directory containing the lyrics_xx_text sub-dirs
+     * @param outFile the generated lyrics index file
+     */
+    public static void build(File assetsDir, File outFile) throws IOException {
+        LyricsIndexBuilder builder = new LyricsIndexBuilder(CharFoldBuilder.create(assetsDir));
+        new LyricsSource(assetsDir).forEach(builder::addLyrics);
+        builder.write(outFile);
+    }
+
+    /**
+     * Add all the grams of the given hymn lyrics to the index.
+     *
+     * @param typeIdx the hymnType index
+     * @param hymnNo the hymn number
+     * @param lines the lyrics text lines
+     */
+    public void addLyrics(int typeIdx, int hymnNo, String[] lines) {
+        int lineCount = Math.min(lines.length, 0xFF);
+        for (int line = 1; line < lineCount; line++) {
+            int posting = (typeIdx << 20) | (hymnNo << 8) | line;
+            String text = mCharFold.fold(lines[line]);
+            for (int i = 0; i < text.length(); i++) {
+                char c1 = text.charAt(i);
+                addPosting(gramKey(c1, (char) 0), posting);
+                if (i + 1 < text.length()) {
+                    addPosting(gramKey(c1, text.charAt(i + 1)), posting);
+                }
+            }
+        }
+    }
+
+    public static int gramKey(char c1, char c2) {
+        return (c1 << 16) | c2;
+    }
+
+    private void addPosting(int gram, int posting) {
+        IntList list = mPostings.get(gram);
+        if (list == null) {
+            list = new IntList();
+            mPostings.put(gram, list);
+        }
+        // Lyrics are added in posting order, so only need to check the last entry for duplication
+        if (list.size == 0 || list.data[list.size - 1] != posting) {
+            list.add(posting);
+        }
+    }
+
+    /**
+     * Write out the index in the binary format as described in the class doc.
+     *
+     * @param outFile the output index file
+     */
+    public void write(File outFile) throws IOException {
+        int[] grams = new int[mPostings.size()];
+        int idx = 0;
+        for (Integer gram : mPostings.keySet()) {
+            grams[idx++] = gram;
+        }
+        Arrays.sort(grams);
+
+        int[] offsets = new int[grams.length + 1];
+        ByteArrayOutputStream postings = new ByteArrayOutputStream();
+        for (int i = 0; i < grams.length; i++) {
+            offsets[i] = postings.size();
+            IntList list = mPostings.get(grams[i]);
+            int last = 0;
+            for (int k = 0; k < list.size; k++) {
+                writeVarInt(postings, list.data[k] - last);
+                last = list.data[k];
+            }
+        }
+        offsets[grams.length] = postings.size();
+
+        File parent = outFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory: " + parent);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(grams.length);
+            for (int gram : grams) {
+                out.writeInt(gram);
+            }
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            postings.writeTo(out);
+        }
+    }
+
+    /**
+     * Write an unsigned value in LEB128 varint encoding.
+     */
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * A simple growable int array to avoid the Integer boxing overhead.
+     */
+    static class IntList {
+        int[] data = new int[8];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+}
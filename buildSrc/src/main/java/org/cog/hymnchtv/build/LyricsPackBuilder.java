@@ -0,0 +1,163 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.build;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Pack all the hymn lyrics text files into a single binary asset, so the app can access any hymn lyrics
+ * via the one memory-mapped asset, in place of opening the individual lyrics asset file for each hymn.
+ *
+ * The lyrics text is stored in utf-8 with the BOM stripped off, and with all the line separators normalized
+ * to '\n'. The lyrics of each hymnType are stored in hymnNo order, with an offsets table indexed by hymnNo;
+ * a hymnNo without lyrics has an empty entry i.e. offsets[hymnNo] == offsets[hymnNo + 1].
+ *
+ * The pack of the lyrics pre-converted to traditional Chinese for an OpenCC config e.g. s2t, is generated in
+ * the same format with the OpenccConverter, as lyrics_pack_s2t.idx.
+ *
+ * The binary file format (all values are big-endian):
+ * <pre>
+ * int     MAGIC ('HYLP')
+ * int     VERSION
+ * int     typeCount
+ * for each hymnType in LyricsSource.HYMN_PREFIX order:
+ *   int     size: max hymnNo + 1
+ *   int[]   offsets[size + 1]: the start of each hymn lyrics, relative to the text data block
+ * byte[]  text data block
+ * </pre>
+ *
+ * @author Eng Chong Meng
+ */
+public class LyricsPackBuilder {
+    public static final int MAGIC = 0x48594C50;
+    public static final int VERSION = 1;
+
+    /* The lyrics text bytes of each hymnType, keyed by hymnNo */
+    private final List<TreeMap<Integer, byte[]>> mLyrics;
+
+    /* The converter of the lyrics text; null to pack the lyrics text as is */
+    private final OpenccConverter mConverter;
+
+    public LyricsPackBuilder() {
+        this(null);
+    }
+
+    public LyricsPackBuilder(OpenccConverter converter) {
+        mConverter = converter;
+        mLyrics = new ArrayList<>(LyricsSource.HYMN_PREFIX.length);
+        for (int i = 0; i < LyricsSource.HYMN_PREFIX.length; i++) {
+            mLyrics.add(new TreeMap<>());
+        }
+    }
+
+    /**
+     * Generate the lyrics pack file from the lyrics text files in the given assets directory.
+     *
+     * @param args args[0]: the app assets directory; args[1]: the output pack file;
+     * args[2]: the optional OpenCC config to pre-convert the lyrics e.g. s2t
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 2)
+            build(new File(args[0]), new File(args[1]), args[2]);
+        else
+            build(new File(args[0]), new File(args[1]));
+    }
+
+    /**
+     * Generate the lyrics pack file from the lyrics text files in the given assets directory.
+     *
+     * @param assetsDir the app assets directory containing the lyrics_xx_text sub-dirs
+     * @param outFile the generated lyrics pack file
+     */
+    public static void build(File assetsDir, File outFile) throws IOException {
+        LyricsPackBuilder builder = new LyricsPackBuilder();
+        new LyricsSource(assetsDir).forEach(builder::addLyrics);
+        builder.write(outFile);
+    }
+
+    /**
+     * Generate the lyrics pack file with all the lyrics pre-converted with the given OpenCC config.
+     *
+     * @param assetsDir the app assets directory containing the lyrics_xx_text and openccdata sub-dirs
+     * @param outFile the generated lyrics pack file
+     * @param config the OpenCC config name without the .json extension e.g. s2t
+     */
+    public static void build(File assetsDir, File outFile, String config) throws IOException {
+        LyricsPackBuilder builder = new LyricsPackBuilder(OpenccConverter.create(assetsDir, config));
+        new LyricsSource(assetsDir).forEach(builder::addLyrics);
+        builder.write(outFile);
+    }
+
+    /**
+     * Add the given hymn lyrics to the pack.
+     *
+     * @param typeIdx the hymnType index
+     * @param hymnNo the hymn number
+     * @param lines the lyrics text lines
+     */
+    public void addLyrics(int typeIdx, int hymnNo, String[] lines) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        // Convert the whole lyrics text in one go, same as the app conversion at view time
+        String lyrics = (mConverter == null) ? text.toString() : mConverter.convert(text.toString());
+        mLyrics.get(typeIdx).put(hymnNo, lyrics.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write out the lyrics pack in the binary format as described in the class doc.
+     *
+     * @param outFile the output pack file
+     */
+    public void write(File outFile) throws IOException {
+        File parent = outFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory: " + parent);
+        }
+
+        ByteArrayOutputStream textData = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mLyrics.size());
+
+            for (TreeMap<Integer, byte[]> lyrics : mLyrics) {
+                int size = lyrics.isEmpty() ? 0 : lyrics.lastKey() + 1;
+                out.writeInt(size);
+                for (int hymnNo = 0; hymnNo < size; hymnNo++) {
+                    out.writeInt(textData.size());
+                    byte[] text = lyrics.get(hymnNo);
+                    if (text != null) {
+                        textData.write(text);
+                    }
+                }
+                out.writeInt(textData.size());
+            }
+            textData.writeTo(out);
+        }
+    }
+}
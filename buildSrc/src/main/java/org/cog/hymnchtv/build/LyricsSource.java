@@ -0,0 +1,150 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Enumerate the hymn lyrics text files in the assets lyrics_xx_text directories.
+ * The hymn books are always returned in the app search display order i.e. DB, BB, XB, XG, YB, ER;
+ * the index of the prefix in HYMN_PREFIX is the hymnType index used in all the generated binary assets.
+ *
+ * @author Eng Chong Meng
+ */
+public class LyricsSource {
+    /* The lyrics file name prefix for each hymnType; the array index is the hymnType index */
+    public static final String[] HYMN_PREFIX = {"db", "bb", "xb", "xg", "yb", "er"};
+
+    /**
+     * Callback for each of the lyrics text file found.
+     */
+    public interface LyricsVisitor {
+        /**
+         * @param typeIdx the hymnType index in HYMN_PREFIX
+         * @param hymnNo the hymn number
+         * @param lines the lyrics text lines, with line[0] being the hymn number
+         */
+        void visit(int typeIdx, int hymnNo, String[] lines) throws IOException;
+    }
+
+    private final File mAssetsDir;
+
+    public LyricsSource(File assetsDir) {
+        mAssetsDir = assetsDir;
+    }
+
+    /**
+     * Get all the lyrics text files in the assets sub-dir for the hymnType, sorted by hymnNo
+     *
+     * @param typeIdx the hymnType index in HYMN_PREFIX
+     *
+     * @return the sorted map of hymnNo to lyrics file
+     */
+    public TreeMap<Integer, File> getLyricsFiles(int typeIdx) {
+        String prefix = HYMN_PREFIX[typeIdx];
+        Pattern pattern = Pattern.compile("^" + prefix + "([0-9]+)\\.txt$");
+        TreeMap<Integer, File> lyricsFiles = new TreeMap<>();
+
+        File[] files = new File(mAssetsDir, "lyrics_" + prefix + "_text").listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = pattern.matcher(file.getName());
+                if (matcher.matches()) {
+                    lyricsFiles.put(Integer.parseInt(matcher.group(1)), file);
+                }
+            }
+        }
+        return lyricsFiles;
+    }
+
+    /**
+     * Visit all the lyrics text files in hymnType then hymnNo order.
+     *
+     * @param visitor the LyricsVisitor
+     */
+    public void forEach(LyricsVisitor visitor) throws IOException {
+        for (int typeIdx = 0; typeIdx < HYMN_PREFIX.length; typeIdx++) {
+            for (Map.Entry<Integer, File> entry : getLyricsFiles(typeIdx).entrySet()) {
+                visitor.visit(typeIdx, entry.getKey(), readLines(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Get the hymn title with the category stripped off; same as the app HymnToc#getHymnTitle().
+     *
+     * @param lines the lyrics text lines
+     *
+     * @return the hymn title
+     */
+    public static String getTitle(String[] lines) {
+        if (lines.length < 2)
+            return "";
+
+        String hymnTitle = lines[1].trim();
+        int idx = hymnTitle.lastIndexOf("－");
+        if (idx != -1) {
+            hymnTitle = hymnTitle.substring(idx + 1);
+        }
+        return hymnTitle;
+    }
+
+    /**
+     * Do the best guess to find the first lyrics line; same as the app ContentHandler#getHymnInfo().
+     *
+     * @param lines the lyrics text lines
+     *
+     * @return the first lyrics line
+     */
+    public static String getFirstLine(String[] lines) {
+        int idx = 4;
+        String firstLine = "";
+        while (firstLine.length() < 6 && idx < lines.length) {
+            firstLine = lines[idx++].trim();
+        }
+        return firstLine;
+    }
+
+    /**
+     * Read the given lyrics text file in utf-8, with any BOM stripped off.
+     *
+     * @param file the lyrics text file
+     *
+     * @return the lyrics text lines
+     */
+    public static String[] readLines(File file) throws IOException {
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        if (text.startsWith("\uFEFF")) {
+            text = text.substring(1);
+        }
+        List<String> lines = new ArrayList<>(List.of(text.split("\r\n|\n", -1)));
+        // Drop the trailing empty line after the last line separator
+        if (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines.toArray(new String[0]);
+    }
+}
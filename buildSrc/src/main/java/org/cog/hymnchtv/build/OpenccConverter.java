@@ -0,0 +1,194 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The build time Chinese converter, using the same OpenCC dictionaries and algorithm as the native OpenCC
+ * library in the app; so the lyrics text can be pre-converted on the host without the OpenCC tools.
+ *
+ * The text is first segmented by the maximum forward match against the segmentation dictionary; each segment
+ * is then passed through the conversion chain, where each conversion replaces the longest matched prefix
+ * with its default i.e. first value. A dictionary group returns the match of the first dictionary that has
+ * one, same as the OpenCC DictGroup.
+ *
+ * Only the conversions in CONVERSION_CHAINS are supported; each chain mirrors its openccdata config json file.
+ *
+ * @author Eng Chong Meng
+ */
+public class OpenccConverter {
+    /* The segmentation dictionary of all the supported simplified to traditional conversions */
+    private static final String SEGMENTATION_DICT = "STPhrases.ocd2";
+
+    /* The conversion chain of each supported config; each conversion is a group of dictionaries */
+    private static final Map<String, String[][]> CONVERSION_CHAINS = Map.of(
+            "s2t", new String[][]{{"STPhrases.ocd2", "STCharacters.ocd2"}},
+            "s2tw", new String[][]{{"STPhrases.ocd2", "STCharacters.ocd2"}, {"TWVariants.ocd2"}},
+            "s2hk", new String[][]{{"STPhrases.ocd2", "STCharacters.ocd2"}, {"HKVariants.ocd2"}}
+    );
+
+    private final Dict mSegmentation;
+    private final List<Dict[]> mConversions = new ArrayList<>();
+
+    private OpenccConverter(Dict segmentation) {
+        mSegmentation = segmentation;
+    }
+
+    /**
+     * Create the converter for the given OpenCC config.
+     *
+     * @param assetsDir the app assets directory containing the openccdata sub-dir
+     * @param config the OpenCC config name without the .json extension e.g. s2t
+     *
+     * @return the OpenccConverter
+     */
+    public static OpenccConverter create(File assetsDir, String config) throws IOException {
+        String[][] chain = CONVERSION_CHAINS.get(config);
+        if (chain == null) {
+            throw new IOException("Unsupported OpenCC conversion: " + config);
+        }
+
+        Map<String, Dict> dicts = new HashMap<>();
+        OpenccConverter converter = new OpenccConverter(getDict(dicts, assetsDir, SEGMENTATION_DICT));
+        for (String[] group : chain) {
+            Dict[] conversion = new Dict[group.length];
+            for (int i = 0; i < group.length; i++) {
+                conversion[i] = getDict(dicts, assetsDir, group[i]);
+            }
+            converter.mConversions.add(conversion);
+        }
+        return converter;
+    }
+
+    private static Dict getDict(Map<String, Dict> dicts, File assetsDir, String name) throws IOException {
+        Dict dict = dicts.get(name);
+        if (dict == null) {
+            dict = new Dict(OpenccDictReader.read(new File(assetsDir, "openccdata/" + name)));
+            dicts.put(name, dict);
+        }
+        return dict;
+    }
+
+    /**
+     * Convert the given text.
+     *
+     * @param text the text to convert
+     *
+     * @return the converted text
+     */
+    public String convert(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (String segment : segment(text)) {
+            for (Dict[] conversion : mConversions) {
+                segment = convert(segment, conversion);
+            }
+            result.append(segment);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Segment the text by the maximum forward match; the unmatched characters between the matched phrases
+     * are kept together as one segment.
+     */
+    private List<String> segment(String text) {
+        List<String> segments = new ArrayList<>();
+        int segStart = 0;
+        int pos = 0;
+        while (pos < text.length()) {
+            int matched = mSegmentation.matchPrefix(text, pos);
+            if (matched == 0) {
+                pos += Character.charCount(text.codePointAt(pos));
+            }
+            else {
+                if (segStart < pos) {
+                    segments.add(text.substring(segStart, pos));
+                }
+                segments.add(text.substring(pos, pos + matched));
+                pos += matched;
+                segStart = pos;
+            }
+        }
+        if (segStart < pos) {
+            segments.add(text.substring(segStart, pos));
+        }
+        return segments;
+    }
+
+    private static String convert(String segment, Dict[] conversion) {
+        StringBuilder result = new StringBuilder(segment.length());
+        int pos = 0;
+        while (pos < segment.length()) {
+            int matched = 0;
+            Dict dict = null;
+            for (Dict d : conversion) {
+                if ((matched = d.matchPrefix(segment, pos)) != 0) {
+                    dict = d;
+                    break;
+                }
+            }
+
+            if (dict == null) {
+                matched = Character.charCount(segment.codePointAt(pos));
+                result.append(segment, pos, pos + matched);
+            }
+            else {
+                result.append(dict.get(segment.substring(pos, pos + matched)));
+            }
+            pos += matched;
+        }
+        return result.toString();
+    }
+
+    /**
+     * The OpenCC dictionary with only the default value of each key.
+     */
+    private static class Dict {
+        private final Map<String, String> mEntries = new HashMap<>();
+        private int mMaxKeyLength = 0;
+
+        Dict(Map<String, String[]> entries) {
+            for (Map.Entry<String, String[]> entry : entries.entrySet()) {
+                if (entry.getValue().length > 0) {
+                    mEntries.put(entry.getKey(), entry.getValue()[0]);
+                    mMaxKeyLength = Math.max(mMaxKeyLength, entry.getKey().length());
+                }
+            }
+        }
+
+        /**
+         * @return the length of the longest key matching the text at the given position; 0 if none
+         */
+        int matchPrefix(String text, int pos) {
+            for (int len = Math.min(mMaxKeyLength, text.length() - pos); len > 0; len--) {
+                if (mEntries.containsKey(text.substring(pos, pos + len)))
+                    return len;
+            }
+            return 0;
+        }
+
+        String get(String key) {
+            return mEntries.get(key);
+        }
+    }
+}
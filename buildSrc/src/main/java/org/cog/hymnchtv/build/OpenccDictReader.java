@@ -0,0 +1,294 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reader for the OpenCC binary dictionary (.ocd2) as found in the app assets openccdata; so the build time tools
+ * can use the same conversion data as the native OpenCC library without the need of the OpenCC tools on the host.
+ *
+ * The ocd2 file contains the OCD2 header, the marisa trie of all the dictionary keys, followed by the values
+ * of all the keys in the trie key id order. Only the marisa reverse lookup i.e. key id to key is implemented,
+ * which is all that is required to enumerate all the dictionary entries.
+ *
+ * @author Eng Chong Meng
+ */
+public class OpenccDictReader {
+    private static final String OCD2_HEADER = "OPENCC_MARISA_0.2.5";
+    private static final String MARISA_HEADER = "We love Marisa.\0";
+
+    private final ByteBuffer mBuffer;
+
+    private OpenccDictReader(byte[] data) {
+        mBuffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Read all the entries of the given OpenCC ocd2 dictionary file.
+     *
+     * @param ocd2File the ocd2 dictionary file
+     *
+     * @return the dictionary key to its values map in the dictionary order
+     */
+    public static Map<String, String[]> read(File ocd2File) throws IOException {
+        return new OpenccDictReader(Files.readAllBytes(ocd2File.toPath())).readEntries();
+    }
+
+    private Map<String, String[]> readEntries() throws IOException {
+        checkHeader(OCD2_HEADER);
+        checkHeader(MARISA_HEADER);
+        LoudsTrie trie = new LoudsTrie();
+
+        int numItems = mBuffer.getInt();
+        int valueTotalLength = mBuffer.getInt();
+        int valuePos = mBuffer.position();
+        mBuffer.position(valuePos + valueTotalLength);
+
+        Map<String, String[]> entries = new LinkedHashMap<>();
+        for (int id = 0; id < numItems; id++) {
+            String[] values = new String[mBuffer.getShort() & 0xFFFF];
+            for (int i = 0; i < values.length; i++) {
+                // The value bytes count includes the terminating null
+                int length = mBuffer.getShort() & 0xFFFF;
+                values[i] = new String(mBuffer.array(), valuePos, length - 1, StandardCharsets.UTF_8);
+                valuePos += length;
+            }
+            entries.put(trie.reverseLookup(id), values);
+        }
+        return entries;
+    }
+
+    private void checkHeader(String header) throws IOException {
+        byte[] expected = header.getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = new byte[expected.length];
+        mBuffer.get(actual);
+        if (!Arrays.equals(expected, actual)) {
+            throw new IOException("Invalid OpenCC dictionary header: " + header.trim());
+        }
+    }
+
+    /**
+     * Read a marisa Vector; its content is 8 bytes aligned.
+     *
+     * @return the vector raw content
+     */
+    private byte[] readVector() {
+        int totalSize = (int) mBuffer.getLong();
+        byte[] content = new byte[totalSize];
+        mBuffer.get(content);
+        mBuffer.position(mBuffer.position() + (8 - (totalSize % 8)) % 8);
+        return content;
+    }
+
+    /**
+     * The marisa BitVector, with only the raw bits kept; the rank and select indexes are rebuilt on load.
+     */
+    private class BitVector {
+        private final byte[] mUnits;
+        private final int mSize;
+
+        /* Position of each 1 bit, for select1() */
+        private final int[] mOnes;
+
+        /* Number of 1 bits before each position, for rank1() */
+        private final int[] mRanks;
+
+        BitVector() {
+            mUnits = readVector();
+            mSize = mBuffer.getInt();
+            mOnes = new int[mBuffer.getInt()];
+            // Skip over the ranks, select0s and select1s indexes
+            readVector();
+            readVector();
+            readVector();
+
+            mRanks = new int[mSize + 1];
+            int count = 0;
+            for (int i = 0; i < mSize; i++) {
+                mRanks[i] = count;
+                if (get(i))
+                    mOnes[count++] = i;
+            }
+            mRanks[mSize] = count;
+        }
+
+        boolean get(int i) {
+            return (mUnits[i >>> 3] & (1 << (i & 7))) != 0;
+        }
+
+        int rank1(int i) {
+            return mRanks[i];
+        }
+
+        int select1(int i) {
+            return mOnes[i];
+        }
+
+        int numOnes() {
+            return mOnes.length;
+        }
+
+        int size() {
+            return mSize;
+        }
+    }
+
+    /**
+     * The marisa FlatVector of fixed bit width values.
+     */
+    private class FlatVector {
+        private final byte[] mUnits;
+        private final int mValueSize;
+
+        FlatVector() {
+            mUnits = readVector();
+            mValueSize = mBuffer.getInt();
+            mBuffer.getInt(); // mask
+            mBuffer.getLong(); // size
+        }
+
+        int get(int i) {
+            long pos = (long) i * mValueSize;
+            int value = 0;
+            for (int b = 0; b < mValueSize; b++, pos++) {
+                if ((mUnits[(int) (pos >>> 3)] & (1 << (pos & 7))) != 0)
+                    value |= 1 << b;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * The marisa LOUDS trie; the keys suffixes are stored either in the tail or in the next level trie.
+     */
+    private class LoudsTrie {
+        private final BitVector mLouds;
+        private final BitVector mTerminalFlags;
+        private final BitVector mLinkFlags;
+        private final byte[] mBases;
+        private final FlatVector mExtras;
+
+        private final byte[] mTailBuf;
+        private final BitVector mTailEndFlags;
+
+        private LoudsTrie mNextTrie = null;
+
+        private final int mNumL1Nodes;
+
+        LoudsTrie() {
+            mLouds = new BitVector();
+            mTerminalFlags = new BitVector();
+            mLinkFlags = new BitVector();
+            mBases = readVector();
+            mExtras = new FlatVector();
+            mTailBuf = readVector();
+            mTailEndFlags = new BitVector();
+            if (mLinkFlags.numOnes() != 0 && mTailBuf.length == 0) {
+                mNextTrie = new LoudsTrie();
+            }
+            // Skip over the cache
+            readVector();
+            mNumL1Nodes = mBuffer.getInt();
+            mBuffer.getInt(); // config flags
+        }
+
+        /**
+         * Get the key of the given key id.
+         */
+        String reverseLookup(int keyId) {
+            ByteArrayOutputStream keyBuf = new ByteArrayOutputStream();
+            int nodeId = mTerminalFlags.select1(keyId);
+            while (nodeId != 0) {
+                if (mLinkFlags.get(nodeId)) {
+                    // The linked suffix is restored in forward order, reverse it for the final reversal
+                    ByteArrayOutputStream suffix = new ByteArrayOutputStream();
+                    restore(suffix, getLink(nodeId));
+                    byte[] bytes = suffix.toByteArray();
+                    for (int i = bytes.length - 1; i >= 0; i--) {
+                        keyBuf.write(bytes[i]);
+                    }
+                }
+                else {
+                    keyBuf.write(mBases[nodeId]);
+                }
+
+                if (nodeId <= mNumL1Nodes)
+                    break;
+                nodeId = mLouds.select1(nodeId) - nodeId - 1;
+            }
+
+            byte[] key = keyBuf.toByteArray();
+            for (int i = 0, j = key.length - 1; i < j; i++, j--) {
+                byte tmp = key[i];
+                key[i] = key[j];
+                key[j] = tmp;
+            }
+            return new String(key, StandardCharsets.UTF_8);
+        }
+
+        private int getLink(int nodeId) {
+            return (mBases[nodeId] & 0xFF) | (mExtras.get(mLinkFlags.rank1(nodeId)) << 8);
+        }
+
+        /**
+         * Restore the linked suffix in forward order from the next trie or the tail.
+         */
+        private void restore(ByteArrayOutputStream out, int link) {
+            if (mNextTrie != null) {
+                mNextTrie.restoreNode(out, link);
+            }
+            else if (mTailEndFlags.size() == 0) {
+                for (int i = link; mTailBuf[i] != 0; i++) {
+                    out.write(mTailBuf[i]);
+                }
+            }
+            else {
+                int i = link;
+                do {
+                    out.write(mTailBuf[i]);
+                } while (!mTailEndFlags.get(i++));
+            }
+        }
+
+        /**
+         * Restore the key from the given node up to the root; the next level trie stores the reversed suffixes,
+         * so the result is in forward order.
+         */
+        private void restoreNode(ByteArrayOutputStream out, int nodeId) {
+            while (true) {
+                if (mLinkFlags.get(nodeId))
+                    restore(out, getLink(nodeId));
+                else
+                    out.write(mBases[nodeId]);
+
+                if (nodeId <= mNumL1Nodes)
+                    return;
+                nodeId = mLouds.select1(nodeId) - nodeId - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.build;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.duguying.pinyin.Pinyin;
+import net.duguying.pinyin.PinyinException;
+
+/**
+ * Build the pinyin index for all the hymn titles and first lyrics lines. Each title and first line is indexed by
+ * its full pinyin e.g. "abafu" and its pinyin initials e.g. "abf"; both without tone marks and spaces.
+ * The app looks up the hymns with a prefix binary search on the sorted pinyin keys.
+ *
+ * The binary file format (DataOutputStream encoding):
+ * <pre>
+ * int     MAGIC ('HYPY')
+ * int     VERSION
+ * int     hymnCount
+ * hymn[]  {int hymnKey; UTF title; UTF firstLine}: hymnKey = (hymnType index << 12) | hymnNo
+ * int     entryCount
+ * entry[] {UTF key; int value}: sorted by key; value = (hymn index << 1) | (1 if first line else 0 for title)
+ * </pre>
+ *
+ * @author Eng Chong Meng
+ */
+public class PinyinIndexBuilder {
+    public static final int MAGIC = 0x48595059;
+    public static final int VERSION = 1;
+
+    /* Max number of leading chinese characters in the first line to be indexed */
+    private static final int FIRST_LINE_CHARS_MAX = 12;
+
+    private final Pinyin mPinyin;
+
+    /* Cache of the pinyin syllable for each chinese character */
+    private final Map<Character, String> mSyllables = new HashMap<>();
+
+    private final List<Integer> mHymnKeys = new ArrayList<>();
+    private final List<String> mTitles = new ArrayList<>();
+    private final List<String> mFirstLines = new ArrayList<>();
+
+    /* Sorted pinyin key to the entry values */
+    private final TreeMap<String, List<Integer>> mEntries = new TreeMap<>();
+
+    public PinyinIndexBuilder() throws PinyinException {
+        mPinyin = new Pinyin();
+    }
+
+    /**
+     * Generate the pinyin index file from the lyrics text files in the given assets directory.
+     *
+     * @param args args[0]: the app assets directory; args[1]: the output index file
+     */
+    public static void main(String[] args) throws IOException, PinyinException {
+        build(new File(args[0]), new File(args[1]));
+    }
+
+    /**
+     * Generate the pinyin index file from the lyrics text files in the given assets directory.
+     *
+     * @param assetsDir the app assets directory containing the lyrics_xx_text sub-dirs
+     * @param outFile the generated pinyin index file
+     */
+    public static void build(File assetsDir, File outFile) throws IOException, PinyinException {
+        PinyinIndexBuilder builder = new PinyinIndexBuilder();
+        new LyricsSource(assetsDir).forEach(builder::addLyrics);
+        builder.write(outFile);
+    }
+
+    /**
+     * Add the title and the first line of the given hymn lyrics to the index.
+     *
+     * @param typeIdx the hymnType index
+     * @param hymnNo the hymn number
+     * @param lines the lyrics text lines
+     */
+    public void addLyrics(int typeIdx, int hymnNo, String[] lines) throws IOException {
+        String title = LyricsSource.getTitle(lines);
+        String firstLine = LyricsSource.getFirstLine(lines);
+
+        int hymnIdx = mHymnKeys.size();
+        mHymnKeys.add((typeIdx << 12) | hymnNo);
+        mTitles.add(title);
+        mFirstLines.add(firstLine);
+
+        addEntries(title, Integer.MAX_VALUE, hymnIdx << 1);
+        addEntries(firstLine, FIRST_LINE_CHARS_MAX, (hymnIdx << 1) | 1);
+    }
+
+    /**
+     * Add the full pinyin and the pinyin initials keys of the given text.
+     */
+    private void addEntries(String text, int charsMax, int value) throws IOException {
+        StringBuilder full = new StringBuilder();
+        StringBuilder initials = new StringBuilder();
+
+        int count = 0;
+        for (int i = 0; i < text.length() && count < charsMax; i++) {
+            String syllable = getSyllable(text.charAt(i));
+            if (syllable != null) {
+                full.append(syllable);
+                initials.append(syllable.charAt(0));
+                count++;
+            }
+        }
+
+        if (count > 0) {
+            addEntry(full.toString(), value);
+            addEntry(initials.toString(), value);
+        }
+    }
+
+    private void addEntry(String key, int value) {
+        List<Integer> values = mEntries.get(key);
+        if (values == null) {
+            values = new ArrayList<>();
+            mEntries.put(key, values);
+        }
+        if (!values.contains(value)) {
+            values.add(value);
+        }
+    }
+
+    /**
+     * Get the pinyin syllable of the given chinese character in lower case, without the tone mark.
+     *
+     * @param c the character
+     *
+     * @return the pinyin syllable, or null if c is not a chinese character
+     */
+    private String getSyllable(char c) throws IOException {
+        if (Character.UnicodeScript.of(c) != Character.UnicodeScript.HAN)
+            return null;
+
+        if (mSyllables.containsKey(c))
+            return mSyllables.get(c);
+
+        String syllable = null;
+        try {
+            // Translate char by char, so the result is independent of the library syllable separator
+            String pinyin = Normalizer.normalize(mPinyin.translate(String.valueOf(c)), Normalizer.Form.NFD);
+            pinyin = pinyin.replace("ü", "v").replaceAll("\\p{M}", "").toLowerCase();
+            pinyin = pinyin.replaceAll("[^a-z]", "");
+            if (!pinyin.isEmpty()) {
+                syllable = pinyin;
+            }
+        } catch (PinyinException e) {
+            throw new IOException("Pinyin translate failed for: " + c, e);
+        }
+        mSyllables.put(c, syllable);
+        return syllable;
+    }
+
+    /**
+     * Write out the index in the binary format as described in the class doc.
+     *
+     * @param outFile the output index file
+     */
+    public void write(File outFile) throws IOException {
+        File parent = outFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory: " + parent);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(mHymnKeys.size());
+            for (int i = 0; i < mHymnKeys.size(); i++) {
+                out.writeInt(mHymnKeys.get(i));
+                out.writeUTF(mTitles.get(i));
+                out.writeUTF(mFirstLines.get(i));
+            }
+
+            int entryCount = 0;
+            for (List<Integer> values : mEntries.values()) {
+                entryCount += values.size();
+            }
+            out.writeInt(entryCount);
+            for (Map.Entry<String, List<Integer>> entry : mEntries.entrySet()) {
+                for (int value : entry.getValue()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(value);
+                }
+            }
+        }
+    }
+}
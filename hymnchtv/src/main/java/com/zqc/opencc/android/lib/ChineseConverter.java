@@ -2,40 +2,211 @@ package com.zqc.opencc.android.lib;
 
 import android.content.Context;
 import android.content.res.AssetManager;
+import android.content.pm.PackageManager;
 import android.util.Log;
 
+import androidx.core.content.pm.PackageInfoCompat;
+
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Created by zhangqichuan on 29/2/16.
+ *
+ * The native converter of each ConversionType is created on first use and kept alive until the dictionary
+ * data is cleared; so each conversion is only a pure in-memory segmentation pass, without reloading the
+ * config and the dictionaries.
+ *
+ * The text is passed to and from the native converter as packed utf-8 bytes; see NativeConverter.
+ *
+ * Only the dictionary files referenced by the config of the ConversionType in use are extracted from the
+ * assets, and each file is verified against the build time generated sha-256 manifest; the verified configs are
+ * recorded in the marker file per app version. Call prepare() at startup to do the extraction in background;
+ * the UI should check isPrepared() before the conversion, and use the prepare() callback to convert once ready.
  */
 public class ChineseConverter {
+    private static final String TAG = "ChineseConverter";
+
+    /* The live native converter handle of each ConversionType */
+    private static final Map<ConversionType, Long> sHandles = new EnumMap<>(ConversionType.class);
+
+    /* Guard against the handles release while any conversion is in progress */
+    private static final ReadWriteLock sHandlesLock = new ReentrantReadWriteLock();
+
+    private static final String DATA_FOLDER = "openccdata";
+
+    /* The sha-256 hash of all the openccdata files; see hymnchtv build.gradle generateOpenccManifest */
+    private static final String DATA_MANIFEST = "openccdata_manifest.txt";
+
+    /* The marker file of the verified configs, with the app version on the first line */
+    private static final String VERIFIED_MARKER = "zVerified";
+
+    /* The config dictionary file references e.g. "file": "STPhrases.ocd2" */
+    private static final Pattern CONFIG_FILE = Pattern.compile("\"file\"\\s*:\\s*\"([^\"]+)\"");
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    /* The configs with their dictionary files extracted and verified in this session; read without the class lock */
+    private static final Set<String> sVerifiedConfigs = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /* The configs with their dictionary data extraction queued or in progress */
+    private static final Set<String> sPendingConfigs = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /***
+     * Extract and verify the dictionary data of the given conversion type in background, so the first
+     * conversion needs not wait for it.
+     * @param context        android context
+     * @param conversionType the conversion type
+     */
+    public static void prepare(Context context, ConversionType conversionType) {
+        prepare(context, conversionType, null);
+    }
+
+    /***
+     * Extract and verify the dictionary data of the given conversion type in background.
+     * @param context        android context
+     * @param conversionType the conversion type
+     * @param onPrepared     the callback run on the extraction thread when the extraction has ended, whether it
+     *                       has succeeded or not i.e. check isPrepared(); null if none
+     */
+    public static void prepare(Context context, ConversionType conversionType, Runnable onPrepared) {
+        String config = conversionType.getValue();
+        if (onPrepared == null && (sVerifiedConfigs.contains(config) || !sPendingConfigs.add(config))) {
+            return;
+        }
+
+        Context appContext = context.getApplicationContext();
+        sExecutor.execute(() -> {
+            try {
+                prepareDictData(appContext, conversionType);
+            } finally {
+                sPendingConfigs.remove(config);
+            }
+            if (onPrepared != null) {
+                onPrepared.run();
+            }
+        });
+    }
+
+    /***
+     * Check if the dictionary data of the given conversion type is extracted and verified, without waiting for
+     * any extraction in progress; i.e. the conversion runs without the extraction delay.
+     * @param conversionType the conversion type
+     * @return true if the conversion type is ready for the conversion
+     */
+    public static boolean isPrepared(ConversionType conversionType) {
+        return sVerifiedConfigs.contains(conversionType.getValue());
+    }
 
     /***
      * @param text           the text to be converted to
      * @param conversionType the conversion type
      * @param context        android context
-     * @return the converted text
+     * @return the converted text, or null if the conversion has failed
      */
     public static String convert(String text, ConversionType conversionType, Context context) {
-        File lastDataFile = new File(context.getFilesDir() + "/openccdata/zFinished2");
-        if (!lastDataFile.exists()) {
-            initialize(context);
+        String[] results = convertBatch(new String[]{text}, conversionType, context);
+        return (results == null) ? null : results[0];
+    }
+
+    /***
+     * Convert all the given texts in a single native call. It waits for any extraction of the dictionary data in
+     * progress; so call it off the UI thread, or only after isPrepared().
+     * @param texts          the texts to be converted to
+     * @param conversionType the conversion type
+     * @param context        android context
+     * @return the converted texts, in the same order as the given texts; or null if the conversion has failed
+     */
+    public static String[] convertBatch(CharSequence[] texts, ConversionType conversionType, Context context) {
+        if (!prepareDictData(context, conversionType)) {
+            return null;
+        }
+        File dataFolder = new File(context.getFilesDir(), DATA_FOLDER);
+
+        sHandlesLock.readLock().lock();
+        try {
+            long handle = getHandle(conversionType, dataFolder.getAbsolutePath());
+            if (handle == 0) {
+                return null;
+            }
+            return NativeConverter.convert(handle, texts);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to convert: " + conversionType, e);
+            return null;
+        } finally {
+            sHandlesLock.readLock().unlock();
+        }
+    }
+
+    /***
+     * Get the native converter handle of the given conversion type; create and cache it on first use.
+     * @param conversionType the conversion type
+     * @param absoluteDataFolderPath the dictionary data folder
+     * @return the native converter handle, or 0 if the converter cannot be created
+     */
+    private static long getHandle(ConversionType conversionType, String absoluteDataFolderPath) {
+        synchronized (sHandles) {
+            Long handle = sHandles.get(conversionType);
+            if (handle == null) {
+                handle = NativeConverter.create(conversionType.getValue(), absoluteDataFolderPath);
+                if (handle == 0) {
+                    Log.e(TAG, "Failed to create converter: " + conversionType);
+                    return 0;
+                }
+                sHandles.put(conversionType, handle);
+            }
+            return handle;
+        }
+    }
+
+    /***
+     * Release all the native converters; they are re-created on next use.
+     */
+    public static void release() {
+        sHandlesLock.writeLock().lock();
+        try {
+            synchronized (sHandles) {
+                for (long handle : sHandles.values()) {
+                    NativeConverter.release(handle);
+                }
+                sHandles.clear();
+            }
+        } finally {
+            sHandlesLock.writeLock().unlock();
         }
-        File dataFolder = new File(context.getFilesDir() + "/openccdata");
-        return convert(text, conversionType.getValue(), dataFolder.getAbsolutePath());
     }
 
     /***
      * Clear the dictionary data folder, only call this method when update the dictionary data.
      * @param context Context
      */
-    public static void clearDictDataFolder(Context context) {
-        File dataFolder = new File(context.getFilesDir() + "/openccdata");
+    public static synchronized void clearDictDataFolder(Context context) {
+        release();
+        sVerifiedConfigs.clear();
+        File dataFolder = new File(context.getFilesDir(), DATA_FOLDER);
         deleteRecursive(dataFolder);
     }
 
@@ -47,68 +218,178 @@ public class ChineseConverter {
         fileOrDirectory.delete();
     }
 
-    private static native String convert(String text, String configFile, String absoluteDataFolderPath);
+    /***
+     * Extract the config and its dictionary files of the given conversion type if not yet verified for
+     * the current app version; any file that fails the manifest hash check is extracted again.
+     * @param context        android context
+     * @param conversionType the conversion type
+     * @return true if all the dictionary data of the conversion type are ready
+     */
+    private static synchronized boolean prepareDictData(Context context, ConversionType conversionType) {
+        String config = conversionType.getValue();
+        if (sVerifiedConfigs.contains(config)) {
+            return true;
+        }
 
-    private static void initialize(Context context) {
-        copyFolder("openccdata", context);
-    }
+        File dataFolder = new File(context.getFilesDir(), DATA_FOLDER);
+        File marker = new File(dataFolder, VERIFIED_MARKER);
+        String version = getAppVersion(context);
+        List<String> verified = new ArrayList<>();
+        if (marker.exists()) {
+            try (InputStream in = new FileInputStream(marker)) {
+                verified = readLines(in);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read marker: " + e.getMessage());
+            }
+        }
+        if (verified.isEmpty() || !version.equals(verified.get(0))) {
+            verified.clear();
+            verified.add(version);
+        }
+        if (verified.contains(config)) {
+            sVerifiedConfigs.add(config);
+            return true;
+        }
 
-    private static void copyFolder(String folderName, Context context) {
-        File fileFolderOnDisk = new File(context.getFilesDir() + "/" + folderName);
         AssetManager assetManager = context.getAssets();
-        String[] files = null;
         try {
-            files = assetManager.list(folderName);
+            Map<String, String> manifest = readManifest(assetManager);
+            if (!dataFolder.exists()) {
+                dataFolder.mkdirs();
+            }
+            for (String fileName : getConfigFiles(assetManager, config)) {
+                if (!extractFile(assetManager, dataFolder, fileName, manifest.get(fileName))) {
+                    return false;
+                }
+            }
+
+            verified.add(config);
+            File tmpMarker = new File(dataFolder, VERIFIED_MARKER + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmpMarker)) {
+                out.write(String.join("\n", verified).getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            }
+            if (!tmpMarker.renameTo(marker)) {
+                throw new IOException("Failed to rename marker: " + tmpMarker);
+            }
+            sVerifiedConfigs.add(config);
+            return true;
         } catch (IOException e) {
-            Log.e("tag", "Failed to get asset file list.", e);
-        }
-        if (files != null) {
-            for (String filename : files) {
-                InputStream in = null;
-                OutputStream out = null;
-                try {
-                    in = assetManager.open(folderName + "/" + filename);
-                    if (!fileFolderOnDisk.exists()) {
-                        fileFolderOnDisk.mkdirs();
-                    }
-                    File outFile = new File(fileFolderOnDisk.getAbsolutePath(), filename);
-                    if (!outFile.exists()) {
-                        outFile.createNewFile();
-                    }
-                    out = new FileOutputStream(outFile);
-                    copyFile(in, out);
-                } catch (IOException e) {
-                    Log.e("tag", "Failed to copy asset file: " + filename, e);
-                } finally {
-                    if (in != null) {
-                        try {
-                            in.close();
-                        } catch (IOException e) {
-                            // NOOP
-                        }
-                    }
-                    if (out != null) {
-                        try {
-                            out.close();
-                        } catch (IOException e) {
-                            // NOOP
-                        }
-                    }
+            Log.e(TAG, "Failed to extract dictionary data: " + config, e);
+            return false;
+        }
+    }
+
+    private static String getAppVersion(Context context) {
+        try {
+            return Long.toString(PackageInfoCompat.getLongVersionCode(
+                    context.getPackageManager().getPackageInfo(context.getPackageName(), 0)));
+        } catch (PackageManager.NameNotFoundException e) {
+            return "0";
+        }
+    }
+
+    /***
+     * @return the file name to its sha-256 hash map; empty if the manifest is not available
+     */
+    private static Map<String, String> readManifest(AssetManager assetManager) {
+        Map<String, String> manifest = new HashMap<>();
+        try (InputStream in = assetManager.open(DATA_MANIFEST)) {
+            for (String line : readLines(in)) {
+                String[] token = line.split(" ");
+                if (token.length == 2) {
+                    manifest.put(token[0], token[1]);
                 }
             }
+        } catch (IOException e) {
+            Log.w(TAG, "Dictionary data manifest not available: " + e.getMessage());
+        }
+        return manifest;
+    }
+
+    /***
+     * @return the given config and all the dictionary files referenced in the config
+     */
+    private static Set<String> getConfigFiles(AssetManager assetManager, String config) throws IOException {
+        Set<String> files = new LinkedHashSet<>();
+        files.add(config);
+        try (InputStream in = assetManager.open(DATA_FOLDER + "/" + config)) {
+            for (String line : readLines(in)) {
+                Matcher matcher = CONFIG_FILE.matcher(line);
+                while (matcher.find()) {
+                    files.add(matcher.group(1));
+                }
+            }
+        }
+        return files;
+    }
+
+    /***
+     * Extract the asset file to the data folder via a temporary file, unless the existing file has the
+     * expected hash; the temporary file written to disk is synced and verified against the expected hash
+     * before being renamed into place.
+     * @param expectedHash the sha-256 hash in the manifest; null to skip the verification
+     * @return true if the file is extracted and verified
+     */
+    private static boolean extractFile(AssetManager assetManager, File dataFolder, String fileName,
+            String expectedHash) throws IOException {
+        File outFile = new File(dataFolder, fileName);
+        if (outFile.exists() && expectedHash != null && expectedHash.equals(getFileHash(outFile))) {
+            return true;
+        }
+
+        File tmpFile = new File(dataFolder, fileName + ".tmp");
+        try (InputStream in = assetManager.open(DATA_FOLDER + "/" + fileName);
+             FileOutputStream out = new FileOutputStream(tmpFile)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.getFD().sync();
         }
+        if (expectedHash != null && !expectedHash.equals(getFileHash(tmpFile))) {
+            Log.e(TAG, "Dictionary data hash mismatch: " + fileName);
+            tmpFile.delete();
+            return false;
+        }
+        return tmpFile.renameTo(outFile);
     }
 
+    /***
+     * Compute the sha-256 hash of the file content on disk.
+     * @return the hex string of the sha-256 hash
+     */
+    private static String getFileHash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
 
-    private static void copyFile(InputStream in, OutputStream out) throws IOException {
-        byte[] buffer = new byte[1024];
-        int read;
-        while ((read = in.read(buffer)) != -1) {
-            out.write(buffer, 0, read);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
         }
+        return hex.toString();
     }
 
-    static {
-        System.loadLibrary("ChineseConverter");
+    private static List<String> readLines(InputStream in) throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line.trim());
+        }
+        return lines;
     }
 }
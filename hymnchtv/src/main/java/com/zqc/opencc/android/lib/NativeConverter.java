@@ -0,0 +1,78 @@
+package com.zqc.opencc.android.lib;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The jni binding of the native OpenCC converter; plain java without any android dependency, so the same
+ * binding can be used with the host build of libChineseConverter e.g. by the benchmark module.
+ *
+ * The text is passed to and from the native converter as packed utf-8 bytes with an offsets array, in place of
+ * the jni modified utf-8 strings; so any number of strings are converted in a single jni call, and the
+ * supplementary-plane characters are passed through intact.
+ */
+public class NativeConverter {
+    /***
+     * Create the native converter with all its dictionaries loaded.
+     * @param configFile             the OpenCC config file name e.g. s2t.json
+     * @param absoluteDataFolderPath the folder containing the config and its dictionary files
+     * @return the native converter handle, or 0 if the converter cannot be created
+     */
+    public static long create(String configFile, String absoluteDataFolderPath) {
+        return nativeCreate(configFile, absoluteDataFolderPath);
+    }
+
+    /***
+     * Convert all the given texts in a single native call.
+     * @param handle the native converter handle
+     * @param texts  the texts to be converted to
+     * @return the converted texts, in the same order as the given texts
+     * @throws RuntimeException if the native conversion has failed
+     */
+    public static String[] convert(long handle, CharSequence[] texts) {
+        // Pack all the texts into a single utf-8 direct buffer, with offsets[i] the start of texts[i]
+        byte[][] bytes = new byte[texts.length][];
+        int[] offsets = new int[texts.length + 1];
+        for (int i = 0; i < texts.length; i++) {
+            bytes[i] = texts[i].toString().getBytes(StandardCharsets.UTF_8);
+            offsets[i + 1] = offsets[i] + bytes[i].length;
+        }
+        ByteBuffer input = ByteBuffer.allocateDirect(offsets[texts.length]);
+        for (byte[] b : bytes) {
+            input.put(b);
+        }
+
+        int[] outOffsets = new int[texts.length + 1];
+        byte[] output = nativeConvertBatch(handle, input, offsets, outOffsets);
+        String[] results = new String[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            results[i] = new String(output, outOffsets[i], outOffsets[i + 1] - outOffsets[i], StandardCharsets.UTF_8);
+        }
+        return results;
+    }
+
+    /***
+     * Release the native converter; the handle must not be used after.
+     * @param handle the native converter handle
+     */
+    public static void release(long handle) {
+        nativeRelease(handle);
+    }
+
+    private static native long nativeCreate(String configFile, String absoluteDataFolderPath);
+
+    /***
+     * @param handle     the native converter handle
+     * @param input      the packed utf-8 texts in a direct buffer
+     * @param offsets    the start of each text in input, with the end of the last text appended
+     * @param outOffsets filled with the start of each converted text in the returned array, as for offsets
+     * @return the packed utf-8 converted texts
+     */
+    private static native byte[] nativeConvertBatch(long handle, ByteBuffer input, int[] offsets, int[] outOffsets);
+
+    private static native void nativeRelease(long handle);
+
+    static {
+        System.loadLibrary("ChineseConverter");
+    }
+}
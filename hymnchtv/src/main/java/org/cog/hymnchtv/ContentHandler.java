@@ -16,12 +16,6 @@
  */
 package org.cog.hymnchtv;
 
-import static org.cog.hymnchtv.ContentView.LYRICS_BB_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_DB_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_ER_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_XB_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_XG_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_YB_DIR;
 import static org.cog.hymnchtv.ContentView.SCORE_BB_DIR;
 import static org.cog.hymnchtv.ContentView.SCORE_DB_DIR;
 import static org.cog.hymnchtv.ContentView.SCORE_ER_DIR;
@@ -40,6 +34,8 @@ import static org.cog.hymnchtv.MainActivity.HYMN_YB;
 import static org.cog.hymnchtv.MainActivity.PREF_MENU_SHOW;
 import static org.cog.hymnchtv.MainActivity.PREF_SETTINGS;
 import static org.cog.hymnchtv.MainActivity.ybXTable;
+import static org.cog.hymnchtv.MediaType.HYMN_BANZOU;
+import static org.cog.hymnchtv.MediaType.HYMN_CHANGSHI;
 import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_BB_DUMMY;
 import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_DB_NO_MAX;
 import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_DB_NO_TMAX;
@@ -66,14 +62,13 @@ import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.regex.Pattern;
 
-import org.apache.http.util.EncodingUtils;
-import org.apache.http.util.TextUtils;
 import org.cog.hymnchtv.mediaconfig.MediaConfig;
 import org.cog.hymnchtv.mediaconfig.MediaRecord;
 import org.cog.hymnchtv.mediaconfig.NotionRecord;
@@ -81,7 +76,11 @@ import org.cog.hymnchtv.mediaconfig.QQRecord;
 import org.cog.hymnchtv.mediaconfig.ShareWith;
 import org.cog.hymnchtv.persistance.DatabaseBackend;
 import org.cog.hymnchtv.persistance.FileBackend;
+import org.cog.hymnchtv.persistance.MediaAvailability;
+import org.cog.hymnchtv.persistance.MediaFileCatalog;
+import org.cog.hymnchtv.search.LyricsPack;
 import org.cog.hymnchtv.utils.DepthPageTransformer;
+import org.cog.hymnchtv.utils.HymnCatalog;
 import org.cog.hymnchtv.utils.HymnIdx2NoConvert;
 import org.cog.hymnchtv.utils.HymnNo2IdxConvert;
 import org.cog.hymnchtv.utils.HymnNoCh2EngXRef;
@@ -431,45 +430,39 @@ public class ContentHandler extends BaseActivity {
      */
     private void lyricsShare() {
         String resPrefix = "";
-        String resFName = "";
 
         switch (mHymnType) {
             case HYMN_ER:
                 resPrefix = SCORE_ER_DIR + mHymnNo;
-                resFName = LYRICS_ER_DIR + "er" + mHymnNo;
                 break;
 
             case HYMN_XB:
                 resPrefix = SCORE_XB_DIR + "xb" + mHymnNo;
-                resFName = LYRICS_XB_DIR + "xb" + mHymnNo;
                 break;
 
             case HYMN_XG:
                 resPrefix = SCORE_XG_DIR + "xg" + mHymnNo;
-                resFName = LYRICS_XG_DIR + "xg" + mHymnNo;
                 break;
 
             case HYMN_YB:
                 resPrefix = SCORE_XB_DIR + "yb" + mHymnNo;
-                resFName = LYRICS_XB_DIR + "yb" + mHymnNo;
                 break;
 
             case HYMN_BB:
                 resPrefix = SCORE_BB_DIR + "bb" + mHymnNo;
-                resFName = LYRICS_BB_DIR + "bb" + mHymnNo;
                 break;
 
             case HYMN_DB:
                 resPrefix = SCORE_DB_DIR + "db" + mHymnNo;
-                resFName = LYRICS_DB_DIR + "db" + mHymnNo;
                 break;
         }
 
         String fnScore = resPrefix + ".png";
         File fileScore = new File(FileBackend.getHymnchtvStore(FileBackend.TMP, true), fnScore.split("/")[1]);
 
-        String fnLyrics = resFName + ".txt";
-        File fileLyrics = new File(FileBackend.getHymnchtvStore(FileBackend.TMP, true), fnLyrics.split("/")[1]);
+        // Lyrics text file name e.g. db123.txt
+        String fnLyrics = mHymnType.replace("hymn_", "") + mHymnNo + ".txt";
+        File fileLyrics = new File(FileBackend.getHymnchtvStore(FileBackend.TMP, true), fnLyrics);
 
         try {
             InputStream inputStream = getResources().getAssets().open(fnScore);
@@ -478,10 +471,13 @@ public class ContentHandler extends BaseActivity {
             inputStream.close();
             outputStream.close();
 
-            inputStream = getResources().getAssets().open(fnLyrics);
+            LyricsPack lyricsPack = LyricsPack.getInstance();
+            ByteBuffer lyrics = (lyricsPack == null) ? null : lyricsPack.getLyricsBuffer(mHymnType, mHymnNo);
+            if (lyrics == null) {
+                throw new IOException("Lyrics not available: " + mHymnType + mHymnNo);
+            }
             outputStream = new FileOutputStream(fileLyrics);
-            FileBackend.copy(inputStream, outputStream);
-            inputStream.close();
+            outputStream.getChannel().write(lyrics);
             outputStream.close();
 
             ArrayList<Uri> imageUris = new ArrayList<>();
@@ -645,9 +641,7 @@ public class ContentHandler extends BaseActivity {
         }
 
         String dir = null;
-        String fbLink = null;
-        String fileName = mHymnNo + getHymnTitle();
-        // http://mana.stmn1.com/
+        String[] dnLink = null;
 
         switch (mHymnType) {
             case HYMN_ER:
@@ -665,9 +659,7 @@ public class ContentHandler extends BaseActivity {
                         if (isFileExist(dir, mHymnNo, uriList)) break;
 
                         if (proceedDownLoad) {
-                            fileName = "C" + fileName + ".mp3";
-                            // fbLink = String.format(Locale.US, "http://www.lightinnj.org/mp3/k-mp3/C%04d.mp3", mHymnNo);
-                            fbLink = String.format(Locale.US, "http://mana.stmn1.com/sg/er/mp3/er%d.mp3", mHymnNo);
+                            dnLink = getDownloadLink(mHymnType, mHymnNo, HYMN_CHANGSHI);
                             break;
                         }
 
@@ -692,10 +684,7 @@ public class ContentHandler extends BaseActivity {
                         if (isFileExist(dir, mHymnNo, uriList)) break;
 
                         if (proceedDownLoad) {
-                            fileName = "X" + fileName + ".mp3";
-                            // fbLink = String.format(Locale.US, "http://g.cgbr.org/music/x/media/%03d.mp3", mHymnNo);
-                            // fbLink = String.format(Locale.US, "http://mana.stmn1.com/sg/xin/mp3/X%d.mp3", mHymnNo);
-                            fbLink = String.format(Locale.US, "http://four.soqimp.com/sg/xin/mp3/X%d.mp3", mHymnNo);
+                            dnLink = getDownloadLink(mHymnType, mHymnNo, HYMN_CHANGSHI);
                             break;
                         }
 
@@ -720,10 +709,7 @@ public class ContentHandler extends BaseActivity {
                         if (isFileExist(dir, mHymnNo, uriList)) break;
 
                         if (proceedDownLoad) {
-                            fileName = "xg" + fileName + ".mp3";
-                            // http://mana.stmn1.com/sg/csr/mp3/csr20.mp3
-                            // fbLink = String.format(Locale.US, "http://mana.stmn1.com/sg/csr/mp3/csr%d.mp3", mHymnNo);
-                            fbLink = String.format(Locale.US, "http://four.soqimp.com/sg/csr/mp3/csr%d.mp3", mHymnNo);
+                            dnLink = getDownloadLink(mHymnType, mHymnNo, HYMN_CHANGSHI);
                             break;
                         }
 
@@ -748,8 +734,7 @@ public class ContentHandler extends BaseActivity {
                         if (isFileExist(dir, mHymnNo, uriList)) break;
 
                         if (proceedDownLoad) {
-                            fileName = "xg" + fileName + ".mp3";
-                            // fbLink = String.format(Locale.US, "http://mana.stmn1.com/sg/yb/mp3/csr%d.mp3", mHymnNo);
+                            dnLink = getDownloadLink(mHymnType, mHymnNo, HYMN_CHANGSHI);
                             break;
                         }
 
@@ -774,11 +759,7 @@ public class ContentHandler extends BaseActivity {
                         if (isFileExist(dir, mHymnNo, uriList)) break;
 
                         if (proceedDownLoad) {
-                            fileName = "B" + fileName + ".mp3";
-                            // https://www.hymnal.net/Hymns/Chinese/mp3/ch_0048_vocal.mp3
-                            // fbLink = String.format(Locale.US, "https://www.hymnal.net/cn/hymn/ts/%d/f=sing", mHymnNo);
-                            // fbLink = String.format(Locale.US, "http://four.soqimp.com/sg/bu/mp3/B%d.mp3", mHymnNo);
-                            fbLink = String.format(Locale.US, "http://mana.stmn1.com/sg/bu/mp3/B%d.mp3", mHymnNo);
+                            dnLink = getDownloadLink(mHymnType, mHymnNo, HYMN_CHANGSHI);
                             break;
                         }
 
@@ -794,10 +775,7 @@ public class ContentHandler extends BaseActivity {
                         if (isFileExist(dir, mHymnNo, uriList)) break;
 
                         if (proceedDownLoad) {
-                            fileName = "B" + fileName + ".mid";
-                            // fbLink = String.format(Locale.US, "https://www.hymnal.net/cn/hymn/ts/%d/f=mid", mHymnNo);
-                            // https://www.hymnal.net/Hymns/ChineseTS/midi/tunes/ts0014_tune.midi
-                            fbLink = String.format(Locale.US, "https://www.hymnal.net/Hymns/ChineseTS/midi/tunes/ts%04d_tune.midi", mHymnNo);
+                            dnLink = getDownloadLink(mHymnType, mHymnNo, HYMN_BANZOU);
                             break;
                         }
                 }
@@ -818,10 +796,7 @@ public class ContentHandler extends BaseActivity {
                         if (isFileExist(dir, mHymnNo, uriList)) break;
 
                         if (proceedDownLoad) {
-                            fileName = "D" + fileName + ".mp3";
-                            // http://g.cgbr.org/music/d/media/48m.mp3
-                            // fbLink = String.format(Locale.US, "https://www.hymnal.net/cn/hymn/ch/%d/f=sing", mHymnNo);
-                            fbLink = String.format(Locale.US, "http://mana.stmn1.com/sg/da/Dmp3/D%d.mp3", mHymnNo);
+                            dnLink = getDownloadLink(mHymnType, mHymnNo, HYMN_CHANGSHI);
                             break;
                         }
 
@@ -837,15 +812,16 @@ public class ContentHandler extends BaseActivity {
                         if (isFileExist(dir, mHymnNo, uriList)) break;
 
                         if (proceedDownLoad) {
-                            fileName = "D" + fileName + ".mid";
-                            fbLink = String.format(Locale.US, "https://www.hymnal.net/cn/hymn/ch/%d/f=mid", mHymnNo);
+                            dnLink = getDownloadLink(mHymnType, mHymnNo, HYMN_BANZOU);
                             break;
                         }
                 }
                 break;
         }
 
-        if (!TextUtils.isEmpty(fbLink) && !TextUtils.isEmpty(fileName)) {
+        if (dnLink != null) {
+            String fileName = dnLink[0] + mHymnNo + getHymnTitle() + dnLink[1];
+            String fbLink = dnLink[2];
             Timber.d("Download Info: FileName = %s%s; fbLink = %s", dir, fileName, fbLink);
             mMediaDownloadHandler.initHttpFileDownload(fbLink, dir, fileName);
             return uriList;
@@ -858,9 +834,76 @@ public class ContentHandler extends BaseActivity {
         return mMediaContentHandler.playIfVideo(uriList);
     }
 
+    /**
+     * Get the predefined online download link of the hymn media file for HYMN_CHANGSHI and HYMN_BANZOU;
+     * also used by the OfflinePackScheduler to fetch all the missing media files of a hymn book.
+     * The hymn title is inserted between the file name prefix and extension for the local media file name.
+     *
+     * @param hymnType the hymnType
+     * @param hymnNo the hymn No
+     * @param mediaType media Type i.e. HYMN_CHANGSHI or HYMN_BANZOU
+     *
+     * @return {fileNamePrefix, fileExtension, dnLink}; or null if no online download link is available
+     */
+    public static String[] getDownloadLink(String hymnType, int hymnNo, MediaType mediaType) {
+        // http://mana.stmn1.com/
+        if (mediaType == HYMN_CHANGSHI) {
+            switch (hymnType) {
+                case HYMN_ER:
+                    // http://www.lightinnj.org/mp3/k-mp3/C%04d.mp3
+                    return new String[]{"C", ".mp3",
+                            String.format(Locale.US, "http://mana.stmn1.com/sg/er/mp3/er%d.mp3", hymnNo)};
+
+                case HYMN_XB:
+                    // http://g.cgbr.org/music/x/media/%03d.mp3
+                    // http://mana.stmn1.com/sg/xin/mp3/X%d.mp3
+                    return new String[]{"X", ".mp3",
+                            String.format(Locale.US, "http://four.soqimp.com/sg/xin/mp3/X%d.mp3", hymnNo)};
+
+                case HYMN_XG:
+                    // http://mana.stmn1.com/sg/csr/mp3/csr20.mp3
+                    // http://mana.stmn1.com/sg/csr/mp3/csr%d.mp3
+                    return new String[]{"xg", ".mp3",
+                            String.format(Locale.US, "http://four.soqimp.com/sg/csr/mp3/csr%d.mp3", hymnNo)};
+
+                case HYMN_YB:
+                    // http://mana.stmn1.com/sg/yb/mp3/csr%d.mp3
+                    return null;
+
+                case HYMN_BB:
+                    // https://www.hymnal.net/Hymns/Chinese/mp3/ch_0048_vocal.mp3
+                    // https://www.hymnal.net/cn/hymn/ts/%d/f=sing
+                    // http://four.soqimp.com/sg/bu/mp3/B%d.mp3
+                    return new String[]{"B", ".mp3",
+                            String.format(Locale.US, "http://mana.stmn1.com/sg/bu/mp3/B%d.mp3", hymnNo)};
+
+                case HYMN_DB:
+                    // http://g.cgbr.org/music/d/media/48m.mp3
+                    // https://www.hymnal.net/cn/hymn/ch/%d/f=sing
+                    return new String[]{"D", ".mp3",
+                            String.format(Locale.US, "http://mana.stmn1.com/sg/da/Dmp3/D%d.mp3", hymnNo)};
+            }
+        }
+        else if (mediaType == HYMN_BANZOU) {
+            switch (hymnType) {
+                case HYMN_BB:
+                    // https://www.hymnal.net/cn/hymn/ts/%d/f=mid
+                    // https://www.hymnal.net/Hymns/ChineseTS/midi/tunes/ts0014_tune.midi
+                    return new String[]{"B", ".mid",
+                            String.format(Locale.US, "https://www.hymnal.net/Hymns/ChineseTS/midi/tunes/ts%04d_tune.midi", hymnNo)};
+
+                case HYMN_DB:
+                    return new String[]{"D", ".mid",
+                            String.format(Locale.US, "https://www.hymnal.net/cn/hymn/ch/%d/f=mid", hymnNo)};
+            }
+        }
+        return null;
+    }
+
     /**
      * Search local Hymn media directory for wildCard media file for exact match of hymnNo optionally prefix with 0.
-     * init the local media file URI path for play back if any else return false
+     * init the local media file URI path for play back if any else return false.
+     * The lookup is via the MediaFileCatalog, without any media directory scan.
      *
      * @param dir the media local dir
      * @param hymnNo the hymn No
@@ -869,31 +912,40 @@ public class ContentHandler extends BaseActivity {
      * @return true if local media file is found else false
      */
     public static boolean isFileExist(String dir, int hymnNo, List<Uri> uriList) {
-        File hymnDir = FileBackend.getHymnchtvStore(dir, true);
-        if (hymnDir != null) {
-            // Exact word boundary number match e.g. ChHymns-0009.mp3
-            final Pattern patternB = Pattern.compile("\\b0*" + hymnNo + "\\b");
-            // Optional prefix character/zero's, with exact number matching e.g. D609建造.mp3
-            final Pattern patternC = Pattern.compile("\\D0*" + hymnNo + "\\D");
-
-            File[] fileList = hymnDir.listFiles(new FilenameFilter() {
-                @Override
-                public boolean accept(File dir, String name) {
-                    return patternB.matcher(name).find() || patternC.matcher(name).find();
-                }
-            });
+        if (uriList == null) {
+            return MediaFileCatalog.getInstance().hasMediaFile(dir, hymnNo);
+        }
 
-            if (fileList != null && fileList.length != 0) {
-                if (uriList != null) {
-                    Timber.d("Hymn #%s; Media file found (%s): %s", hymnNo, fileList.length, fileList[0].getPath());
-                    uriList.add(Uri.fromFile(fileList[0]));
-                }
-                return true;
-            }
+        List<File> fileList = MediaFileCatalog.getInstance().getMediaFiles(dir, hymnNo);
+        if (!fileList.isEmpty()) {
+            Timber.d("Hymn #%s; Media file found (%s): %s", hymnNo, fileList.size(), fileList.get(0).getPath());
+            uriList.add(Uri.fromFile(fileList.get(0)));
+            return true;
         }
         return false;
     }
 
+    /**
+     * Get the media file name filter for the given hymnNo.
+     *
+     * @param hymnNo the hymn number
+     *
+     * @return the FilenameFilter accepting only the file name containing the hymnNo
+     */
+    public static FilenameFilter getHymnNoFilter(int hymnNo) {
+        // Exact word boundary number match e.g. ChHymns-0009.mp3
+        final Pattern patternB = Pattern.compile("\\b0*" + hymnNo + "\\b");
+        // Optional prefix character/zero's, with exact number matching e.g. D609建造.mp3
+        final Pattern patternC = Pattern.compile("\\D0*" + hymnNo + "\\D");
+
+        return new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return patternB.matcher(name).find() || patternC.matcher(name).find();
+            }
+        };
+    }
+
     public static boolean isFileExist(MediaRecord mediaRecord) {
         if (mediaRecord != null) {
             String dir = mediaRecord.getHymnType() + MediaConfig.mediaDir.get(mediaRecord.getMediaType());
@@ -910,9 +962,6 @@ public class ContentHandler extends BaseActivity {
     private boolean[] getHymnMediaState() {
         boolean[] isAvailable = {false, false, false, false};
 
-        // Check to see if HYMN_MEDIA is available for the current selected HymnType/HymnNo
-        boolean isFu = mHymnType.equals(HYMN_DB) && (mHymnNo > HYMN_DB_NO_MAX);
-
         switch (mHymnType) {
             case HYMN_ER:
             case HYMN_XB:
@@ -929,37 +978,10 @@ public class ContentHandler extends BaseActivity {
                 break;
         }
 
-        String dir;
-        MediaType[] mediaTypes = MediaType.values();
-        for (int i = 0; i < mediaTypes.length; i++) {
-            MediaType mediaType = mediaTypes[i];
-            MediaRecord mediaRecord = new MediaRecord(mHymnType, mHymnNo, isFu, mediaType);
-
-            // Skip to next if state is already evaluated to true i.e. defined in DB media link
-            if ((isAvailable[i] |= mDB.getMediaRecord(mediaRecord, false)))
-                continue;
-
-            switch (mediaType) {
-                case HYMN_MEDIA:
-                    dir = mHymnType + MEDIA_MEDIA;
-                    isAvailable[0] = isFileExist(dir, mHymnNo, null);
-                    break;
-
-                case HYMN_JIAOCHANG:
-                    dir = mHymnType + MEDIA_JIAOCHANG;
-                    isAvailable[1] = isFileExist(dir, mHymnNo, null);
-                    break;
-
-                case HYMN_CHANGSHI:
-                    dir = mHymnType + MEDIA_CHANGSHI;
-                    isAvailable[2] = isFileExist(dir, mHymnNo, null);
-                    break;
-
-                case HYMN_BANZOU:
-                    dir = mHymnType + MEDIA_BANZOU;
-                    isAvailable[3] |= isFileExist(dir, mHymnNo, null);
-                    break;
-            }
+        // The media availability is either defined in DB media link or as the local media file
+        MediaAvailability availability = MediaAvailability.getInstance();
+        for (MediaType mediaType : MediaType.values()) {
+            isAvailable[mediaType.getValue()] |= availability.isAvailable(mHymnType, mHymnNo, mediaType);
         }
         return isAvailable;
     }
@@ -986,7 +1008,6 @@ public class ContentHandler extends BaseActivity {
      * @return the hymn info for display
      */
     public String getHymnInfo() {
-        String fileName = "";
         String hymnTitle = "";
         String hymnInfo = "";
         Resources res = getResources();
@@ -995,73 +1016,25 @@ public class ContentHandler extends BaseActivity {
             return String.format(Locale.CHINA, "英文 #%d: 这首英文诗歌没有匹配的中文歌词", mHymnNoEng);
         }
 
-        switch (mHymnType) {
-            case HYMN_ER:
-                fileName = LYRICS_ER_DIR + "er" + mHymnNo + ".txt";
-                break;
-
-            case HYMN_XG:
-                fileName = LYRICS_XG_DIR + "xg" + mHymnNo + ".txt";
-                break;
-
-            case HYMN_XB:
-                fileName = LYRICS_XB_DIR + "xb" + mHymnNo + ".txt";
-                break;
-
-            case HYMN_YB:
-                String hymnTN = ybXTable.get(mHymnNo);
-                if (hymnTN != null) {
-                    fileName = getHymnDir(hymnTN) + hymnTN + ".txt";
-                }
-                else {
-                    fileName = LYRICS_YB_DIR + "yb" + mHymnNo + ".txt";
-                }
-                break;
-
-            case HYMN_BB:
-                fileName = LYRICS_BB_DIR + "bb" + mHymnNo + ".txt";
-                break;
-
-            case HYMN_DB:
-                fileName = LYRICS_DB_DIR + "db" + mHymnNo + ".txt";
-                break;
-        }
-
-        try {
-            InputStream in2 = getResources().getAssets().open(fileName);
-            byte[] buffer2 = new byte[in2.available()];
-            if (in2.read(buffer2) == -1)
-                return hymnInfo;
-
-            String mResult = EncodingUtils.getString(buffer2, "utf-8");
-            String[] mList = mResult.split("\r\n|\n");
-
-            // fetch the hymn title with the category intact
-            hymnTitle = mList[1];
-
-            // Check the third line for additional info e.g.（诗篇二篇）（英1094）
-            int idx = mList[2].indexOf("（");
-            if (idx != -1) {
-                hymnTitle = hymnTitle + mList[2].substring(idx);
-            }
-
-            // Do the best guess to find the first phrase from lyrics
-            idx = 4;
-            String tmp = "";
-            while (tmp.length() < 6 && idx < mList.length) {
-                tmp = mList[idx++];
+        String hymnType = mHymnType;
+        int hymnNo = mHymnNo;
+        if (HYMN_YB.equals(mHymnType)) {
+            String hymnTN = ybXTable.get(mHymnNo);
+            if (hymnTN != null) {
+                hymnType = MainActivity.getHymnType(hymnTN);
+                hymnNo = Integer.parseInt(hymnTN.substring(2));
             }
+        }
 
-            lyricsPhrase = "";
-            mList = tmp.split("[，、‘’！：；。？]");
-            for (String s : mList) {
-                if (lyricsPhrase.length() < 6) {
-                    lyricsPhrase += s;
-                }
-            }
-        } catch (IOException e) {
-            Timber.w("Error getting info for hymn %s: %s", fileName, e.getMessage());
-            hymnTitle += getString(R.string.error_file_not_found, fileName);
+        HymnCatalog hymnCatalog = HymnCatalog.getInstance();
+        if (hymnCatalog.contains(hymnType, hymnNo)) {
+            // fetch the hymn title with the category intact, and the additional info e.g.（诗篇二篇）（英1094）
+            hymnTitle = hymnCatalog.getFullTitle(hymnType, hymnNo) + hymnCatalog.getTitleInfo(hymnType, hymnNo);
+            lyricsPhrase = hymnCatalog.getFirstPhrase(hymnType, hymnNo);
+        }
+        else {
+            Timber.w("Error getting info for hymn: %s%s", hymnType, hymnNo);
+            hymnTitle += getString(R.string.error_file_not_found, hymnType + hymnNo);
         }
 
         int resId = -1;
@@ -1095,24 +1068,6 @@ public class ContentHandler extends BaseActivity {
         return mHymnNoEng;
     }
 
-    public static String getHymnDir(String hymnTN) {
-        if (hymnTN.startsWith("er")) {
-            return LYRICS_ER_DIR;
-        }
-        if (hymnTN.startsWith("xb")) {
-            return LYRICS_XB_DIR;
-        }
-        else if (hymnTN.startsWith("xg")) {
-            return LYRICS_XG_DIR;
-        }
-        else if (hymnTN.startsWith("yb")) {
-            return LYRICS_YB_DIR;
-        }
-        else {
-            return hymnTN.startsWith("db") ? LYRICS_DB_DIR : LYRICS_BB_DIR;
-        }
-    }
-
     public void showNotionSite() {
         initWebView(UrlType.hymnNotionSearch, NotionRecord.getNotionSite(mHymnType, mHymnNo));
     }
@@ -16,12 +16,6 @@
  */
 package org.cog.hymnchtv;
 
-import static org.cog.hymnchtv.ContentView.LYRICS_BB_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_DB_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_ER_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_XB_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_XG_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_YB_DIR;
 import static org.cog.hymnchtv.MainActivity.ATTR_SEARCH;
 import static org.cog.hymnchtv.MainActivity.HYMN_BB;
 import static org.cog.hymnchtv.MainActivity.HYMN_DB;
@@ -29,305 +23,362 @@ import static org.cog.hymnchtv.MainActivity.HYMN_ER;
 import static org.cog.hymnchtv.MainActivity.HYMN_XB;
 import static org.cog.hymnchtv.MainActivity.HYMN_XG;
 import static org.cog.hymnchtv.MainActivity.HYMN_YB;
-import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_BB_NO_MAX;
+import static org.cog.hymnchtv.MainActivity.PREF_SETTINGS;
 import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_DB_NO_MAX;
-import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_DB_NO_TMAX;
-import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_ER_NO_MAX;
-import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_XB_NO_MAX;
-import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_XG_NO_MAX;
-import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_YB_NO_TMAX;
-import static org.cog.hymnchtv.utils.HymnNoValidate.rangeBbLimit;
-import static org.cog.hymnchtv.utils.HymnNoValidate.rangeErLimit;
 
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.graphics.Typeface;
 import android.os.Bundle;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.StyleSpan;
+import android.util.LruCache;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
 import android.widget.ListView;
-import android.widget.SimpleAdapter;
+import android.widget.ProgressBar;
+import android.widget.TextView;
 
 import androidx.activity.OnBackPressedCallback;
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
-import org.apache.http.util.EncodingUtils;
 import org.apache.http.util.TextUtils;
-
-import timber.log.Timber;
+import org.cog.hymnchtv.search.CharFold;
+import org.cog.hymnchtv.search.LyricsPack;
+import org.cog.hymnchtv.search.LyricsSearch;
+import org.cog.hymnchtv.search.LyricsSearchEngine;
+import org.cog.hymnchtv.search.SearchCursor;
+import org.cog.hymnchtv.search.SearchResult;
 
 /**
  * ContentSearch: search and display the matched results based on uer input text string.
- * Only the simplified Chinese lyrics has full contents for the hymns.
- * Currently, block Traditional Chinese search as CG cause HymnApp comes to a halt.
+ * A search string of latin letters only is looked up in the hymn titles and first lines pinyin index.
+ * Only the simplified Chinese lyrics has full contents for the hymns; the search string in traditional Chinese
+ * is matched via the CharFold table without any OpenCC conversion.
  *
  * @author Eng Chong Meng
  * @author wayfarer
  */
-public class ContentSearch extends BaseActivity {
-    /* Allowable maximum matched items for display */
-    private static final int HYMN_COUNT_MAX = 100;
+public class ContentSearch extends BaseActivity implements LyricsSearch.SearchListener {
+    /* User selected search mode: true for ranked search with results in relevance order */
+    public static final String PREF_SEARCH_RANKED = "SearchRanked";
+
+    /* Number of the recently shown rows matched text kept for the list view scrolling */
+    private static final int SNIPPET_CACHE_SIZE = 64;
+
+    /* All the search matched results as compact records; the display text is built for the shown rows only */
+    private final SearchCursor mCursor = new SearchCursor();
+
+    /* The matched text with highlight of the recently shown rows by position */
+    private final LruCache<Integer, CharSequence> mSnippets = new LruCache<>(SNIPPET_CACHE_SIZE);
+
+    private ResultAdapter mAdapter;
+
+    private ProgressBar mProgressBar;
+
+    /* The background lyrics content search engine */
+    private LyricsSearch mLyricsSearch;
 
-    /* Length of matched text to display*/
-    private static final int RESULT_MAX_LENGTH = 64;
+    private SharedPreferences mSharedPref;
 
-    /* running matching count number */
-    private int mCount = 0;
+    private String mSearchString = null;
 
-    // Array of matched hymnNo - used as a reference and index to find the hymntype to display the hymn lyrics
-    private final int[] mHymnNo = new int[HYMN_COUNT_MAX];
+    /* The folded search terms to be highlighted in the matched text */
+    private String[] mHighlightTerms = new String[0];
 
-    /* Map array of hymnNo to hymnType pairs that contain the matched text */
-    private final Map<Integer, String> mHmynNoType = new LinkedHashMap<>();
+    private boolean isRanked;
 
     /**
-     * Iterate all the defined hymn categories to search for user defined search string.
-     * Display the found result in list view, for user select and enter to the hymn lyrics display
+     * Start the background search of all the defined hymn categories for user defined search string.
+     * Display the found results in list view as they are received, for user select and enter to the hymn lyrics display
      *
      * @param savedInstanceState bundle
      */
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        String searchString = getIntent().getExtras().getString(ATTR_SEARCH);
-        if (TextUtils.isEmpty((searchString)))
-            return;
-
-        // The search matched contents for display and user selection
-        List<Map<String, Object>> data = new ArrayList<>();
-
-        int temp;
-        String fname;
-        String result;
+        setContentView(R.layout.content_search);
 
-        // 大本詩歌: Simplified Chinese entry search in LYRICS_DBS_TEXT
-        int hymnNo = 1;
-        while (hymnNo <= HYMN_DB_NO_TMAX) {
-            fname = LYRICS_DB_DIR + "db" + hymnNo + ".txt";
-            result = getMatchResult(fname, searchString);
-            if (result != null) {
-                mHymnNo[mCount] = hymnNo;
-                mHmynNoType.put(hymnNo, HYMN_DB);
+        mProgressBar = findViewById(R.id.search_progressbar);
+        mProgressBar.setMax(LyricsSearch.PROGRESS_MAX);
 
-                Map<String, Object> item_dbs = new HashMap<>();
-                if (hymnNo > HYMN_DB_NO_MAX) {
-                    temp = hymnNo - HYMN_DB_NO_MAX;
-                    item_dbs.put("match", getString(R.string.hymn_match_db_sp, temp, result));
-                }
-                else {
-                    item_dbs.put("match", getString(R.string.hymn_match_db, hymnNo, result));
-                }
-                data.add(item_dbs);
+        mSharedPref = getSharedPreferences(PREF_SETTINGS, 0);
+        isRanked = mSharedPref.getBoolean(PREF_SEARCH_RANKED, false);
 
-                mCount++;
-                if (mCount >= HYMN_COUNT_MAX) {
-                    break;
-                }
-            }
-            hymnNo++;
-        }
+        mAdapter = new ResultAdapter();
+        ListView listView = findViewById(R.id.search_result_list);
+        listView.setAdapter(mAdapter);
 
-        // 補充本詩歌: Simplified Chinese text entry search in LYRICS_BBS_TEXT
-        if (mCount < HYMN_COUNT_MAX) {
-            hymnNo = 1;
-            while (hymnNo <= HYMN_BB_NO_MAX) {
-                for (int rx = 0; rx < rangeBbLimit.length; rx++) {
-                    if (hymnNo == rangeBbLimit[rx]) {
-                        hymnNo = 100 * (rx + 1) + 1;
-                        break;
-                    }
-                }
+        // Show the lyrics of the user picked hymnNo.
+        listView.setOnItemClickListener((adapterView, view, pos, id) -> {
+            MainActivity.showContent(this, mCursor.getHymnType(pos), mCursor.getHymnNo(pos), false);
+        });
 
-                fname = LYRICS_BB_DIR + "bb" + hymnNo + ".txt";
-                result = getMatchResult(fname, searchString);
-                if (result != null) {
-                    mHymnNo[mCount] = hymnNo;
-                    mHmynNoType.put(hymnNo, HYMN_BB);
+        mLyricsSearch = new LyricsSearch(this);
+        getOnBackPressedDispatcher().addCallback(backPressedCallback);
+        startSearch(getIntent());
+    }
 
-                    Map<String, Object> item_bbs = new HashMap<>();
-                    item_bbs.put("match", getString(R.string.hymn_match_bb, hymnNo, result));
-                    data.add(item_bbs);
+    /**
+     * Start a new search if the activity is re-launched with a new search string.
+     */
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        startSearch(intent);
+    }
 
-                    mCount++;
-                    if (mCount >= HYMN_COUNT_MAX) {
-                        break;
-                    }
-                }
-                hymnNo++;
-            }
-        }
+    /**
+     * Cancel the search in progress when the activity is finishing.
+     */
+    @Override
+    protected void onDestroy() {
+        mLyricsSearch.cancel();
+        super.onDestroy();
+    }
 
-        // 新歌颂咏: Simplified Chinese text entry search in LYRICS_XB_TEXT
-        if (mCount < HYMN_COUNT_MAX) {
-            hymnNo = 1;
-            while (hymnNo <= HYMN_XB_NO_MAX) {
-                fname = LYRICS_XB_DIR + "xb" + hymnNo + ".txt";
-                result = getMatchResult(fname, searchString);
-                if (result != null) {
-                    mHymnNo[mCount] = hymnNo;
-                    mHmynNoType.put(hymnNo, HYMN_XB);
-
-                    Map<String, Object> item_xb = new HashMap<>();
-                    item_xb.put("match", getString(R.string.hymn_match_xb, hymnNo, result));
-                    data.add(item_xb);
-
-                    mCount++;
-                    if (mCount >= HYMN_COUNT_MAX) {
-                        break;
-                    }
-                }
-                hymnNo++;
-            }
-        }
+    /**
+     * Initial the search option menu
+     *
+     * @param menu the menu container
+     *
+     * @return true always
+     */
+    @Override
+    public boolean onCreateOptionsMenu(@NonNull Menu menu) {
+        super.onCreateOptionsMenu(menu);
+        getMenuInflater().inflate(R.menu.menu_search, menu);
+        menu.findItem(R.id.searchRanked).setChecked(isRanked);
+        return true;
+    }
 
-        // 新詩歌本: Simplified Chinese text entry search in LYRICS_XG_TEXT
-        if (mCount < HYMN_COUNT_MAX) {
-            hymnNo = 1;
-            while (hymnNo <= HYMN_XG_NO_MAX) {
-                fname = LYRICS_XG_DIR + "xg" + hymnNo + ".txt";
-                result = getMatchResult(fname, searchString);
-                if (result != null) {
-                    mHymnNo[mCount] = hymnNo;
-                    mHmynNoType.put(hymnNo, HYMN_XG);
-
-                    Map<String, Object> item_xg = new HashMap<>();
-                    item_xg.put("match", getString(R.string.hymn_match_xg, hymnNo, result));
-                    data.add(item_xg);
-
-                    mCount++;
-                    if (mCount >= HYMN_COUNT_MAX) {
-                        break;
-                    }
-                }
-                hymnNo++;
-            }
+    /**
+     * Toggle the ranked search mode, and restart the search with the user selected mode.
+     *
+     * @param item menu Item
+     *
+     * @return the handle state
+     */
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.searchRanked) {
+            isRanked = !item.isChecked();
+            item.setChecked(isRanked);
+            mSharedPref.edit().putBoolean(PREF_SEARCH_RANKED, isRanked).apply();
+            startSearch(mSearchString);
+            return true;
         }
+        return super.onOptionsItemSelected(item);
+    }
 
-        // 青年诗歌: Simplified Chinese text entry search in LYRICS_XB_TEXT
-        if (mCount < HYMN_COUNT_MAX) {
-            hymnNo = 1;
-            while (hymnNo <= HYMN_YB_NO_TMAX) {
-                fname = LYRICS_YB_DIR + "yb" + hymnNo + ".txt";
-                result = getMatchResult(fname, searchString);
-                if (result != null) {
-                    mHymnNo[mCount] = hymnNo;
-                    mHmynNoType.put(hymnNo, HYMN_YB);
-
-                    Map<String, Object> item_yb = new HashMap<>();
-                    item_yb.put("match", getString(R.string.hymn_match_yb, hymnNo, result));
-                    data.add(item_yb);
-
-                    mCount++;
-                    if (mCount >= HYMN_COUNT_MAX) {
-                        break;
-                    }
-                }
-                hymnNo++;
-            }
-        }
+    /**
+     * Start the background search for the search string in the given intent.
+     *
+     * @param intent the intent containing the search string
+     */
+    private void startSearch(Intent intent) {
+        Bundle bundle = intent.getExtras();
+        startSearch((bundle == null) ? null : bundle.getString(ATTR_SEARCH));
+    }
 
-        // 儿童诗歌: Simplified Chinese text entry search in LYRICS_ER_TEXT
-        if (mCount < HYMN_COUNT_MAX) {
-            hymnNo = 1;
-            while (hymnNo <= HYMN_ER_NO_MAX) {
-                for (int rx = 0; rx < rangeErLimit.length; rx++) {
-                    if (hymnNo == rangeErLimit[rx]) {
-                        hymnNo = 100 * (rx + 1) + 1;
-                        break;
-                    }
-                }
+    /**
+     * Clear the previous results and start the background search for the search string;
+     * any search in progress is cancelled.
+     *
+     * @param searchString the search string
+     */
+    private void startSearch(String searchString) {
+        if (TextUtils.isEmpty((searchString)))
+            return;
 
-                fname = LYRICS_ER_DIR + "er" + hymnNo + ".txt";
-                result = getMatchResult(fname, searchString);
-                if (result != null) {
-                    mHymnNo[mCount] = hymnNo;
-                    mHmynNoType.put(hymnNo, HYMN_ER);
+        mSearchString = searchString;
+        mCursor.clear();
+        mSnippets.evictAll();
+        mAdapter.notifyDataSetChanged();
+
+        // The search terms for highlighting are given by the search in progress
+        mHighlightTerms = new String[0];
+        mProgressBar.setProgress(0);
+        mProgressBar.setVisibility(View.VISIBLE);
+        setTitle(getString(R.string.hymn_match_searching, 0));
+        mLyricsSearch.search(searchString, isRanked);
+    }
 
-                    Map<String, Object> item_xb = new HashMap<>();
-                    item_xb.put("match", getString(R.string.hymn_match_er, hymnNo, result));
-                    data.add(item_xb);
+    @Override
+    public void onSearchTerms(String[] terms) {
+        mHighlightTerms = terms;
+    }
 
-                    mCount++;
-                    if (mCount >= HYMN_COUNT_MAX) {
-                        break;
-                    }
-                }
-                hymnNo++;
-            }
+    /**
+     * Append the matched results to the list view for user selection.
+     *
+     * @param results the matched results
+     */
+    @Override
+    public void onSearchResults(List<SearchResult> results) {
+        mCursor.addAll(results);
+        if (!results.isEmpty()) {
+            mAdapter.notifyDataSetChanged();
+            setTitle(getString(R.string.hymn_match_searching, mCursor.getCount()));
         }
-        showResult(data);
-        getOnBackPressedDispatcher().addCallback(backPressedCallback);
+    }
+
+    @Override
+    public void onSearchProgress(int progress) {
+        mProgressBar.setProgress(progress);
     }
 
     /**
-     * Display the matched contents for user defined search string
+     * Hide the progress bar and show the total matched count on search completed.
      *
-     * @param data The full search matched contents for display and user selection
+     * @param count total number of matched results
      */
-    private void showResult(List<Map<String, Object>> data) {
-        /*
-         * Display the search result to the user
-         */
-        SimpleAdapter adapter = new SimpleAdapter(this, data, R.layout.search_result, new String[]{"match"},
-                new int[]{R.id.textRow});
-
-        if (mCount != 0) {
-            setTitle(getString(R.string.hymn_match, mCount));
+    @Override
+    public void onSearchCompleted(int count) {
+        mProgressBar.setVisibility(View.GONE);
+        if (mCursor.getCount() != 0) {
+            setTitle(getString(R.string.hymn_match, mCursor.getCount()));
         }
         else {
             setTitle(R.string.hymn_match_none);
         }
+    }
 
-        ListView listView = new ListView(this);
-        listView.setAdapter(adapter);
-        setContentView(listView);
-
-        // Show the lyrics of the user picked hymnNo.
-        listView.setOnItemClickListener((adapterView, view, pos, id) -> {
-            int hymnNo = mHymnNo[pos];
-            String hymnType = mHmynNoType.get(hymnNo);
-            MainActivity.showContent(this, hymnType, hymnNo, false);
-        });
+    /**
+     * Get the highlighted matched text for display of the result at the given position; the matched text is
+     * derived from the lyrics text with the match offset if not given.
+     *
+     * @param position the result position in the cursor
+     *
+     * @return the matched text for display
+     */
+    private CharSequence getSnippet(int position) {
+        CharSequence snippet = mSnippets.get(position);
+        if (snippet == null) {
+            String hymnType = mCursor.getHymnType(position);
+            int hymnNo = mCursor.getHymnNo(position);
+
+            String matchText = mCursor.getMatchText(position);
+            if (matchText == null) {
+                matchText = LyricsSearchEngine.getMatchText(LyricsPack.getLyrics(hymnType, hymnNo),
+                        mCursor.getMatchOffset(position));
+            }
+            snippet = highlightTerms(getMatchText(this, hymnType, hymnNo, (matchText == null) ? "" : matchText));
+            mSnippets.put(position, snippet);
+        }
+        return snippet;
     }
 
     /**
-     * Search the content of the given file for the specified search string.
-     * return result if found, else null
+     * Highlight all the occurrences of the search terms in the given text.
      *
-     * @param fName The name of file to search
-     * @param sString the matching string
+     * @param text the matched text for display
      *
-     * @return matching string if found, else null
+     * @return the text with the search terms highlighted
      */
-    private String getMatchResult(String fName, String sString) {
-        byte[] buffer;
-        try {
-            InputStream inStream = getResources().getAssets().open(fName);
-            buffer = new byte[inStream.available()];
-            if (inStream.read(buffer) == 0) {
-                return null;
+    private CharSequence highlightTerms(String text) {
+        SpannableString spannable = new SpannableString(text);
+        if (mHighlightTerms.length == 0)
+            return spannable;
+
+        int color = ContextCompat.getColor(this, R.color.color_accent);
+
+        // Find the terms in the folded text, which has the same length as the text; skip the hymn info header line.
+        // The CharFold has been loaded by the search before giving the search terms.
+        String folded = CharFold.getInstance().fold(text);
+        int start = text.indexOf('\n') + 1;
+        for (String term : mHighlightTerms) {
+            int idx = folded.indexOf(term, start);
+            while (idx != -1) {
+                spannable.setSpan(new ForegroundColorSpan(color), idx, idx + term.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                spannable.setSpan(new StyleSpan(Typeface.BOLD), idx, idx + term.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                idx = folded.indexOf(term, idx + term.length());
             }
-        } catch (IOException e) {
-            Timber.w("Content search error: %s", e.getMessage());
-            return null;
         }
+        return spannable;
+    }
+
+    /**
+     * Get the matched text for display for the given hymnType and hymnNo.
+     *
+     * @param context the context for the string resources
+     * @param hymnType hymnType
+     * @param hymnNo hymnNo
+     * @param result the matched lyrics text
+     *
+     * @return the formatted text for display
+     */
+    public static String getMatchText(Context context, String hymnType, int hymnNo, String result) {
+        switch (hymnType) {
+            case HYMN_DB:
+                if (hymnNo > HYMN_DB_NO_MAX) {
+                    return context.getString(R.string.hymn_match_db_sp, hymnNo - HYMN_DB_NO_MAX, result);
+                }
+                return context.getString(R.string.hymn_match_db, hymnNo, result);
+
+            case HYMN_BB:
+                return context.getString(R.string.hymn_match_bb, hymnNo, result);
+
+            case HYMN_XB:
+                return context.getString(R.string.hymn_match_xb, hymnNo, result);
+
+            case HYMN_XG:
+                return context.getString(R.string.hymn_match_xg, hymnNo, result);
+
+            case HYMN_YB:
+                return context.getString(R.string.hymn_match_yb, hymnNo, result);
+
+            case HYMN_ER:
+                return context.getString(R.string.hymn_match_er, hymnNo, result);
+
+            default:
+                return result;
+        }
+    }
 
-        String result = EncodingUtils.getString(buffer, "utf-8");
-        result = result.substring(4);
+    /**
+     * The search results list adapter; the matched text is built only when the row is shown.
+     */
+    private class ResultAdapter extends BaseAdapter {
+        @Override
+        public int getCount() {
+            return mCursor.getCount();
+        }
 
-        int matchIdx = result.indexOf(sString);
-        if (matchIdx != -1) {
-            // find the start of the line for display
-            matchIdx = result.lastIndexOf("\n", matchIdx) + 1;
+        @Override
+        public Object getItem(int position) {
+            return getSnippet(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            if (convertView == null) {
+                convertView = getLayoutInflater().inflate(R.layout.search_result, parent, false);
+            }
+            ((TextView) convertView.findViewById(R.id.textRow)).setText(getSnippet(position));
 
-            result = result.substring(matchIdx);
-            if (result.length() > RESULT_MAX_LENGTH) {
-                result = result.substring(0, RESULT_MAX_LENGTH);
+            // Fetch the next page of the ranked results when the last result is shown
+            if (position == getCount() - 1 && mLyricsSearch.hasMore()) {
+                mProgressBar.setProgress(0);
+                mProgressBar.setVisibility(View.VISIBLE);
+                mLyricsSearch.searchMore();
             }
-            return result;
+            return convertView;
         }
-        return null;
     }
 
     /**
@@ -52,15 +52,12 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-
 import com.zqc.opencc.android.lib.ChineseConverter;
 import com.zqc.opencc.android.lib.ConversionType;
 
 import org.cog.hymnchtv.glide.MyGlideApp;
 import org.cog.hymnchtv.mediaconfig.LyricsEnglishRecord;
+import org.cog.hymnchtv.search.LyricsPack;
 import org.cog.hymnchtv.utils.ChineseS2TSelection;
 import org.cog.hymnchtv.utils.HymnIdx2NoConvert;
 import org.cog.hymnchtv.utils.ZoomTextView;
@@ -84,13 +81,6 @@ public class ContentView extends Fragment implements ZoomTextView.ZoomTextListen
     public static String SCORE_XG_DIR = "lyrics_xg_score/";
     public static String SCORE_YB_DIR = "lyrics_yb_score/";
 
-    public static String LYRICS_DB_DIR = "lyrics_db_text/";
-    public static String LYRICS_BB_DIR = "lyrics_bb_text/";
-    public static String LYRICS_ER_DIR = "lyrics_er_text/";
-    public static String LYRICS_XB_DIR = "lyrics_xb_text/";
-    public static String LYRICS_XG_DIR = "lyrics_xg_text/";
-    public static String LYRICS_YB_DIR = "lyrics_yb_text/";
-
     public static String LYRICS_TOC = "lyrics_toc/";
 
     public final static String LYRICS_TYPE = "lyricsType";
@@ -284,7 +274,6 @@ public class ContentView extends Fragment implements ZoomTextView.ZoomTextListen
      * @param hymnIndex hymn index provided by the page adapter when user scroll
      */
     private void updateHymnContent(String hymnType, int hymnIndex) {
-        String resFName;
         mHymnScoreInfo = HymnIdx2NoConvert.hymnIdx2NoConvert(hymnType, hymnIndex);
 
         // Chinese lyrics#
@@ -294,32 +283,26 @@ public class ContentView extends Fragment implements ZoomTextView.ZoomTextListen
         switch (hymnType) {
         case HYMN_ER:
             mResPrefix = SCORE_ER_DIR + lyricsNo;
-            resFName = LYRICS_ER_DIR + "er" + lyricsNo + ".txt";
             break;
 
         case HYMN_XB:
             mResPrefix = SCORE_XB_DIR + "xb" + lyricsNo;
-            resFName = LYRICS_XB_DIR + "xb" + lyricsNo + ".txt";
             break;
 
         case HYMN_XG:
             mResPrefix = SCORE_XG_DIR + "xg" + lyricsNo;
-            resFName = LYRICS_XG_DIR + "xg" + lyricsNo + ".txt";
             break;
 
         case HYMN_YB:
             mResPrefix = SCORE_YB_DIR + "yb" + lyricsNo;
-            resFName = LYRICS_YB_DIR + "yb" + lyricsNo + ".txt";
             break;
 
         case HYMN_BB:
             mResPrefix = SCORE_BB_DIR + "bb" + lyricsNo;
-            resFName = LYRICS_BB_DIR + "bb" + lyricsNo + ".txt";
             break;
 
         case HYMN_DB:
             mResPrefix = SCORE_DB_DIR + "db" + lyricsNo;
-            resFName = LYRICS_DB_DIR + "db" + lyricsNo + ".txt";
             break;
 
         default:
@@ -331,10 +314,8 @@ public class ContentView extends Fragment implements ZoomTextView.ZoomTextListen
         showLyricsScore(mResPrefix, mHymnScoreInfo);
 
         // Show Hymn Lyric Text for the selected hymnNo
-        if (!TextUtils.isEmpty(resFName)) {
-            setLyricsTextScale();
-            showLyricsChText(resFName);
-        }
+        setLyricsTextScale();
+        showLyricsChText(hymnType, lyricsNo);
     }
 
     /**
@@ -431,24 +412,35 @@ public class ContentView extends Fragment implements ZoomTextView.ZoomTextListen
     /**
      * Display the selected hymn lyrics text
      *
-     * @param resFName Lyrics text resource fileName
+     * @param hymnType the hymnType of the lyrics
+     * @param lyricsNo the hymnNo of the lyrics
      */
-    private void showLyricsChText(String resFName) {
-        try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(getResources().getAssets().open(resFName)));
-            StringBuilder lyrics = new StringBuilder();
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                lyrics.append(line);
-                lyrics.append('\n');
-            }
+    private void showLyricsChText(String hymnType, int lyricsNo) {
+        String lyrics = LyricsPack.getLyrics(hymnType, lyricsNo);
+        if (lyrics != null) {
             lyricsSimplify.setText(lyrics);
-            lyricsTraditional.setText(ChineseConverter.convert(lyrics.toString(), mConversionType, mContext));
 
+            // Use the build time pre-converted lyrics if available; else convert at view time
+            String lyricsConverted = LyricsPack.getConvertedLyrics(hymnType, lyricsNo, mConversionType.getValue());
+            if (lyricsConverted != null) {
+                lyricsTraditional.setText(lyricsConverted);
+            }
+            else if (ChineseConverter.isPrepared(mConversionType)) {
+                showConvertedLyrics(lyrics);
+            }
+            else {
+                // Convert once the dictionary data extraction in background has ended, without blocking the UI
+                lyricsTraditional.setText("");
+                final ConversionType conversionType = mConversionType;
+                ChineseConverter.prepare(mContext, conversionType, () -> new Handler(Looper.getMainLooper()).post(() -> {
+                    if (isAdded() && conversionType == mConversionType) {
+                        showConvertedLyrics(lyrics);
+                    }
+                }));
+            }
         }
-        catch (IOException e) {
-            Timber.w("Error reading file: %s", resFName);
+        else {
+            Timber.w("Error reading lyrics: %s%s", hymnType, lyricsNo);
         }
 
         // Auto launch or hint user to view lyrics text via online JiaoChang if available; er,length > 47
@@ -457,6 +449,22 @@ public class ContentView extends Fragment implements ZoomTextView.ZoomTextListen
         }
     }
 
+    /**
+     * Display the lyrics converted at view time; the conversion type dictionary data must have been prepared.
+     * The simplified lyrics is shown if the dictionary data or the conversion has failed.
+     *
+     * @param lyrics the simplified Chinese lyrics text
+     */
+    private void showConvertedLyrics(String lyrics) {
+        String lyricsConverted = ChineseConverter.isPrepared(mConversionType)
+                ? ChineseConverter.convert(lyrics, mConversionType, mContext) : null;
+        if (lyricsConverted == null) {
+            Timber.w("Lyrics conversion failed: %s", mConversionType);
+            lyricsConverted = lyrics;
+        }
+        lyricsTraditional.setText(lyricsConverted);
+    }
+
     /**
      * Update the lyrics text view default size and the stored scale factor
      * Also being used onConfiguration change
@@ -16,12 +16,7 @@
  */
 package org.cog.hymnchtv;
 
-import static org.cog.hymnchtv.ContentView.LYRICS_BB_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_DB_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_ER_DIR;
 import static org.cog.hymnchtv.ContentView.LYRICS_TOC;
-import static org.cog.hymnchtv.ContentView.LYRICS_XB_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_XG_DIR;
 import static org.cog.hymnchtv.MainActivity.ATTR_HYMN_TYPE;
 import static org.cog.hymnchtv.MainActivity.ATTR_PAGE;
 import static org.cog.hymnchtv.MainActivity.HYMN_BB;
@@ -63,6 +58,7 @@ import net.duguying.pinyin.PinyinException;
 
 import org.apache.http.util.EncodingUtils;
 import org.apache.http.util.TextUtils;
+import org.cog.hymnchtv.utils.HymnCatalog;
 
 import timber.log.Timber;
 
@@ -276,9 +272,7 @@ public class HymnToc extends BaseActivity {
 
                             while (hymnNo <= HYMN_DB_NO_TMAX) {
                                 if (rangeToc.contains(hymnNo)) {
-                                    fname = LYRICS_DB_DIR + "db" + hymnNo + ".txt";
-
-                                    String hymnTitle = getHymnTitle(hymnNo, fname);
+                                    String hymnTitle = getHymnTitle(HYMN_DB, hymnNo);
                                     if (hymnNo > HYMN_DB_NO_MAX) {
                                         hymnTitle = hymnTitle.replace(": ", ": 附" + (hymnNo - HYMN_DB_NO_MAX) + "-");
                                     }
@@ -327,8 +321,7 @@ public class HymnToc extends BaseActivity {
                                 }
 
                                 if (rangeToc.contains(hymnNo)) {
-                                    fname = LYRICS_BB_DIR + "bb" + hymnNo + ".txt";
-                                    tocItems.add(getHymnTitle(hymnNo, fname));
+                                    tocItems.add(getHymnTitle(HYMN_BB, hymnNo));
                                     hymnNo++;
                                 }
                                 else {
@@ -364,8 +357,7 @@ public class HymnToc extends BaseActivity {
 
                             while (hymnNo <= HYMN_XB_NO_MAX) {
                                 if (rangeToc.contains(hymnNo)) {
-                                    fname = LYRICS_XB_DIR + "xb" + hymnNo + ".txt";
-                                    tocItems.add(getHymnTitle(hymnNo, fname));
+                                    tocItems.add(getHymnTitle(HYMN_XB, hymnNo));
                                     hymnNo++;
                                 }
                                 else {
@@ -408,8 +400,7 @@ public class HymnToc extends BaseActivity {
 
                             while (hymnNo <= HYMN_XG_NO_MAX) {
                                 if (rangeToc.contains(hymnNo)) {
-                                    fname = LYRICS_XG_DIR + "xg" + hymnNo + ".txt";
-                                    tocItems.add(getHymnTitle(hymnNo, fname));
+                                    tocItems.add(getHymnTitle(HYMN_XG, hymnNo));
                                     hymnNo++;
                                 }
                                 else {
@@ -503,8 +494,7 @@ public class HymnToc extends BaseActivity {
                                 }
 
                                 if (rangeToc.contains(hymnNo)) {
-                                    fname = LYRICS_ER_DIR + "er" + hymnNo + ".txt";
-                                    tocItems.add(getHymnTitle(hymnNo, fname));
+                                    tocItems.add(getHymnTitle(HYMN_ER, hymnNo));
                                     hymnNo++;
                                 }
                                 else {
@@ -575,61 +565,23 @@ public class HymnToc extends BaseActivity {
     }
 
     /**
-     * Search the content of the given file for the specified search string.
-     * return result if found, else null
+     * Get the hymn title of the given hymn from the hymn catalog for the toc display.
      *
-     * @param fName The name of file to search
+     * @param hymnType The hymnType
+     * @param hymnNo The hymn number
      *
-     * @return matching string if found, else null
+     * @return the hymn title with the category stripped off, and with the additional info e.g.（诗篇二篇）（英1094）;
+     * empty if not available
      */
-    private String getHymnTitle(int hymnNo, String fName) {
-        String hymnTitle = "";
-
-        // These two variables are used to generate "英中对照"
-        // String engStr = "";
-        // String engNoStr = "";
-
-        try {
-            InputStream in2 = getResources().getAssets().open(fName);
-            byte[] buffer2 = new byte[in2.available()];
-            if (in2.read(buffer2) == -1)
-                return hymnTitle;
-
-            String mResult = EncodingUtils.getString(buffer2, "utf-8");
-            String[] mList = mResult.split("\r\n|\n");
-
-            // fetch the hymn title with the category stripped off
-            hymnTitle = mList[1];
-            int idx = hymnTitle.lastIndexOf("－");
-            if (idx != -1) {
-                hymnTitle = hymnTitle.substring(idx + 1);
-            }
-            // engStr = hymnTitle; //"英中对照"
-
-            // Check the third line for additional info e.g.（诗篇二篇）（英1094）
-            idx = mList[2].indexOf("（");
-            if (idx != -1) {
-                hymnTitle = hymnTitle + mList[2].substring(idx);
-            }
-            hymnTitle = String.format(Locale.CHINA, "%04d: %s", hymnNo, hymnTitle);
-
-            // This section is used to generate "英中对照"
-//            {
-//                idx = mList[2].lastIndexOf("（英");
-//                if (idx != -1) {
-//                    int idx2 = mList[2].lastIndexOf("）");
-//                    engNoStr = mList[2].substring(idx + 2, idx2);
-//                }
-//
-//                int engNo = (TextUtils.isEmpty(engNoStr)) ? 0 : Integer.parseInt(engNoStr.split("[，|,]")[0]);
-//                // String engXRef = String.format(Locale.CHINA, "%s %s #%d", engNo, engStr, hymnNo);
-//                Timber.d("English ### %04d: %s #%d", engNo, engStr, hymnNo);
-//            }
-
-        } catch (IOException e) {
-            Timber.w("Content search error: %s", e.getMessage());
+    private String getHymnTitle(String hymnType, int hymnNo) {
+        HymnCatalog hymnCatalog = HymnCatalog.getInstance();
+        if (!hymnCatalog.contains(hymnType, hymnNo)) {
+            Timber.w("Hymn not in catalog: %s%s", hymnType, hymnNo);
+            return "";
         }
-        return hymnTitle;
+
+        String hymnTitle = hymnCatalog.getTitle(hymnType, hymnNo) + hymnCatalog.getTitleInfo(hymnType, hymnNo);
+        return String.format(Locale.CHINA, "%04d: %s", hymnNo, hymnTitle);
     }
 
     /**
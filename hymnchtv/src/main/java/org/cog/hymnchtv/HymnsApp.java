@@ -52,8 +52,12 @@ import androidx.lifecycle.ProcessLifecycleOwner;
 
 import java.util.List;
 
+import com.zqc.opencc.android.lib.ChineseConverter;
+import com.zqc.opencc.android.lib.ConversionType;
+
 import org.cog.hymnchtv.impl.timberlog.TimberLogImpl;
 import org.cog.hymnchtv.persistance.DatabaseBackend;
+import org.cog.hymnchtv.persistance.MediaAvailability;
 import org.cog.hymnchtv.service.androidnotification.NotificationHelper;
 import org.cog.hymnchtv.service.androidupdate.OnlineUpdateService;
 import org.cog.hymnchtv.service.androidupdate.UpdateServiceImpl;
@@ -143,6 +147,14 @@ public class HymnsApp extends Application implements LifecycleEventObserver {
         // Purge all the previously old downloaded apk
         UpdateServiceImpl.getInstance().removeOldDownloads();
         EdgeToEdgeDisable();
+
+        // Extract the OpenCC dictionary data of the user selected conversion type in background
+        String cType = getSharedPreferences(PREF_SETTINGS, 0).getString(ContentView.PREF_CONVERSION_TYPE,
+                ConversionType.S2T.toString());
+        ChineseConverter.prepare(this, ConversionType.valueOf(cType));
+
+        // Load the media availability index in background, off the first hymn page display
+        MediaAvailability.prepare();
     }
 
     /**
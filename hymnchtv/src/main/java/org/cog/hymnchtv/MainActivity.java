@@ -44,7 +44,9 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.PowerManager;
 import android.provider.Settings;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.view.ContextMenu;
 import android.view.Gravity;
 import android.view.Menu;
@@ -56,6 +58,7 @@ import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.LinearLayout;
+import android.widget.ListPopupWindow;
 import android.widget.ListView;
 import android.widget.Spinner;
 import android.widget.TextView;
@@ -84,18 +87,18 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
-import com.zqc.opencc.android.lib.ChineseConverter;
-import com.zqc.opencc.android.lib.ConversionType;
-
 import org.apache.http.util.EncodingUtils;
 import org.cog.hymnchtv.hymnhistory.HistoryRecord;
 import org.cog.hymnchtv.logutils.LogUploadServiceImpl;
 import org.cog.hymnchtv.mediaconfig.MediaConfig;
 import org.cog.hymnchtv.mediaconfig.MediaRecord;
+import org.cog.hymnchtv.mediaconfig.OfflinePackConfig;
 import org.cog.hymnchtv.persistance.DatabaseBackend;
 import org.cog.hymnchtv.persistance.FileBackend;
 import org.cog.hymnchtv.persistance.FilePathHelper;
 import org.cog.hymnchtv.persistance.PermissionUtils;
+import org.cog.hymnchtv.search.SearchResult;
+import org.cog.hymnchtv.search.SearchSuggestion;
 import org.cog.hymnchtv.service.androidupdate.UpdateServiceImpl;
 import org.cog.hymnchtv.utils.DialogActivity;
 import org.cog.hymnchtv.utils.HymnNoValidate;
@@ -202,6 +205,12 @@ public class MainActivity extends BaseActivity implements AdapterView.OnItemSele
     private TextView mEntry;
     private EditText tv_Search;
 
+    /* The search-as-you-type suggestions dropdown under the tv_Search */
+    private ListPopupWindow mSuggestionPopup;
+    private ArrayAdapter<String> mSuggestionAdapter;
+    private SearchSuggestion mSearchSuggestion;
+    private final List<SearchResult> mSuggestions = new ArrayList<>();
+
     private LinearLayout background;
 
     private SharedPreferences mSharedPref;
@@ -330,8 +339,7 @@ public class MainActivity extends BaseActivity implements AdapterView.OnItemSele
                 HymnsApp.showToastMessage(R.string.error_search_empty);
                 return;
             }
-            sValue = ChineseConverter.convert(sValue, ConversionType.T2S, this);
-            tv_Search.setText(sValue);
+            dismissSuggestions();
 
             Intent intent = new Intent();
             intent.setClass(this, ContentSearch.class);
@@ -345,7 +353,6 @@ public class MainActivity extends BaseActivity implements AdapterView.OnItemSele
         btn_search.setOnLongClickListener(v -> {
             String sValue = tv_Search.getText().toString();
             if (!TextUtils.isEmpty(sValue)) {
-                sValue = ChineseConverter.convert(sValue, ConversionType.T2S, this);
                 sValue = sValue.replaceAll("他", "祂");
                 tv_Search.setText(sValue);
             }
@@ -440,6 +447,12 @@ public class MainActivity extends BaseActivity implements AdapterView.OnItemSele
         configureToolBar();
     }
 
+    @Override
+    protected void onPause() {
+        dismissSuggestions();
+        super.onPause();
+    }
+
     /**
      * Configure the main activity action bar using
      * a. Android actionBar
@@ -944,6 +957,11 @@ public class MainActivity extends BaseActivity implements AdapterView.OnItemSele
                 startActivity(intent);
                 return true;
 
+            case R.id.offline_pack:
+                intent = new Intent(this, OfflinePackConfig.class);
+                startActivity(intent);
+                return true;
+
             case R.id.permission_request:
                 onInfoButtonClicked();
                 return true;
@@ -993,6 +1011,7 @@ public class MainActivity extends BaseActivity implements AdapterView.OnItemSele
         });
 
         tv_Search = findViewById(R.id.tv_search);
+        initSearchSuggestion();
 
         btn_n0 = findViewById(R.id.n0);
         btn_n1 = findViewById(R.id.n1);
@@ -1089,6 +1108,74 @@ public class MainActivity extends BaseActivity implements AdapterView.OnItemSele
         showContent(this, sRecord.getHymnType(), sRecord.getHymnNo(), false);
     }
 
+    /**
+     * Init the search-as-you-type suggestions dropdown for the tv_Search; user may pick a suggested hymn
+     * to show its lyrics directly.
+     */
+    private void initSearchSuggestion() {
+        mSuggestionAdapter = new ArrayAdapter<>(this, R.layout.search_result, R.id.textRow, new ArrayList<>());
+        mSuggestionPopup = new ListPopupWindow(this);
+        mSuggestionPopup.setAnchorView(tv_Search);
+        mSuggestionPopup.setAdapter(mSuggestionAdapter);
+        mSuggestionPopup.setOnItemClickListener((parent, view, position, id) -> {
+            SearchResult suggestion = mSuggestions.get(position);
+            dismissSuggestions();
+            showContent(this, suggestion.hymnType, suggestion.hymnNo, false);
+        });
+
+        mSearchSuggestion = new SearchSuggestion(this::onSearchSuggestions);
+        tv_Search.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (tv_Search.hasFocus()) {
+                    mSearchSuggestion.query(s.toString());
+                }
+                else {
+                    dismissSuggestions();
+                }
+            }
+        });
+    }
+
+    /**
+     * Show the search suggestions for the current tv_Search text in the dropdown; hide if there is none.
+     *
+     * @param query the query text of the suggestions
+     * @param suggestions the matched hymns with the matched line
+     */
+    private void onSearchSuggestions(String query, List<SearchResult> suggestions) {
+        mSuggestions.clear();
+        mSuggestions.addAll(suggestions);
+
+        mSuggestionAdapter.clear();
+        for (SearchResult suggestion : suggestions) {
+            mSuggestionAdapter.add(ContentSearch.getMatchText(this, suggestion.hymnType, suggestion.hymnNo,
+                    suggestion.matchText));
+        }
+
+        if (suggestions.isEmpty()) {
+            mSuggestionPopup.dismiss();
+        }
+        else if (!isFinishing()) {
+            mSuggestionPopup.show();
+        }
+    }
+
+    private void dismissSuggestions() {
+        if (mSearchSuggestion != null) {
+            mSearchSuggestion.cancel();
+            mSuggestionPopup.dismiss();
+        }
+    }
+
     @SuppressLint("ClickableViewAccessibility")
     private void initHistoryList() {
         List<HistoryRecord> historyRecords = mDB.getHistoryRecords();
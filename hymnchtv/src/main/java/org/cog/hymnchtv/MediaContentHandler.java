@@ -36,6 +36,7 @@ import java.util.List;
 
 import org.apache.http.util.TextUtils;
 import org.cog.hymnchtv.mediaconfig.MediaRecord;
+import org.cog.hymnchtv.mediaplayer.MediaCache;
 import org.cog.hymnchtv.mediaplayer.MediaExoPlayerFragment;
 import org.cog.hymnchtv.mediaplayer.YoutubePlayerFragment;
 import org.cog.hymnchtv.persistance.DatabaseBackend;
@@ -94,7 +95,9 @@ public class MediaContentHandler {
         boolean isFu = hymnTable.equals(HYMN_DB) && (hymnNo > HYMN_DB_NO_MAX);
         MediaRecord mediaRecord = new MediaRecord(hymnTable, hymnNo, isFu, mediaType);
         if (mDB.getMediaRecord(mediaRecord, true)) {
-            if (!(isHandled = getUriList(mediaRecord.getMediaFilePath(), uriList))) {
+            // Use the media file exported from the MediaCache if the url link media has been fully streamed
+            if (!(isHandled = getUriList(mediaRecord.getMediaFilePath(), uriList))
+                    && !(isHandled = getUriList(MediaCache.getInstance().getOfflineMedia(mediaRecord), uriList))) {
                 isHandled = getUriList(mediaRecord.getMediaUri(), uriList);
             }
             return (isHandled || !uriList.isEmpty());
@@ -16,13 +16,6 @@
  */
 package org.cog.hymnchtv;
 
-import android.app.DownloadManager;
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -34,17 +27,19 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 
 import java.io.File;
 import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.NavigableMap;
-import java.util.TreeMap;
 
 import org.cog.hymnchtv.persistance.FileBackend;
-import org.cog.hymnchtv.persistance.FilePathHelper;
+import org.cog.hymnchtv.service.download.DownloadEngine;
+import org.cog.hymnchtv.service.download.DownloadJob;
+import org.cog.hymnchtv.service.download.DownloadListener;
+import org.cog.hymnchtv.service.download.DownloadRequest;
+import org.cog.hymnchtv.service.download.ThroughputEstimator;
 import org.cog.hymnchtv.utils.AndroidUtils;
 import org.cog.hymnchtv.utils.ByteFormat;
 
@@ -65,16 +60,8 @@ public class MediaDownloadHandler extends Fragment {
     private TextView estTimeRemain = null;
     private ProgressBar progressBar = null;
 
-    /* DownloadManager Broadcast Receiver Handler */
-    private DownloadManager downloadManager;
-    private DownloadReceiver downloadReceiver = null;
-
-    /* previousDownloads map of <DownloadJobId, @notNull destFile>; need TreeMap.lastKey */
-    private final static NavigableMap<Long, File> fileDownloads = new TreeMap<>();
-    private final static NavigableMap<Long, String> linkDownloads = new TreeMap<>();
-
-    // File download variables
-    protected File mXferFile;
+    /* The in progress downloads map of <destFile, DownloadJob>; accessed on the main thread only */
+    private final static Map<File, DownloadJob> fileDownloads = new HashMap<>();
 
     private ContentHandler mContentHandler;
 
@@ -104,17 +91,6 @@ public class MediaDownloadHandler extends Fragment {
     public void onResume() {
         super.onResume();
         mContentHandler = (ContentHandler) getContext();
-        if (mContentHandler == null)
-            return;
-
-        if (downloadManager == null)
-            downloadManager = HymnsApp.getDownloadManager();
-
-        if (downloadReceiver == null) {
-            downloadReceiver = new DownloadReceiver();
-            ContextCompat.registerReceiver(HymnsApp.getGlobalContext(), downloadReceiver,
-                    new IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE), ContextCompat.RECEIVER_EXPORTED);
-        }
     }
 
     /**
@@ -148,7 +124,7 @@ public class MediaDownloadHandler extends Fragment {
         }
 
         File destFile = new File(subDir, fileName);
-        if (fileDownloads.containsValue(destFile)) {
+        if (fileDownloads.containsKey(destFile)) {
             HymnsApp.showToastMessage(R.string.download_wait);
             fileXferUi.setVisibility(View.VISIBLE);
             Timber.w("Skip duplicated download file request: %s", destFile.getAbsolutePath());
@@ -166,343 +142,158 @@ public class MediaDownloadHandler extends Fragment {
         } catch (UnsupportedEncodingException e) {
             Timber.w("Exception in URLEncoder.encode (%s): %s", fileName, e.getMessage());
         }
-        Uri uri = Uri.parse(encDnLnk);
 
-        long jobId = download(uri, fileName);
-        if (jobId != -1) {
-            fileDownloads.put(jobId, destFile);
-            linkDownloads.put(jobId, encDnLnk);
-            startProgressChecker();
-        }
-        else {
-            fileXferUi.setVisibility(View.GONE);
-        }
+        // Reset before the job is started, so the estimator gets only the new job progress
+        mFileSize = 0;
+        mEstimator.reset();
+
+        // mFileSize == 1 if file not found online
+        DownloadRequest request = new DownloadRequest(encDnLnk, destFile).setMinSize(MIN_FILE_SIZE);
+        mLastJob = DownloadEngine.getInstance().enqueue(request, mDownloadListener);
+        fileDownloads.put(destFile, mLastJob);
     }
 
     /**
-     * Schedules media file download.
+     * The download job listener; all the callbacks are called on the download worker threads.
+     * The progress is fed to the thread-safe estimator directly, and only the UI refresh is posted to the
+     * main thread; a pending refresh is replaced by the new one, so the UI update never falls behind.
      */
-    private long download(Uri uri, String fileName) {
-        DownloadManager.Request request = new DownloadManager.Request(uri);
-        request.setNotificationVisibility(DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED);
-
-        File tmpFile = new File(fileName);
-        try {
-            mXferFile = new File(FileBackend.getHymnchtvStore(FileBackend.TMP, true), fileName);
-            request.setDestinationUri(Uri.fromFile(mXferFile));
-
-            return downloadManager.enqueue(request);
-        } catch (SecurityException e) {
-            HymnsApp.showToastMessage(e.getMessage());
-        } catch (Exception e) {
-            Timber.w("Download Manager failed for: %s; %s", tmpFile.getAbsolutePath(), e.getMessage());
-            HymnsApp.showToastMessage(R.string.file_does_not_exist);
+    private final DownloadListener mDownloadListener = new DownloadListener() {
+        @Override
+        public void onProgress(DownloadJob job, long downloadedBytes, long totalBytes) {
+            // Show download progress for the last file transfer task entry only
+            if (job != mLastJob)
+                return;
+
+            mEstimator.update(downloadedBytes, totalBytes);
+            handler.removeCallbacks(progressUpdater);
+            handler.post(progressUpdater);
         }
-        return -1;
-    }
 
-    private class DownloadReceiver extends BroadcastReceiver {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            // Fetching the download id received with the broadcast and
-            // if the received broadcast is for our enqueued download by matching download id
-            long downloadJobId = intent.getLongExtra(DownloadManager.EXTRA_DOWNLOAD_ID, -1);
-            int downloadJobStatus = checkDownloadStatus(downloadJobId);
-
-            if (fileDownloads.containsKey(downloadJobId)) {
-                String dnLink = linkDownloads.get(downloadJobId);
-
-                if (downloadJobStatus == DownloadManager.STATUS_SUCCESSFUL) {
-                    Uri fileUri = downloadManager.getUriForDownloadedFile(downloadJobId);
-                    File inFile = new File(FilePathHelper.getFilePath(context, fileUri));
-
-                    if (inFile.exists()) {
-                        // update fileSize for progress bar update, in case it is still not updated by download Manager
-                        mFileSize = inFile.length();
-                        File destFile = fileDownloads.get(downloadJobId);
-                        // destFile will always not null; just to keep AS happy
-                        String destFName = (destFile != null) ? destFile.getName() : "";
-
-                        // Rename will move the received media infile to destFile dir.
-                        // mFileSize == 1 if file not found online
-                        if ((mFileSize > 200) && (destFile != null) && inFile.renameTo(destFile)) {
-                            String uiLabel = fileLabel.getText().toString();
-                            Timber.d("Downloaded file: %s (size: %s); label: %s; Playback GUI active: %s",
-                                    destFName, mFileSize, uiLabel, fileXferUi.isShown());
-
-                            // Start playing only if the same player user still stay put.
-                            // Otherwise, ui is not sync and user has no control of the play back
-                            if (fileXferUi.isShown() && uiLabel.startsWith(destFName)) {
-                                mContentHandler.startPlay();
-                            }
-                        }
-                        else {
-                            Timber.d("Downloaded file failed: %s (size: %s) <= %s",
-                                    inFile.getAbsolutePath(), mFileSize, dnLink);
-                            onError(HymnsApp.getResString(R.string.file_download_failed, dnLink));
-                        }
-                    }
-                }
-                else if (downloadJobStatus == DownloadManager.STATUS_FAILED) {
-                    onError(HymnsApp.getResString(R.string.file_download_failed, dnLink));
+        public void onCompleted(DownloadJob job) {
+            handler.post(() -> {
+                File destFile = job.getRequest().getDestFile();
+                fileDownloads.remove(destFile);
+                if (fileXferUi == null || !isAdded())
+                    return;
+
+                String destFName = destFile.getName();
+                String uiLabel = fileLabel.getText().toString();
+                Timber.d("Downloaded file: %s (size: %s); label: %s; Playback GUI active: %s",
+                        destFName, destFile.length(), uiLabel, fileXferUi.isShown());
+
+                // Start playing only if the same player user still stay put.
+                // Otherwise, ui is not sync and user has no control of the play back
+                if (fileXferUi.isShown() && uiLabel.startsWith(destFName)) {
+                    mContentHandler.startPlay();
                 }
-            }
-            // Remove lastDownloadId from downloadManager record and delete the tmp file
-            downloadManager.remove(downloadJobId);
-            fileDownloads.remove(downloadJobId);
-            linkDownloads.remove(downloadJobId);
-
-            if (fileDownloads.isEmpty())
-                fileXferUi.setVisibility(View.GONE);
+                if (fileDownloads.isEmpty())
+                    fileXferUi.setVisibility(View.GONE);
+            });
+        }
 
+        @Override
+        public void onFailed(DownloadJob job, String reason) {
+            handler.post(() -> {
+                fileDownloads.remove(job.getRequest().getDestFile());
+                if (fileXferUi == null || !isAdded())
+                    return;
+
+                String dnLink = job.getRequest().getUrl();
+                Timber.d("Downloaded file failed: %s <= %s; %s", job.getRequest().getDestFile(), dnLink, reason);
+                onError(HymnsApp.getResString(R.string.file_download_failed, dnLink));
+                if (fileDownloads.isEmpty())
+                    fileXferUi.setVisibility(View.GONE);
+            });
         }
-    }
+    };
 
     private void onError(String statusText) {
         fileStatus.setVisibility(View.GONE);
         fileStatus.setText(statusText);
-        mContentHandler.onEndOrError(statusText);
-    }
-
-    /**
-     * Get the jobId for the given dnFile
-     *
-     * @param dnFile previously download File
-     *
-     * @return jobId for the dnFile if available else -1
-     */
-    private long getJobId(File dnFile) {
-        for (Map.Entry<Long, File> entry : fileDownloads.entrySet()) {
-            if (entry.getValue().equals(dnFile)) {
-                return entry.getKey();
-            }
-        }
-        return -1;
+        if (mContentHandler != null)
+            mContentHandler.onEndOrError(statusText);
     }
 
     //=========================================================
     /*
      * Monitoring file download progress
      */
-    private static final int PROGRESS_DELAY = 1000;
+    // The minimum valid media file size; the server returns a tiny file if the file is not found online
+    private static final long MIN_FILE_SIZE = 200;
 
-    // The maximum download idle time (60 seconds) before it is forced stop
-    private static final int MAX_IDLE_TIME = 60;
-
-    private boolean isProgressCheckerRunning = false;
     private final Handler handler = new Handler(Looper.getMainLooper());
 
-    private long previousProgress;
-    private int waitTime;
-
-    /**
-     * The size of the file to be transferred.
-     */
-    private long mFileSize = 0;
-
-    /**
-     * The time of the last fileTransfer update.
-     */
-    private long mLastTimestamp = -1;
-
     /**
-     * The number of bytes in last transferred.
+     * The most recent download job, with its progress shown in the UI.
      */
-    private long mLastTransferredBytes = 0;
+    private volatile DownloadJob mLastJob = null;
 
     /**
-     * The last calculated average progress speed.
+     * The download speed and remaining time estimator of the most recent download job.
      */
-    private long mTransferSpeedAverage = 0;
-
-    /**
-     * The last estimated remaining time.
-     */
-    private long mEstimatedTimeLeft = -1;
-
-    /**
-     * Starts monitoring the download progress.
-     * This method is safe to call multiple times. Starting an already running progress checker is a no-op.
-     */
-    private void startProgressChecker() {
-        if (!isProgressCheckerRunning) {
-            isProgressCheckerRunning = true;
-
-            mLastTransferredBytes = 0;
-            waitTime = MAX_IDLE_TIME;
-            previousProgress = -1;
-
-            progressChecker.run();
-        }
-    }
+    private final ThroughputEstimator mEstimator = new ThroughputEstimator();
 
     /**
-     * Stops monitoring download progress.
+     * The size of the file to be transferred, as shown in the file label.
      */
-    private void stopProgressChecker() {
-        isProgressCheckerRunning = false;
-        handler.removeCallbacks(progressChecker);
-    }
+    private long mFileSize = 0;
 
     /**
-     * Checks download progress and updates status, then re-schedules itself.
+     * Refresh the download progress UI of the most recent download job from the estimator.
      */
-    private final Runnable progressChecker = new Runnable() {
+    private final Runnable progressUpdater = new Runnable() {
         @Override
         public void run() {
-            if (isProgressCheckerRunning) {
-                checkProgress();
-                handler.postDelayed(this, PROGRESS_DELAY);
+            DownloadJob job = mLastJob;
+            if (job != null && fileXferUi != null) {
+                updateProgress(job.getRequest().getDestFile().getName());
             }
         }
     };
 
     /**
-     * Queries the <tt>DownloadManager</tt> for the status of download job identified by the given <tt>id</tt>.
-     *
-     * @param id download identifier which status will be returned.
-     *
-     * @return download status of the job identified by given id. If the given job is not found
-     * {@link DownloadManager#STATUS_FAILED} will be returned.
-     */
-    private int checkDownloadStatus(long id) {
-        DownloadManager.Query query = new DownloadManager.Query();
-        query.setFilterById(id);
-
-        try (Cursor cursor = downloadManager.query(query)) {
-            if (!cursor.moveToFirst())
-                return DownloadManager.STATUS_FAILED;
-            else {
-                return cursor.getInt(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_STATUS));
-            }
-        }
-    }
-
-    /**
-     * Checks and show to user download progress for the last file transfer task entry only
-     */
-    private void checkProgress() {
-        if (fileDownloads.isEmpty()) {
-            stopProgressChecker();
-            return;
-        }
-
-        File lastdestFile = fileDownloads.get(fileDownloads.lastKey());
-        long lastDownloadId = getJobId(lastdestFile);
-        if (lastDownloadId == -1)
-            return;
-
-        int lastJobStatus = checkDownloadStatus(lastDownloadId);
-        String mFileName = lastdestFile.getName();
-
-        // Terminate downloading task if failed or idleTime timeout
-        if (lastJobStatus == DownloadManager.STATUS_FAILED || waitTime <= 0) {
-            // Remove lastDownloadId from downloadManager record and delete the tmp file
-            downloadManager.remove(lastDownloadId);
-            fileDownloads.remove(lastDownloadId);
-            linkDownloads.remove(lastDownloadId);
-
-            File tmpFile = new File(FileBackend.getHymnchtvStore(FileBackend.TMP, false), mFileName);
-            Timber.d("Downloading file failed due to slow progress: %s (%s): %s",
-                    tmpFile.length(), mFileSize, tmpFile.getAbsolutePath());
-            onError(HymnsApp.getResString(R.string.file_download_failed, tmpFile.getAbsolutePath()));
-            return;
-        }
-
-        DownloadManager.Query query = new DownloadManager.Query();
-        query.setFilterById(lastDownloadId);
-        query.setFilterByStatus(~(DownloadManager.STATUS_FAILED | DownloadManager.STATUS_SUCCESSFUL));
-        Cursor cursor = downloadManager.query(query);
-
-        if (cursor.moveToFirst()) {
-            mFileSize = cursor.getLong(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_TOTAL_SIZE_BYTES));
-            long progress = cursor.getLong(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR));
-
-            if (progressBar.isShown()) {
-                fileLabel.setText(getFileLabel(mFileName, mFileSize));
-                progressBar.setMax((int) mFileSize);
-            }
-
-            if (progress <= previousProgress) {
-                waitTime--;
-                Timber.d("Downloading file countdown, jobId: %s; status: %s; dnProgress: %s (%s)",
-                        lastDownloadId, lastJobStatus, previousProgress, waitTime);
-                if (waitTime < 50) {
-                    fileXferSpeed.setText(HymnsApp.getResString(R.string.download_timeout_timer, waitTime));
-                }
-            }
-            else {
-                waitTime = MAX_IDLE_TIME;
-                previousProgress = progress;
-            }
-            updateProgress(mFileName, previousProgress, System.currentTimeMillis());
-        }
-        cursor.close();
-    }
-
-    /**
-     * Calculate a moving average for file download speed with a larger SMOOTHING_FACTOR;
+     * Show the download progress, with the smoothed download speed and remaining time from the estimator;
      * so the UI display remaining time is no so jumpy
      *
-     * @param transferredBytes file size
-     * @param progressTimestamp time stamp
+     * @param fileName the download file name
      */
-    private void updateProgress(String fileName, long transferredBytes, long progressTimestamp) {
-        long SMOOTHING_FACTOR = 100;
-
-        // before file transfer start is -1
-        if (transferredBytes == -1)
-            return;
-
-        final String bytesString = ByteFormat.format(transferredBytes);
-        long byteTransferDelta = (transferredBytes == 0) ? 0 : (transferredBytes - mLastTransferredBytes);
-
-        // Calculate running average transfer speed in bytes/sec and time left, with the given SMOOTHING_FACTOR
-        if (mLastTimestamp > 0) {
-            long timeElapsed = progressTimestamp - mLastTimestamp;
-            long transferSpeedCurrent = (timeElapsed > 0) ? (byteTransferDelta * 1000) / timeElapsed : 0;
-            if (mTransferSpeedAverage != 0) {
-                mTransferSpeedAverage = (transferSpeedCurrent + (SMOOTHING_FACTOR - 1) * mTransferSpeedAverage) / SMOOTHING_FACTOR;
-            }
-            else {
-                mTransferSpeedAverage = transferSpeedCurrent;
-            }
-        }
-        else {
-            mEstimatedTimeLeft = -1;
+    private void updateProgress(String fileName) {
+        long transferredBytes = mEstimator.getTransferredBytes();
+        long totalBytes = mEstimator.getTotalBytes();
+        long bytesPerSecond = mEstimator.getBytesPerSecond();
+        long estimatedTimeLeft = mEstimator.getRemainingSeconds();
+
+        if (totalBytes > 0 && mFileSize != totalBytes) {
+            mFileSize = totalBytes;
+            fileLabel.setText(getFileLabel(fileName, mFileSize));
+            progressBar.setMax((int) mFileSize);
         }
 
-        // Calculate  running average time left in sec
-        if (mTransferSpeedAverage > 0)
-            mEstimatedTimeLeft = (mFileSize - transferredBytes) / mTransferSpeedAverage;
-
-        mLastTimestamp = progressTimestamp;
-        mLastTransferredBytes = transferredBytes;
-
         // Need to do it here as it was found that Http File Upload completed before the progress Bar is even visible
         if (!progressBar.isShown()) {
             progressBar.setVisibility(View.VISIBLE);
-            if (mXferFile != null)
-                progressBar.setMax((int) mXferFile.length());
+            progressBar.setMax((int) mFileSize);
         }
         // Note: progress bar can only handle int size (4-bytes: 2,147,483, 647);
         progressBar.setProgress((int) transferredBytes);
 
-        if (mTransferSpeedAverage > 0) {
+        if (bytesPerSecond > 0) {
             fileXferSpeed.setVisibility(View.VISIBLE);
-            fileXferSpeed.setText(
-                    HymnsApp.getResString(R.string.download_speed, ByteFormat.format(mTransferSpeedAverage), bytesString));
+            fileXferSpeed.setText(HymnsApp.getResString(R.string.download_speed,
+                    ByteFormat.format(bytesPerSecond), ByteFormat.format(transferredBytes)));
         }
         Timber.d("%s RxByte = %s / %s; TimeLeft = %s; speed = %s", fileName, transferredBytes, mFileSize,
-                mEstimatedTimeLeft, mTransferSpeedAverage);
+                estimatedTimeLeft, bytesPerSecond);
 
         if (transferredBytes >= mFileSize) {
             estTimeRemain.setVisibility(View.GONE);
         }
-        else if (mEstimatedTimeLeft > 0) {
+        else if (estimatedTimeLeft > 0) {
             estTimeRemain.setVisibility(View.VISIBLE);
             estTimeRemain.setText(HymnsApp.getResString(R.string.download_remaining_time,
-                    AndroidUtils.formatSeconds(mEstimatedTimeLeft * 1000)));
+                    AndroidUtils.formatSeconds(estimatedTimeLeft * 1000)));
         }
     }
 }
@@ -16,12 +16,6 @@
  */
 package org.cog.hymnchtv.hymnhistory;
 
-import static org.cog.hymnchtv.ContentView.LYRICS_BB_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_DB_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_ER_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_XB_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_XG_DIR;
-import static org.cog.hymnchtv.ContentView.LYRICS_YB_DIR;
 import static org.cog.hymnchtv.MainActivity.HYMN_BB;
 import static org.cog.hymnchtv.MainActivity.HYMN_DB;
 import static org.cog.hymnchtv.MainActivity.HYMN_ER;
@@ -33,26 +27,22 @@ import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_DB_NO_MAX;
 
 import android.content.res.Resources;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.Date;
 
-import org.apache.http.util.EncodingUtils;
 import org.apache.http.util.TextUtils;
 import org.cog.hymnchtv.HymnsApp;
 import org.cog.hymnchtv.MainActivity;
 import org.cog.hymnchtv.R;
+import org.cog.hymnchtv.utils.HymnCatalog;
 import org.jetbrains.annotations.NotNull;
 
-import timber.log.Timber;
-
 /**
  * The class provide handlers for the HistoryRecord
  * The format of the history record consists of: hymnType, HymnNo, isFu, hymnTitle, timeStamp
  * a. hymnType: HYMN_DB HYMN_BB, HYMN_XG, HYMN_XB, HYMN_YB, HYMN_ER
  * b. HymnNo: Hymn number
  * c. isFu: true if the hymnNo if Fu
- * d. hymnTile: extract from the lyrics file
+ * d. hymnTile: extract from the hymn catalog
  * e. timeStamp: Timestamp of user last access to the hymnType/hymnNo
  *
  * @author Eng Chong Meng
@@ -79,7 +69,7 @@ public class HistoryRecord {
 
     public HistoryRecord(String hymnType, int hymnNo, boolean isFu, String title, long timeStamp) {
         if (TextUtils.isEmpty(title))
-            title = getHymnInfoFromFile(hymnType, hymnNo);
+            title = getHymnInfoFromCatalog(hymnType, hymnNo);
 
         if (timeStamp == -1)
             timeStamp = new Date().getTime();
@@ -120,19 +110,14 @@ public class HistoryRecord {
     }
 
     /**
-     * Fetch the hymn tile from the given hymnType and hymnNo for the lyrics file
-     * The lyrics filename is based on the two given parameters
+     * Fetch the hymn info from the hymn catalog for the given hymnType and hymnNo
      *
      * @param hymnType The given hymnType
      * @param hymnNo The given hymnNo
      *
-     * @return the hymn title with category stripped off
+     * @return the lyrics first phrase; or the hymn title with category stripped off if the phrase is too short
      */
-    private String getHymnInfoFromFile(String hymnType, int hymnNo) {
-        String fileName = "";
-        String hymnTitle = "";
-        String lyricsPhrase = "";
-
+    private String getHymnInfoFromCatalog(String hymnType, int hymnNo) {
         if (HYMN_YB.equals(hymnType)) {
             String hymnTN = ybXTable.get(hymnNo);
             if (hymnTN != null) {
@@ -141,65 +126,9 @@ public class HistoryRecord {
             }
         }
 
-        switch (hymnType) {
-            case HYMN_ER:
-                fileName = LYRICS_ER_DIR + "er" + hymnNo + ".txt";
-                break;
-
-            case HYMN_XG:
-                fileName = LYRICS_XG_DIR + "xg" + hymnNo + ".txt";
-                break;
-
-            case HYMN_XB:
-                fileName = LYRICS_XB_DIR + "xb" + hymnNo + ".txt";
-                break;
-
-            case HYMN_YB:
-                fileName = LYRICS_YB_DIR + "yb" + hymnNo + ".txt";
-                break;
-
-            case HYMN_BB:
-                fileName = LYRICS_BB_DIR + "bb" + hymnNo + ".txt";
-                break;
-
-            case HYMN_DB:
-                fileName = LYRICS_DB_DIR + "db" + hymnNo + ".txt";
-                break;
-        }
-
-        try {
-            InputStream in2 = HymnsApp.getAppResources().getAssets().open(fileName);
-            byte[] buffer2 = new byte[in2.available()];
-            if (in2.read(buffer2) == -1)
-                return lyricsPhrase;
-
-            String mResult = EncodingUtils.getString(buffer2, "utf-8");
-            String[] mList = mResult.split("\r\n|\n");
-
-            // fetch the hymn title with the category stripped off (not further use)
-            hymnTitle = mList[1];
-            int idx = hymnTitle.lastIndexOf("－");
-            if (idx != -1) {
-                hymnTitle = hymnTitle.substring(idx + 1);
-            }
-
-            // Do the best guess to find the first phrase from lyrics
-            idx = 4;
-            String tmp = "";
-            while (tmp.length() < 6 && idx < mList.length) {
-                tmp = mList[idx++];
-            }
-
-            mList = tmp.split("[，、‘’！：；。？]");
-            for (String s : mList) {
-                if (lyricsPhrase.length() < 6) {
-                    lyricsPhrase += s;
-                }
-            }
-        } catch (IOException e) {
-            Timber.w("Content search error: %s \n%s", fileName, e.getMessage());
-        }
-        return lyricsPhrase.length() < 3 ? hymnTitle : lyricsPhrase;
+        HymnCatalog hymnCatalog = HymnCatalog.getInstance();
+        String lyricsPhrase = hymnCatalog.getFirstPhrase(hymnType, hymnNo);
+        return lyricsPhrase.length() < 3 ? hymnCatalog.getTitle(hymnType, hymnNo) : lyricsPhrase;
     }
 
     /**
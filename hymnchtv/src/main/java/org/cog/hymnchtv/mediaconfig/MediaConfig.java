@@ -52,6 +52,7 @@ import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextUtils;
 import android.text.TextWatcher;
+import android.text.format.Formatter;
 import android.view.View;
 import android.view.WindowManager;
 import android.webkit.URLUtil;
@@ -86,7 +87,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
-import org.apache.http.util.EncodingUtils;
 import org.cog.hymnchtv.BaseActivity;
 import org.cog.hymnchtv.ContentHandler;
 import org.cog.hymnchtv.HymnsApp;
@@ -94,13 +94,13 @@ import org.cog.hymnchtv.MainActivity;
 import org.cog.hymnchtv.MediaType;
 import org.cog.hymnchtv.R;
 import org.cog.hymnchtv.RichTextEditor;
+import org.cog.hymnchtv.mediaplayer.MediaCache;
 import org.cog.hymnchtv.mediaplayer.MediaExoPlayerFragment;
 import org.cog.hymnchtv.persistance.DatabaseBackend;
 import org.cog.hymnchtv.persistance.FileBackend;
 import org.cog.hymnchtv.persistance.FilePathHelper;
 import org.cog.hymnchtv.utils.DialogActivity;
 import org.cog.hymnchtv.utils.HymnNoValidate;
-import org.cog.hymnchtv.utils.TimberLog;
 import org.cog.hymnchtv.utils.ViewUtil;
 
 import timber.log.Timber;
@@ -139,6 +139,7 @@ public class MediaConfig extends BaseActivity
     public static final String MEDIA_TYPE = "mediaType";  // see MEDIA_xxx
     public static final String MEDIA_URI = "mediaUri";    // set to null if none
     public static final String MEDIA_FILE_PATH = "mediaFilePath"; // set to null if none
+    public static final String MEDIA_IS_LINK = "isLink"; // set to 1 if mediaUri is a http link else 0
 
     // The asset Url import file name
     public static final String ASSET_URL_IMPORT_FILE = "url_import.txt";
@@ -178,6 +179,7 @@ public class MediaConfig extends BaseActivity
     private EditText tvMediaUri;
     private EditText tvImportFile;
     private View mFileView;
+    private TextView mCacheInfoView;
 
     // The EditText view to be filled onActivityResult upon user selection
     private TextView mViewRequest;
@@ -295,6 +297,7 @@ public class MediaConfig extends BaseActivity
         tvMediaUri.setOnFocusChangeListener(focusListener);
 
         mFileView = findViewById(R.id.mediaMissing);
+        mCacheInfoView = findViewById(R.id.mediaCacheInfo);
         mFileView.setVisibility(View.GONE);
 
         mViewRequest = tvMediaUri;
@@ -380,9 +383,22 @@ public class MediaConfig extends BaseActivity
     protected void onResume() {
         super.onResume();
         btnNQ.setTextColor(btnNQ.isEnabled() ? Color.DKGRAY : Color.LTGRAY);
+        showCacheInfo();
         getWindow().setSoftInputMode(WindowManager.LayoutParams.SOFT_INPUT_STATE_ALWAYS_HIDDEN);
     }
 
+    /**
+     * Show the streamed media cache size and its hit ratio since the app start.
+     */
+    private void showCacheInfo() {
+        MediaCache mediaCache = MediaCache.getInstance();
+        float hitRatio = mediaCache.getHitRatio();
+        mCacheInfoView.setText(getString(R.string.media_cache_info,
+                Formatter.formatShortFileSize(this, mediaCache.getCacheSize()),
+                Formatter.formatShortFileSize(this, MediaCache.MAX_CACHE_SIZE),
+                (hitRatio < 0) ? "-" : String.format(Locale.US, "%.0f%%", hitRatio * 100)));
+    }
+
     @Override
     public void onClick(View v) {
         switch (v.getId()) {
@@ -1078,40 +1094,32 @@ public class MediaConfig extends BaseActivity
      */
     public static void importUrlRecords(InputStream inputStream, boolean isOverWrite) {
         // HymnsApp.showToastMessage(R.string.db_import_start); not required.
-        int record = 0;
-        int urlRecords = 0;
+        int[] result = new int[2];
 
         try {
-            byte[] buffer2 = new byte[inputStream.available()];
-            if (inputStream.read(buffer2) == -1) {
-                return;
-            }
-
-            String mResult = EncodingUtils.getString(buffer2, "utf-8");
-            String[] mList = mResult.split("\r\n|\n");
-            // Timber.d("No of Records: %s", mList.length);
-
-            for (String mRecord : mList) {
-                MediaRecord mediaRecord = MediaRecord.toRecord(mRecord);
-                if (mediaRecord == null)
-                    continue;
-
-                boolean isFu = mediaRecord.isFu();
-                int hymnNo = isFu ? (mediaRecord.getHymnNo() - HYMN_DB_NO_MAX) : mediaRecord.getHymnNo();
-                int nui = HymnNoValidate.validateHymnNo(mediaRecord.getHymnType(), hymnNo, isFu);
-                if ((nui != -1) && (isOverWrite || !hasMediaRecord(mediaRecord))) {
-                    mDB.storeMediaRecord(mediaRecord);
-                    record++;
+            mDB.importMediaRecords(inputStream, isOverWrite, new DatabaseBackend.MediaImportCallback() {
+                @Override
+                public boolean accept(MediaRecord mediaRecord) {
+                    boolean isFu = mediaRecord.isFu();
+                    int hymnNo = isFu ? (mediaRecord.getHymnNo() - HYMN_DB_NO_MAX) : mediaRecord.getHymnNo();
+                    if (HymnNoValidate.validateHymnNo(mediaRecord.getHymnType(), hymnNo, isFu) == -1)
+                        return false;
+
+                    // Existing record in database is handled by the importer; skip if the media file exists
+                    return isOverWrite || !ContentHandler.isFileExist(mediaRecord);
                 }
-                urlRecords++;
 
-                if (TimberLog.isFinestEnable)
-                    Timber.d("Import media record: %s; %s(%s); %s", nui, hymnNo, record, mRecord);
-            }
+                @Override
+                public void onProgress(int imported, int processed) {
+                    result[0] = imported;
+                    result[1] = processed;
+                    Timber.d("Import media records progress: %s/%s", imported, processed);
+                }
+            });
         } catch (IOException e) {
             Timber.w("Import file read error: %s", e.getMessage());
         }
-        HymnsApp.showToastMessage(R.string.db_import_record, record, urlRecords);
+        HymnsApp.showToastMessage(R.string.db_import_record, result[0], result[1]);
     }
 
     /**
@@ -1175,16 +1183,12 @@ public class MediaConfig extends BaseActivity
             FileWriter fileWriter;
             try {
                 fileWriter = new FileWriter(exportFile.getAbsolutePath());
-                for (String hymnType : hymnTypeValue) {
-                    List<MediaRecord> mediaRecords = mDB.getMediaLinks(hymnType);
-                    if (!mediaRecords.isEmpty()) {
-                        recordSize += mediaRecords.size();
-                        for (MediaRecord mediaRecord : mediaRecords) {
-                            String mRecord = mediaRecord.toExportString();
-                            if (mRecord != null)
-                                fileWriter.write(mRecord);
-                        }
-                    }
+                List<MediaRecord> mediaRecords = mDB.getMediaLinks();
+                recordSize = mediaRecords.size();
+                for (MediaRecord mediaRecord : mediaRecords) {
+                    String mRecord = mediaRecord.toExportString();
+                    if (mRecord != null)
+                        fileWriter.write(mRecord);
                 }
                 fileWriter.close();
 
@@ -38,6 +38,8 @@ import timber.log.Timber;
  * @see MediaConfig for the format of the media record
  */
 public class MediaRecord {
+    public static final String TABLE_NAME = "media";
+
     public static final String DOWNLOAD_FP = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS).getAbsolutePath();
     public static final String DOWNLOAD_DIR = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS).getName();
 
@@ -103,6 +105,16 @@ public class MediaRecord {
         return mFilePath;
     }
 
+    /**
+     * Check if the media uri is a web link; same as the sql mediaUri LIKE 'http%'.
+     *
+     * @return true if the media uri is a http or https link
+     */
+    public boolean isMediaLink() {
+        String mediaUri = getMediaUri();
+        return (mediaUri != null) && mediaUri.regionMatches(true, 0, "http", 0, 4);
+    }
+
     /**
      * 附 hymn number must always greater than HYMN_DB_NO_MAX in DB database.
      *
@@ -0,0 +1,249 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.mediaconfig;
+
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.CheckBox;
+import android.widget.EditText;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cog.hymnchtv.BaseActivity;
+import org.cog.hymnchtv.HymnsApp;
+import org.cog.hymnchtv.MediaType;
+import org.cog.hymnchtv.R;
+import org.cog.hymnchtv.service.download.OfflinePackScheduler;
+import org.cog.hymnchtv.service.download.OfflinePackScheduler.Pack;
+import org.cog.hymnchtv.utils.AndroidUtils;
+import org.cog.hymnchtv.utils.ByteFormat;
+
+/**
+ * The offline pack settings to download all the missing HYMN_CHANGSHI/HYMN_BANZOU media files of the selected
+ * hymn book or hymnNo range, with the OfflinePackScheduler download queue and its aggregate progress.
+ *
+ * @author Eng Chong Meng
+ */
+public class OfflinePackConfig extends BaseActivity implements View.OnClickListener,
+        AdapterView.OnItemSelectedListener, OfflinePackScheduler.ProgressListener {
+    /* The hymn books with the online media download links, and their spinner entries */
+    private final List<String> hymnTypeEntry = new ArrayList<>();
+    private final List<String> hymnTypeValue = new ArrayList<>();
+
+    /* Only HYMN_CHANGSHI and HYMN_BANZOU have the predefined online download links */
+    private final List<String> mediaTypeEntry = new ArrayList<>();
+    private final List<MediaType> mediaTypeValue = new ArrayList<>();
+
+    private OfflinePackScheduler mScheduler;
+
+    private Spinner hymnTypeSpinner;
+    private Spinner mediaTypeSpinner;
+    private EditText tvHymnNoFrom;
+    private EditText tvHymnNoTo;
+    private EditText tvMaxJobs;
+    private CheckBox cbUnmeteredOnly;
+    private CheckBox cbChargingOnly;
+    private TextView tvPackQueue;
+    private TextView tvPackProgress;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.offline_pack_config);
+        setTitle(R.string.offline_pack);
+        mScheduler = OfflinePackScheduler.getInstance();
+
+        for (int i = 0; i < MediaConfig.hymnTypeValue.size(); i++) {
+            String hymnType = MediaConfig.hymnTypeValue.get(i);
+            if (OfflinePackScheduler.PACK_HYMN_TYPES.containsKey(hymnType)) {
+                hymnTypeValue.add(hymnType);
+                hymnTypeEntry.add(MediaConfig.hymnTypeEntry.get(i));
+            }
+        }
+        for (int i = 0; i < MediaConfig.mediaTypeValue.size(); i++) {
+            MediaType mediaType = MediaConfig.mediaTypeValue.get(i);
+            if (mediaType == MediaType.HYMN_CHANGSHI || mediaType == MediaType.HYMN_BANZOU) {
+                mediaTypeValue.add(mediaType);
+                mediaTypeEntry.add(MediaConfig.mediaTypeEntry.get(i));
+            }
+        }
+
+        // Create an ArrayAdapter using the string array and hymnApp default spinner layout
+        ArrayAdapter<?> hymnTypeAdapter = new ArrayAdapter<>(this, R.layout.simple_spinner_item_light, hymnTypeEntry);
+        hymnTypeAdapter.setDropDownViewResource(R.layout.spinner_dropdown_item_radio);
+        hymnTypeSpinner = findViewById(R.id.hymnType);
+        hymnTypeSpinner.setAdapter(hymnTypeAdapter);
+        hymnTypeSpinner.setSelection(0, false);
+        hymnTypeSpinner.setOnItemSelectedListener(this);
+
+        ArrayAdapter<?> mediaTypeAdapter = new ArrayAdapter<>(this, R.layout.simple_spinner_item_light, mediaTypeEntry);
+        mediaTypeAdapter.setDropDownViewResource(R.layout.spinner_dropdown_item_radio);
+        mediaTypeSpinner = findViewById(R.id.mediaType);
+        mediaTypeSpinner.setAdapter(mediaTypeAdapter);
+
+        tvHymnNoFrom = findViewById(R.id.hymnNoFrom);
+        tvHymnNoTo = findViewById(R.id.hymnNoTo);
+        updateHymnNoHint();
+
+        tvMaxJobs = findViewById(R.id.maxJobs);
+        tvMaxJobs.setText(String.valueOf(mScheduler.getMaxJobs()));
+        cbUnmeteredOnly = findViewById(R.id.cbUnmeteredOnly);
+        cbUnmeteredOnly.setChecked(mScheduler.isUnmeteredOnly());
+        cbChargingOnly = findViewById(R.id.cbChargingOnly);
+        cbChargingOnly.setChecked(mScheduler.isChargingOnly());
+
+        tvPackQueue = findViewById(R.id.packQueue);
+        tvPackProgress = findViewById(R.id.packProgress);
+
+        findViewById(R.id.button_Exit).setOnClickListener(this);
+        findViewById(R.id.button_clear).setOnClickListener(this);
+        findViewById(R.id.button_add).setOnClickListener(this);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mScheduler.setProgressListener(this);
+        onPackStateChanged();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mScheduler.setProgressListener(null);
+        saveSettings();
+    }
+
+    @Override
+    public void onClick(View v) {
+        switch (v.getId()) {
+            case R.id.button_add:
+                saveSettings();
+                addPack();
+                break;
+
+            case R.id.button_clear:
+                mScheduler.cancelAll();
+                tvPackProgress.setText("");
+                break;
+
+            case R.id.button_Exit:
+                finish();
+                break;
+        }
+    }
+
+    @Override
+    public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+        if (parent == hymnTypeSpinner) {
+            updateHymnNoHint();
+        }
+    }
+
+    @Override
+    public void onNothingSelected(AdapterView<?> parent) {
+    }
+
+    /**
+     * Show the full hymnNo range of the selected hymn book as hint.
+     */
+    private void updateHymnNoHint() {
+        String hymnType = hymnTypeValue.get(hymnTypeSpinner.getSelectedItemPosition());
+        tvHymnNoFrom.setHint("1");
+        tvHymnNoTo.setHint(String.valueOf(OfflinePackScheduler.PACK_HYMN_TYPES.get(hymnType)));
+    }
+
+    private void addPack() {
+        String hymnType = hymnTypeValue.get(hymnTypeSpinner.getSelectedItemPosition());
+        MediaType mediaType = mediaTypeValue.get(mediaTypeSpinner.getSelectedItemPosition());
+
+        int fromNo = getNumber(tvHymnNoFrom, 1);
+        int toNo = getNumber(tvHymnNoTo, OfflinePackScheduler.PACK_HYMN_TYPES.get(hymnType));
+        if (fromNo > toNo) {
+            HymnsApp.showToastMessage(R.string.offline_pack_range_invalid);
+            return;
+        }
+
+        mScheduler.addPack(hymnType, mediaType, fromNo, toNo);
+        HymnsApp.showToastMessage(R.string.offline_pack_added, getPackLabel(hymnType, mediaType, fromNo, toNo));
+    }
+
+    private void saveSettings() {
+        mScheduler.setSettings(getNumber(tvMaxJobs, OfflinePackScheduler.DEFAULT_MAX_JOBS),
+                cbUnmeteredOnly.isChecked(), cbChargingOnly.isChecked());
+    }
+
+    private static int getNumber(EditText editText, int defaultValue) {
+        String text = editText.getText().toString().trim();
+        if (TextUtils.isEmpty(text))
+            return defaultValue;
+
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private String getPackLabel(String hymnType, MediaType mediaType, int fromNo, int toNo) {
+        String hymnEntry = hymnTypeEntry.get(hymnTypeValue.indexOf(hymnType));
+        String mediaEntry = mediaTypeEntry.get(mediaTypeValue.indexOf(mediaType));
+        return hymnEntry.trim() + " " + mediaEntry + ": " + fromNo + "－" + toNo;
+    }
+
+    @Override
+    public void onPackStateChanged() {
+        List<Pack> packs = mScheduler.getPacks();
+        if (packs.isEmpty()) {
+            tvPackQueue.setText(R.string.offline_pack_queue_empty);
+            return;
+        }
+
+        StringBuilder packQueue = new StringBuilder();
+        for (Pack pack : packs) {
+            packQueue.append(getPackLabel(pack.hymnType, pack.mediaType, pack.fromNo, pack.toNo));
+            if (pack.isIncomplete()) {
+                packQueue.append(' ').append(getString(R.string.offline_pack_incomplete, pack.getMissingCount()));
+            }
+            packQueue.append('\n');
+        }
+        tvPackQueue.setText(getString(R.string.offline_pack_queue, packQueue.toString().trim()));
+
+        if (!mScheduler.isRunning()) {
+            tvPackProgress.setText(R.string.offline_pack_waiting);
+        }
+    }
+
+    @Override
+    public void onPackProgress(int completed, int failed, int total, long bytesPerSecond, long etaSeconds) {
+        StringBuilder progress = new StringBuilder(getString(R.string.offline_pack_progress, completed, total, failed));
+        if (bytesPerSecond > 0) {
+            progress.append('\n').append(getString(R.string.offline_pack_speed, ByteFormat.format(bytesPerSecond)));
+        }
+        if (etaSeconds > 0) {
+            progress.append('\n').append(getString(R.string.download_remaining_time,
+                    AndroidUtils.formatSeconds(etaSeconds * 1000)));
+        }
+        tvPackProgress.setText(progress);
+    }
+}
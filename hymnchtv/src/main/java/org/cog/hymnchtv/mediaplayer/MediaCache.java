@@ -0,0 +1,335 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.mediaplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.webkit.MimeTypeMap;
+import android.webkit.URLUtil;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.database.StandaloneDatabaseProvider;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.DefaultDataSource;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.ContentMetadata;
+import androidx.media3.datasource.cache.LeastRecentlyUsedCacheEvictor;
+import androidx.media3.datasource.cache.SimpleCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cog.hymnchtv.HymnsApp;
+import org.cog.hymnchtv.mediaconfig.MediaConfig;
+import org.cog.hymnchtv.mediaconfig.MediaRecord;
+import org.cog.hymnchtv.persistance.FileBackend;
+import org.cog.hymnchtv.persistance.MediaFileCatalog;
+
+import timber.log.Timber;
+
+/**
+ * The disk-backed LRU cache of the media streamed by the ExoPlayer, so the replay, loop or speed change
+ * of a hymn media url link is played back from the cache without re-downloading.
+ *
+ * The media fully streamed into the cache is also exported into the hymn local media folder on its next
+ * playback; it is then found by the local media file lookup, and stays available offline after its cache
+ * eviction.
+ *
+ * @author Eng Chong Meng
+ */
+@OptIn(markerClass = UnstableApi.class)
+public class MediaCache {
+    /* The cache sub folder in the app cache dir */
+    private static final String DIR_MEDIA_CACHE = "media_cache";
+
+    /* The maximum cache size; the least recently used media is evicted when exceeded */
+    public static final long MAX_CACHE_SIZE = 256 * 1024 * 1024L;
+
+    /* The exported media file name suffix before its file extension e.g. 112.cache.mp3 */
+    private static final String CACHE_FILE_SUFFIX = ".cache";
+
+    private static MediaCache mInstance = null;
+
+    private final SimpleCache mCache;
+    private final CacheDataSource.Factory mCacheDataSourceFactory;
+    private final DataSource.Factory mLocalDataSourceFactory;
+
+    /* The media bytes read from the cache and from the network since the app start, for the cache hit ratio */
+    private final AtomicLong mCachedBytes = new AtomicLong();
+    private final AtomicLong mNetworkBytes = new AtomicLong();
+
+    /* The media urls being exported to the local media folder */
+    private final Set<String> mExports = Collections.synchronizedSet(new HashSet<>());
+
+    private MediaCache(Context context) {
+        File cacheDir = new File(context.getCacheDir(), DIR_MEDIA_CACHE);
+        mCache = new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(MAX_CACHE_SIZE),
+                new StandaloneDatabaseProvider(context));
+
+        DefaultDataSource.Factory upstreamFactory = new DefaultDataSource.Factory(context)
+                .setTransferListener(new NetworkTransferListener());
+
+        mCacheDataSourceFactory = new CacheDataSource.Factory()
+                .setCache(mCache)
+                .setUpstreamDataSourceFactory(upstreamFactory)
+                .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR)
+                .setEventListener(new CacheDataSource.EventListener() {
+                    @Override
+                    public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+                        mCachedBytes.addAndGet(cachedBytesRead);
+                    }
+
+                    @Override
+                    public void onCacheIgnored(int reason) {
+                        Timber.w("Media cache ignored: %s", reason);
+                    }
+                });
+
+        // The local file, content and raw resource media are read directly, without going through the cache
+        mLocalDataSourceFactory = new DefaultDataSource.Factory(context);
+    }
+
+    /**
+     * Get the media cache instance; the cache index is loaded on first call.
+     *
+     * @return the MediaCache instance
+     */
+    public static synchronized MediaCache getInstance() {
+        if (mInstance == null) {
+            mInstance = new MediaCache(HymnsApp.getGlobalContext());
+        }
+        return mInstance;
+    }
+
+    /**
+     * Get the data source factory for the ExoPlayer media source; only the http(s) streamed media is read
+     * via the cache.
+     *
+     * @return the DataSource.Factory
+     */
+    public DataSource.Factory getDataSourceFactory() {
+        return () -> new SchemeDataSource(mCacheDataSourceFactory.createDataSource(),
+                mLocalDataSourceFactory.createDataSource());
+    }
+
+    /**
+     * @return the total size of the cached media in bytes
+     */
+    public long getCacheSize() {
+        return mCache.getCacheSpace();
+    }
+
+    /**
+     * Get the ratio of the streamed media bytes played back from the cache, over all the http(s) media bytes read
+     * since the app start; the local media is not counted.
+     *
+     * @return the cache hit ratio 0.0 to 1.0; or -1 if there is no media read yet
+     */
+    public float getHitRatio() {
+        long cachedBytes = mCachedBytes.get();
+        long totalBytes = cachedBytes + mNetworkBytes.get();
+        return (totalBytes == 0) ? -1 : (float) cachedBytes / totalBytes;
+    }
+
+    /**
+     * Check if the media of the given url link is fully streamed into the cache.
+     *
+     * @param mediaUrl the media url link
+     *
+     * @return true if the media content is fully cached
+     */
+    public boolean isFullyCached(String mediaUrl) {
+        long length = ContentMetadata.getContentLength(mCache.getContentMetadata(mediaUrl));
+        return (length != C.LENGTH_UNSET) && mCache.isCached(mediaUrl, 0, length);
+    }
+
+    /**
+     * Get the local media file of the media record url link, exported from the cache.
+     * The fully cached media not yet exported is exported in a background thread, and is available
+     * on the next lookup; the ExoPlayer meanwhile plays it back from the cache.
+     *
+     * @param mediaRecord the media record with the url link
+     *
+     * @return the exported local media file path; or null if none
+     */
+    public String getOfflineMedia(@NonNull MediaRecord mediaRecord) {
+        String mediaUrl = mediaRecord.getMediaUri();
+        if (TextUtils.isEmpty(mediaUrl) || !URLUtil.isNetworkUrl(mediaUrl))
+            return null;
+
+        String dir = mediaRecord.getHymnType() + MediaConfig.mediaDir.get(mediaRecord.getMediaType());
+        File mediaDir = FileBackend.getHymnchtvStore(dir, true);
+        if (mediaDir == null)
+            return null;
+
+        File mediaFile = new File(mediaDir, getOfflineFileName(mediaRecord.getHymnNo(), mediaUrl));
+        if (mediaFile.exists())
+            return mediaFile.getPath();
+
+        if (isFullyCached(mediaUrl) && mExports.add(mediaUrl)) {
+            new Thread(() -> {
+                exportMedia(mediaUrl, mediaFile);
+                mExports.remove(mediaUrl);
+            }, "MediaCacheExport").start();
+        }
+        return null;
+    }
+
+    /**
+     * The exported file name has the hymnNo as its only digits run before the file extension, so it is
+     * catalogued under the hymnNo by the local media file lookup.
+     */
+    private static String getOfflineFileName(int hymnNo, String mediaUrl) {
+        String ext = MimeTypeMap.getFileExtensionFromUrl(mediaUrl);
+        if (TextUtils.isEmpty(ext)) {
+            String mimeType = FileBackend.getMimeType(HymnsApp.getGlobalContext(), Uri.parse(mediaUrl));
+            ext = MimeTypeMap.getSingleton().getExtensionFromMimeType(mimeType);
+        }
+        return hymnNo + CACHE_FILE_SUFFIX + (TextUtils.isEmpty(ext) ? "" : "." + ext);
+    }
+
+    /**
+     * Copy the fully cached media content to the given local media file; a cache only data source is used,
+     * so there is no network access.
+     */
+    private void exportMedia(String mediaUrl, File mediaFile) {
+        File partFile = new File(mediaFile.getPath() + ".part");
+        DataSource dataSource = new CacheDataSource(mCache, null);
+        try (OutputStream out = new FileOutputStream(partFile)) {
+            dataSource.open(new DataSpec(Uri.parse(mediaUrl)));
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+                out.write(buffer, 0, count);
+            }
+        } catch (IOException e) {
+            Timber.w("Media cache export failed: %s: %s", mediaUrl, e.getMessage());
+            partFile.delete();
+            return;
+        } finally {
+            try {
+                dataSource.close();
+            } catch (IOException ignore) {
+            }
+        }
+
+        if (partFile.renameTo(mediaFile)) {
+            MediaFileCatalog.onFileAdded(mediaFile);
+            Timber.d("Media cache exported: %s => %s", mediaUrl, mediaFile.getPath());
+        }
+        else {
+            partFile.delete();
+        }
+    }
+
+    /**
+     * The data source delegates the http(s) media read to the cache data source, and all others to the
+     * local data source; so the local media is neither duplicated into the cache nor counted in its hit ratio.
+     */
+    private static class SchemeDataSource implements DataSource {
+        private final DataSource mCacheDataSource;
+        private final DataSource mLocalDataSource;
+
+        /* The data source of the opened media; null if not opened */
+        private DataSource mDataSource = null;
+
+        SchemeDataSource(DataSource cacheDataSource, DataSource localDataSource) {
+            mCacheDataSource = cacheDataSource;
+            mLocalDataSource = localDataSource;
+        }
+
+        @Override
+        public void addTransferListener(@NonNull TransferListener transferListener) {
+            mCacheDataSource.addTransferListener(transferListener);
+            mLocalDataSource.addTransferListener(transferListener);
+        }
+
+        @Override
+        public long open(@NonNull DataSpec dataSpec) throws IOException {
+            String scheme = dataSpec.uri.getScheme();
+            boolean isNetwork = "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme);
+            mDataSource = isNetwork ? mCacheDataSource : mLocalDataSource;
+            return mDataSource.open(dataSpec);
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            return mDataSource.read(buffer, offset, length);
+        }
+
+        @Nullable
+        @Override
+        public Uri getUri() {
+            return (mDataSource == null) ? null : mDataSource.getUri();
+        }
+
+        @NonNull
+        @Override
+        public Map<String, List<String>> getResponseHeaders() {
+            return (mDataSource == null) ? Collections.emptyMap() : mDataSource.getResponseHeaders();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mDataSource != null) {
+                try {
+                    mDataSource.close();
+                } finally {
+                    mDataSource = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the media bytes read from the network i.e. the cache misses; the cached bytes are not read upstream.
+     */
+    private class NetworkTransferListener implements TransferListener {
+        @Override
+        public void onTransferInitializing(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork) {
+        }
+
+        @Override
+        public void onTransferStart(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork) {
+        }
+
+        @Override
+        public void onBytesTransferred(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+            if (isNetwork)
+                mNetworkBytes.addAndGet(bytesTransferred);
+        }
+
+        @Override
+        public void onTransferEnd(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork) {
+        }
+    }
+}
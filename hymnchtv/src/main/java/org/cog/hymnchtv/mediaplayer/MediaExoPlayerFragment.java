@@ -43,6 +43,7 @@ import androidx.media3.common.Player;
 import androidx.media3.common.VideoSize;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
 import androidx.media3.ui.PlayerView;
 
 import java.util.ArrayList;
@@ -155,9 +156,16 @@ public class MediaExoPlayerFragment extends BaseFragment {
         releasePlayer();
     }
 
+    /**
+     * Build the ExoPlayer with the media source data read via the MediaCache; so the replay of a streamed
+     * media is played back from the cache without re-downloading.
+     */
+    @OptIn(markerClass = UnstableApi.class)
     public void initializePlayer() {
         if (mExoPlayer == null) {
-            mExoPlayer = new ExoPlayer.Builder(mContext).build();
+            mExoPlayer = new ExoPlayer.Builder(mContext)
+                    .setMediaSourceFactory(new DefaultMediaSourceFactory(MediaCache.getInstance().getDataSourceFactory()))
+                    .build();
             mExoPlayer.addListener(playbackStateListener);
             mPlayerView.setPlayer(mExoPlayer);
         }
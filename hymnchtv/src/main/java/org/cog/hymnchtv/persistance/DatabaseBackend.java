@@ -25,14 +25,30 @@ import static org.cog.hymnchtv.MainActivity.HYMN_YB;
 import static org.cog.hymnchtv.hymnhistory.HistoryRecord.TIME_STAMP;
 
 import android.annotation.SuppressLint;
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.cog.hymnchtv.BuildConfig;
 import org.cog.hymnchtv.HymnsApp;
@@ -43,6 +59,7 @@ import org.cog.hymnchtv.mediaconfig.MediaConfig;
 import org.cog.hymnchtv.mediaconfig.MediaRecord;
 import org.cog.hymnchtv.persistance.migrations.Migrations;
 import org.cog.hymnchtv.persistance.migrations.MigrationsHelper;
+import org.cog.hymnchtv.utils.TimberLog;
 
 import timber.log.Timber;
 
@@ -58,10 +75,50 @@ public class DatabaseBackend extends SQLiteOpenHelper {
      * Increment DATABASE_VERSION when there is a change in database records
      */
     public static final String DATABASE_NAME = "dbHymnApp.db";
-    private static final int DATABASE_VERSION = 5;
+    private static final int DATABASE_VERSION = 7;
+
+    /* All the hymnTypes with the media records */
+    public static final List<String> MEDIA_HYMN_TYPES = Arrays.asList(HYMN_DB, HYMN_BB, HYMN_ER, HYMN_XB, HYMN_XG, HYMN_YB);
+
+    /* The media record primary key selection, and the media records scan order of the primary key */
+    private static final String MEDIA_RECORD_KEY = MediaConfig.HYMN_TYPE + "=? AND " + MediaConfig.HYMN_NO + "=? AND "
+            + MediaConfig.HYMN_FU + "=? AND " + MediaConfig.MEDIA_TYPE + "=?";
+    private static final String MEDIA_ORDER_ASC = MediaConfig.HYMN_TYPE + " ASC, " + MediaConfig.HYMN_NO + " ASC";
+
+    /* The hot database operations statements, compiled once and cached in mStatements */
+    private static final String SQL_MEDIA_INSERT = "INSERT INTO " + MediaRecord.TABLE_NAME + " ("
+            + MediaConfig.HYMN_TYPE + ", " + MediaConfig.HYMN_NO + ", " + MediaConfig.HYMN_FU + ", "
+            + MediaConfig.MEDIA_TYPE + ", " + MediaConfig.MEDIA_URI + ", " + MediaConfig.MEDIA_FILE_PATH + ", "
+            + MediaConfig.MEDIA_IS_LINK + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_MEDIA_COUNT = "SELECT COUNT(*) FROM " + MediaRecord.TABLE_NAME
+            + " WHERE " + MEDIA_RECORD_KEY;
+    private static final String SQL_HISTORY_INSERT = "INSERT OR REPLACE INTO " + HistoryRecord.TABLE_NAME + " ("
+            + HistoryRecord.HYMN_TYPE + ", " + HistoryRecord.HYMN_NO + ", " + HistoryRecord.HYMN_FU + ", "
+            + HistoryRecord.HYMN_TITLE + ", " + TIME_STAMP + ") VALUES (?, ?, ?, ?, ?)";
+    private static final String SQL_LYRICS_ENG_INSERT = "INSERT INTO " + LyricsEnglishRecord.TABLE_NAME + " ("
+            + LyricsEnglishRecord.HYMN_NO_ENG + ", " + LyricsEnglishRecord.LYRICS_ENG + ") VALUES (?, ?)";
+    private static final String SQL_LYRICS_ENG_QUERY = "SELECT " + LyricsEnglishRecord.LYRICS_ENG + " FROM "
+            + LyricsEnglishRecord.TABLE_NAME + " WHERE " + LyricsEnglishRecord.HYMN_NO_ENG + "=?";
+
+    // The media record query; its prepared statement is kept in the SQLite connection statement cache
+    private static final String SQL_MEDIA_QUERY = "SELECT " + MediaConfig.MEDIA_URI + ", " + MediaConfig.MEDIA_FILE_PATH
+            + " FROM " + MediaRecord.TABLE_NAME + " WHERE " + MEDIA_RECORD_KEY;
+
+    /* The number of media records imported between each progress report */
+    private static final int IMPORT_PROGRESS_STEP = 200;
+
+    /* The hymn history write-behind delay, to coalesce the rapid hymn selections into one batch insert */
+    private static final long HISTORY_WRITE_DELAY = 1000; // ms
 
     private static DatabaseBackend instance = null;
 
+    /* The single thread hymn history writer, and its pending records keyed by hymnType:hymnNo:isFu */
+    private final ScheduledExecutorService mHistoryWriter = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, HistoryRecord> mPendingHistory = new LinkedHashMap<>();
+
+    /* The compiled statements of the hot database operations, keyed by the sql statement */
+    private final Map<String, SQLiteStatement> mStatements = new HashMap<>();
+
     private DatabaseBackend(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
@@ -80,6 +137,18 @@ public class DatabaseBackend extends SQLiteOpenHelper {
         return instance;
     }
 
+    /**
+     * Configure the database connection before its creation or upgrade; the settings apply to all the connections.
+     * The write-ahead logging allows the UI reads to run concurrently with the import or download writes.
+     *
+     * @param db SQLite database
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
+        db.enableWriteAheadLogging();
+    }
+
     @Override
     public void onUpgrade(final SQLiteDatabase db, int oldVersion, int newVersion) {
         Timber.i("Upgrading database from version %s to version %s", oldVersion, newVersion);
@@ -102,7 +171,7 @@ public class DatabaseBackend extends SQLiteOpenHelper {
         }
     }
 
-    // HymnContent info table creation statement
+    // HymnContent info table creation statement; the per hymnType media table prior to database version 6
     public static String HYMN_CONTENT_STATEMENT = "CREATE TABLE %s("
             + MediaConfig.HYMN_NO + " INTEGER, "
             + MediaConfig.HYMN_FU + " BOOL, "
@@ -112,6 +181,26 @@ public class DatabaseBackend extends SQLiteOpenHelper {
             + MediaConfig.HYMN_NO + ", " + MediaConfig.HYMN_FU + ", " + MediaConfig.MEDIA_TYPE
             + ") ON CONFLICT REPLACE);";
 
+    /*
+     * The media records table of all the hymnTypes. The table is clustered on its primary key i.e. without rowid,
+     * so both the media record lookup and the hymnType media records scan in hymnNo order need no other index.
+     */
+    public static String CREATE_MEDIA_TABLE = "CREATE TABLE " + MediaRecord.TABLE_NAME + " ("
+            + MediaConfig.HYMN_TYPE + " TEXT, "
+            + MediaConfig.HYMN_NO + " INTEGER, "
+            + MediaConfig.HYMN_FU + " BOOL, "
+            + MediaConfig.MEDIA_TYPE + " TEXT, "
+            + MediaConfig.MEDIA_URI + " TEXT, "
+            + MediaConfig.MEDIA_FILE_PATH + " TEXT, "
+            + MediaConfig.MEDIA_IS_LINK + " BOOL, PRIMARY KEY("
+            + MediaConfig.HYMN_TYPE + ", " + MediaConfig.HYMN_NO + ", " + MediaConfig.HYMN_FU + ", " + MediaConfig.MEDIA_TYPE
+            + ") ON CONFLICT REPLACE) WITHOUT ROWID;";
+
+    // The covering index of the media links query and export, in place of the mediaUri LIKE 'http%' table scan
+    public static String CREATE_MEDIA_LINK_INDEX = "CREATE INDEX " + MediaRecord.TABLE_NAME + "_link ON "
+            + MediaRecord.TABLE_NAME + " (" + MediaConfig.MEDIA_IS_LINK + ", " + MediaConfig.HYMN_TYPE + ", "
+            + MediaConfig.HYMN_NO + ", " + MediaConfig.MEDIA_URI + ", " + MediaConfig.MEDIA_FILE_PATH + ");";
+
     // Recent message table
     public static String CREATE_HYMN_HISTORY = "CREATE TABLE " + HistoryRecord.TABLE_NAME + " ("
             + HistoryRecord.HYMN_TYPE + " TEXT, "
@@ -122,6 +211,10 @@ public class DatabaseBackend extends SQLiteOpenHelper {
             + HistoryRecord.HYMN_TYPE + ", " + HistoryRecord.HYMN_NO + ", " + MediaConfig.HYMN_FU
             + ") ON CONFLICT REPLACE);";
 
+    // The history records order and purge index
+    public static String CREATE_HYMN_HISTORY_INDEX = "CREATE INDEX IF NOT EXISTS " + HistoryRecord.TABLE_NAME
+            + "_" + TIME_STAMP + " ON " + HistoryRecord.TABLE_NAME + " (" + TIME_STAMP + ");";
+
     public static String CREATE_HYMN_ENGLISH = "CREATE TABLE " + LyricsEnglishRecord.TABLE_NAME + " ("
             + LyricsEnglishRecord.HYMN_NO_ENG + " INTEGER, "
             + LyricsEnglishRecord.LYRICS_ENG + " TEXT, UNIQUE("
@@ -130,7 +223,7 @@ public class DatabaseBackend extends SQLiteOpenHelper {
 
     /**
      * Create all the required virgin database tables and perform initial data migration:
-     * a. HymnContent Table per HYMN_XXX
+     * a. Media Table of all HYMN_XXX
      * b. HistoryRecord Table
      * # Initialize and initial data migration
      *
@@ -138,18 +231,11 @@ public class DatabaseBackend extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
-        // db.execSQL("PRAGMA foreign_keys=ON;");
-        String query = String.format("PRAGMA foreign_keys =%s", "ON");
-        db.execSQL(query);
-
-        db.execSQL(HYMN_CONTENT_STATEMENT.replace("%s", HYMN_DB));
-        db.execSQL(HYMN_CONTENT_STATEMENT.replace("%s", HYMN_BB));
-        db.execSQL(HYMN_CONTENT_STATEMENT.replace("%s", HYMN_ER));
-        db.execSQL(HYMN_CONTENT_STATEMENT.replace("%s", HYMN_XB));
-        db.execSQL(HYMN_CONTENT_STATEMENT.replace("%s", HYMN_XG));
-        db.execSQL(HYMN_CONTENT_STATEMENT.replace("%s", HYMN_YB));
+        db.execSQL(CREATE_MEDIA_TABLE);
+        db.execSQL(CREATE_MEDIA_LINK_INDEX);
 
         db.execSQL(CREATE_HYMN_HISTORY);
+        db.execSQL(CREATE_HYMN_HISTORY_INDEX);
         db.execSQL(CREATE_HYMN_ENGLISH);
 
         // Perform the first data migration to SQLite database
@@ -171,27 +257,140 @@ public class DatabaseBackend extends SQLiteOpenHelper {
     }
 
     /**
-     * Save the given MediaRecord to the database table mRecord.getHymnType()
+     * Save the given MediaRecord to the media database table
      *
      * @param mRecord an instance of MediaRecord
      */
     public long storeMediaRecord(MediaRecord mRecord) {
-        SQLiteDatabase db = getWritableDatabase();
-
-        ContentValues values = new ContentValues();
-        values.put(MediaConfig.HYMN_NO, mRecord.getHymnNo());
-        values.put(MediaConfig.HYMN_FU, mRecord.isFu());
-        values.put(MediaConfig.MEDIA_TYPE, mRecord.getMediaType().toString());
-        values.put(MediaConfig.MEDIA_URI, mRecord.getMediaUri());
-        values.put(MediaConfig.MEDIA_FILE_PATH, mRecord.getMediaFilePath());
+        long row;
+        SQLiteStatement statement = getStatement(SQL_MEDIA_INSERT);
+        synchronized (statement) {
+            bindMediaRecord(statement, mRecord);
+            try {
+                row = statement.executeInsert();
+            } catch (SQLException e) {
+                row = -1;
+            }
+        }
 
-        long row = db.insert(mRecord.getHymnType(), null, values);
         if (row == -1) {
             Timber.e("### Error in creating media record for table:hymNo: %s:%s", mRecord.getHymnType(), mRecord.getHymnNo());
         }
+        else {
+            MediaAvailability.onRecordStored(mRecord);
+        }
         return row;
     }
 
+    /**
+     * The media records bulk import callback.
+     */
+    public interface MediaImportCallback {
+        /**
+         * @param mediaRecord the media record parsed from the import stream
+         *
+         * @return true if the media record is to be imported
+         */
+        boolean accept(MediaRecord mediaRecord);
+
+        /**
+         * Report the import progress; this is always called on import completion.
+         *
+         * @param imported number of the media records stored in the database so far
+         * @param processed number of the media records parsed so far
+         */
+        void onProgress(int imported, int processed);
+    }
+
+    /**
+     * Bulk import the media records from the given inputStream i.e. the url_import file format.
+     * The stream is parsed and the records are filtered by the callback first, outside the transaction, as the
+     * filter may check the local media files; the accepted records are then stored with the precompiled insert
+     * statement within a single transaction, so the import takes only one database commit. The media availability
+     * index is updated only after the transaction has been committed.
+     *
+     * @param inputStream the utf-8 inputStream containing one media record per line
+     * @param isOverWrite overwrite the existing record in database if true; else the existing record is kept
+     * @param callback the media records import callback
+     *
+     * @return number of media records imported
+     */
+    public int importMediaRecords(InputStream inputStream, boolean isOverWrite, MediaImportCallback callback)
+            throws IOException {
+        List<MediaRecord> mRecords = new ArrayList<>();
+        int processed = 0;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            MediaRecord mRecord = MediaRecord.toRecord(line);
+            if (mRecord == null)
+                continue;
+
+            processed++;
+            if (MEDIA_HYMN_TYPES.contains(mRecord.getHymnType()) && callback.accept(mRecord)) {
+                mRecords.add(mRecord);
+            }
+        }
+
+        // The import statement is not cached, as it is held for the whole import transaction
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement("INSERT OR " + (isOverWrite ? "REPLACE" : "IGNORE") + " INTO "
+                + MediaRecord.TABLE_NAME + " (" + MediaConfig.HYMN_TYPE + ", " + MediaConfig.HYMN_NO + ", "
+                + MediaConfig.HYMN_FU + ", " + MediaConfig.MEDIA_TYPE + ", " + MediaConfig.MEDIA_URI + ", "
+                + MediaConfig.MEDIA_FILE_PATH + ", " + MediaConfig.MEDIA_IS_LINK + ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+        List<MediaRecord> storedRecords = new ArrayList<>();
+
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < mRecords.size(); i++) {
+                MediaRecord mRecord = mRecords.get(i);
+                bindMediaRecord(statement, mRecord);
+
+                // The insert is ignored and returns -1 if the record exists and not isOverWrite
+                if (statement.executeInsert() != -1) {
+                    storedRecords.add(mRecord);
+                }
+
+                if (TimberLog.isFinestEnable)
+                    Timber.d("Import media record: %s(%s)", mRecord.getHymnNo(), storedRecords.size());
+
+                if ((i + 1) % IMPORT_PROGRESS_STEP == 0) {
+                    callback.onProgress(storedRecords.size(), processed);
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+
+        for (MediaRecord mRecord : storedRecords) {
+            MediaAvailability.onRecordStored(mRecord);
+        }
+        callback.onProgress(storedRecords.size(), processed);
+        return storedRecords.size();
+    }
+
+    private static void bindMediaRecord(SQLiteStatement statement, MediaRecord mRecord) {
+        statement.clearBindings();
+        statement.bindString(1, mRecord.getHymnType());
+        statement.bindLong(2, mRecord.getHymnNo());
+        statement.bindLong(3, mRecord.isFu() ? 1 : 0);
+        statement.bindString(4, mRecord.getMediaType().toString());
+        bindStringOrNull(statement, 5, mRecord.getMediaUri());
+        bindStringOrNull(statement, 6, mRecord.getMediaFilePath());
+        statement.bindLong(7, mRecord.isMediaLink() ? 1 : 0);
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null)
+            statement.bindNull(index);
+        else
+            statement.bindString(index, value);
+    }
+
     /**
      * Check if mRecord exist in DB and update with the DB result if update if true
      *
@@ -201,21 +400,21 @@ public class DatabaseBackend extends SQLiteOpenHelper {
      * @return mRecord present status, and mRecord is updated if update is true;
      */
     public boolean getMediaRecord(MediaRecord mRecord, boolean update) {
+        if (!update) {
+            SQLiteStatement statement = getStatement(SQL_MEDIA_COUNT);
+            synchronized (statement) {
+                statement.bindAllArgsAsStrings(getRecordKeyArgs(mRecord));
+                return statement.simpleQueryForLong() > 0;
+            }
+        }
+
         SQLiteDatabase db = getReadableDatabase();
         boolean hasRecord = false;
 
-        String[] columns = {MediaConfig.MEDIA_URI, MediaConfig.MEDIA_FILE_PATH};
-        String[] args = {Integer.toString(mRecord.getHymnNo()), mRecord.isFu() ? "1" : "0", mRecord.getMediaType().toString()};
-
-        Cursor cursor = db.query(mRecord.getHymnType(), columns,
-                MediaConfig.HYMN_NO + "=? AND " + MediaConfig.HYMN_FU + "=? AND " + MediaConfig.MEDIA_TYPE + "=?",
-                args, null, null, null);
-
+        Cursor cursor = db.rawQuery(SQL_MEDIA_QUERY, getRecordKeyArgs(mRecord));
         while (cursor.moveToNext()) {
-            if (update) {
-                mRecord.setMediaUri(cursor.getString(0));
-                mRecord.setFilePath(cursor.getString(1));
-            }
+            mRecord.setMediaUri(cursor.getString(0));
+            mRecord.setFilePath(cursor.getString(1));
             hasRecord = true;
         }
         cursor.close();
@@ -248,10 +447,11 @@ public class DatabaseBackend extends SQLiteOpenHelper {
      */
     public int deleteMediaRecord(MediaRecord mRecord) {
         SQLiteDatabase db = this.getReadableDatabase();
-        String[] args = {Integer.toString(mRecord.getHymnNo()), mRecord.isFu() ? "1" : "0", mRecord.getMediaType().toString()};
-
-        return db.delete(mRecord.getHymnType(), MediaConfig.HYMN_NO + "=? AND "
-                + MediaConfig.HYMN_FU + "=? AND " + MediaConfig.MEDIA_TYPE + "=?", args);
+        int count = db.delete(MediaRecord.TABLE_NAME, MEDIA_RECORD_KEY, getRecordKeyArgs(mRecord));
+        if (count > 0) {
+            MediaAvailability.onRecordDeleted(mRecord);
+        }
+        return count;
     }
 
     /**
@@ -262,22 +462,8 @@ public class DatabaseBackend extends SQLiteOpenHelper {
      * @return List of mediaRecords for the given hymnType
      */
     public List<MediaRecord> getMediaRecords(String hymnType) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        List<MediaRecord> mediaRecords = new ArrayList<>();
-        String ORDER_ASC = MediaConfig.HYMN_NO + " ASC";
-
-        Cursor cursor = db.query(hymnType, null, null, null, null, null, ORDER_ASC);
-        while (cursor.moveToNext()) {
-            MediaRecord mediaRecord = new MediaRecord(hymnType,
-                    cursor.getInt(cursor.getColumnIndex(MediaConfig.HYMN_NO)),
-                    cursor.getInt(cursor.getColumnIndex(MediaConfig.HYMN_FU)) > 0,
-                    Enum.valueOf(MediaType.class, cursor.getString(cursor.getColumnIndex(MediaConfig.MEDIA_TYPE))),
-                    cursor.getString(cursor.getColumnIndex(MediaConfig.MEDIA_URI)),
-                    cursor.getString(cursor.getColumnIndex(MediaConfig.MEDIA_FILE_PATH)));
-            mediaRecords.add(mediaRecord);
-        }
-        cursor.close();
-        return mediaRecords;
+        String[] args = {hymnType};
+        return getMediaRecords(MediaConfig.HYMN_TYPE + "=?", args, MEDIA_ORDER_ASC);
     }
 
     /**
@@ -288,16 +474,28 @@ public class DatabaseBackend extends SQLiteOpenHelper {
      * @return List of mediaRecords for the given hymnType
      */
     public List<MediaRecord> getMediaLinks(String hymnType) {
+        String[] args = {hymnType};
+        return getMediaRecords(MediaConfig.MEDIA_IS_LINK + "=1 AND " + MediaConfig.HYMN_TYPE + "=?", args,
+                MEDIA_ORDER_ASC);
+    }
+
+    /**
+     * Get the media records which contain valid links for all the hymnTypes, in a single scan of the link index
+     *
+     * @return List of mediaRecords ordered by hymnType and hymnNo
+     */
+    public List<MediaRecord> getMediaLinks() {
+        return getMediaRecords(MediaConfig.MEDIA_IS_LINK + "=1", null, MEDIA_ORDER_ASC);
+    }
+
+    private List<MediaRecord> getMediaRecords(String selection, String[] args, String orderBy) {
         SQLiteDatabase db = this.getReadableDatabase();
         List<MediaRecord> mediaRecords = new ArrayList<>();
-        String ORDER_ASC = MediaConfig.HYMN_NO + " ASC";
-
-        String[] args = {"http%"};
-        Cursor cursor = db.query(hymnType, null, MediaConfig.MEDIA_URI + " LIKE ?",
-                args, null, null, ORDER_ASC);
 
+        Cursor cursor = db.query(MediaRecord.TABLE_NAME, null, selection, args, null, null, orderBy);
         while (cursor.moveToNext()) {
-            MediaRecord mediaRecord = new MediaRecord(hymnType,
+            MediaRecord mediaRecord = new MediaRecord(
+                    cursor.getString(cursor.getColumnIndex(MediaConfig.HYMN_TYPE)),
                     cursor.getInt(cursor.getColumnIndex(MediaConfig.HYMN_NO)),
                     cursor.getInt(cursor.getColumnIndex(MediaConfig.HYMN_FU)) > 0,
                     Enum.valueOf(MediaType.class, cursor.getString(cursor.getColumnIndex(MediaConfig.MEDIA_TYPE))),
@@ -309,36 +507,87 @@ public class DatabaseBackend extends SQLiteOpenHelper {
         return mediaRecords;
     }
 
+    private static String[] getRecordKeyArgs(MediaRecord mRecord) {
+        return new String[]{mRecord.getHymnType(), Integer.toString(mRecord.getHymnNo()),
+                mRecord.isFu() ? "1" : "0", mRecord.getMediaType().toString()};
+    }
+
     /**
-     * Save the given HistoryRecord to the database table hymnHistory
-     * Purge old records in excess of (NUMBER_OF_RECORDS_IN_HISTORY - 10)
+     * Queue the given HistoryRecord for the write-behind to the database table hymnHistory; the caller thread
+     * never touches the database. All the records queued within HISTORY_WRITE_DELAY are coalesced per hymn,
+     * and stored in a single transaction by the history writer thread.
      *
      * @param mRecord an instance of HistoryRecord
      */
     public void storeHymnHistory(HistoryRecord mRecord) {
-        SQLiteDatabase db = getWritableDatabase();
-        String ORDER_ASC = TIME_STAMP + " ASC";
-
-        Cursor cursor = db.query(HistoryRecord.TABLE_NAME, null, null, null, null, null, ORDER_ASC);
-        int excess = cursor.getCount() - HistoryRecord.NUMBER_OF_RECORDS_IN_HISTORY;
-        if (excess > 0) {
-            cursor.move(excess + 10);
-            String[] args = {cursor.getString(cursor.getColumnIndex(TIME_STAMP))};
-            int count = db.delete(HistoryRecord.TABLE_NAME, TIME_STAMP + "<?", args);
-            Timber.d("No of old history deleted : %s", count);
+        synchronized (mPendingHistory) {
+            boolean isScheduled = !mPendingHistory.isEmpty();
+
+            // Re-insert to keep the pending records in the user access order
+            String key = mRecord.getHymnType() + ":" + mRecord.getHymnNo() + ":" + mRecord.isFu();
+            mPendingHistory.remove(key);
+            mPendingHistory.put(key, mRecord);
+            if (!isScheduled) {
+                mHistoryWriter.schedule(this::writeHymnHistory, HISTORY_WRITE_DELAY, TimeUnit.MILLISECONDS);
+            }
         }
-        cursor.close();
+    }
 
-        ContentValues values = new ContentValues();
-        values.put(HistoryRecord.HYMN_TYPE, mRecord.getHymnType());
-        values.put(HistoryRecord.HYMN_NO, mRecord.getHymnNo());
-        values.put(HistoryRecord.HYMN_FU, mRecord.isFu());
-        values.put(HistoryRecord.HYMN_TITLE, mRecord.getHymnTitle());
-        values.put(TIME_STAMP, mRecord.getTimeStamp());
+    /**
+     * Write all the pending history records now, and wait for its completion; so the history table
+     * is up to date for the history records access.
+     */
+    private void flushHymnHistory() {
+        try {
+            mHistoryWriter.submit(this::writeHymnHistory).get();
+        } catch (ExecutionException | InterruptedException e) {
+            Timber.w("Flush history record exception: %s", e.getMessage());
+        }
+    }
 
-        long row = db.insert(HistoryRecord.TABLE_NAME, null, values);
-        if (row == -1) {
-            Timber.e("### Error in creating history record HymnType#hymNo: %s#%s", mRecord.getHymnType(), mRecord.getHymnNo());
+    /**
+     * Store the pending history records in the history writer thread, and
+     * purge old records in excess of (NUMBER_OF_RECORDS_IN_HISTORY - 10) in the same transaction.
+     */
+    private void writeHymnHistory() {
+        List<HistoryRecord> historyRecords;
+        synchronized (mPendingHistory) {
+            historyRecords = new ArrayList<>(mPendingHistory.values());
+            mPendingHistory.clear();
+        }
+        if (historyRecords.isEmpty())
+            return;
+
+        // The history insert statement is used only in the history writer thread
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement statement = getStatement(SQL_HISTORY_INSERT);
+
+        db.beginTransaction();
+        try {
+            for (HistoryRecord mRecord : historyRecords) {
+                statement.clearBindings();
+                statement.bindString(1, mRecord.getHymnType());
+                statement.bindLong(2, mRecord.getHymnNo());
+                statement.bindLong(3, mRecord.isFu() ? 1 : 0);
+                bindStringOrNull(statement, 4, mRecord.getHymnTitle());
+                statement.bindLong(5, mRecord.getTimeStamp());
+                if (statement.executeInsert() == -1) {
+                    Timber.e("### Error in creating history record HymnType#hymNo: %s#%s", mRecord.getHymnType(), mRecord.getHymnNo());
+                }
+            }
+
+            // Purge the oldest records via the timeStamp index
+            long excess = DatabaseUtils.queryNumEntries(db, HistoryRecord.TABLE_NAME) - HistoryRecord.NUMBER_OF_RECORDS_IN_HISTORY;
+            if (excess > 0) {
+                db.execSQL("DELETE FROM " + HistoryRecord.TABLE_NAME + " WHERE rowid IN (SELECT rowid FROM "
+                        + HistoryRecord.TABLE_NAME + " ORDER BY " + TIME_STAMP + " ASC LIMIT ?)", new Object[]{excess + 10});
+                Timber.d("No of old history deleted : %s", excess + 10);
+            }
+            db.setTransactionSuccessful();
+        } catch (SQLException e) {
+            Timber.e("Store history records exception: %s", e.getMessage());
+        } finally {
+            db.endTransaction();
         }
     }
 
@@ -348,6 +597,7 @@ public class DatabaseBackend extends SQLiteOpenHelper {
      * @param mRecord an instance of HistoryRecord
      */
     public int deleteHymnHistory(HistoryRecord mRecord) {
+        flushHymnHistory();
         SQLiteDatabase db = getWritableDatabase();
         String[] args = {mRecord.getHymnType(), Integer.toString(mRecord.getHymnNo())};
 
@@ -361,6 +611,7 @@ public class DatabaseBackend extends SQLiteOpenHelper {
      * @return List of HistoryRecord
      */
     public List<HistoryRecord> getHistoryRecords() {
+        flushHymnHistory();
         SQLiteDatabase db = this.getReadableDatabase();
         List<HistoryRecord> historyRecords = new ArrayList<>();
         String ORDER_DESC = TIME_STAMP + " DESC";
@@ -386,13 +637,19 @@ public class DatabaseBackend extends SQLiteOpenHelper {
      * @param lyrics string containing html lyrics
      */
     public long storeLyricsEng(int hymnNoEng, String lyrics) {
-        SQLiteDatabase db = getWritableDatabase();
-
-        ContentValues values = new ContentValues();
-        values.put(LyricsEnglishRecord.HYMN_NO_ENG, hymnNoEng);
-        values.put(LyricsEnglishRecord.LYRICS_ENG, lyrics);
+        long row;
+        SQLiteStatement statement = getStatement(SQL_LYRICS_ENG_INSERT);
+        synchronized (statement) {
+            statement.clearBindings();
+            statement.bindLong(1, hymnNoEng);
+            bindStringOrNull(statement, 2, lyrics);
+            try {
+                row = statement.executeInsert();
+            } catch (SQLException e) {
+                row = -1;
+            }
+        }
 
-        long row = db.insert(LyricsEnglishRecord.TABLE_NAME, null, values);
         if (row == -1) {
             Timber.e("### Error in saving Url record for hymnNo English: %s", hymnNoEng);
         }
@@ -417,29 +674,47 @@ public class DatabaseBackend extends SQLiteOpenHelper {
      * @param hymnNoEng English hymnNo
      */
     public String getLyricsEnglish(int hymnNoEng) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        String lyrics = null;
-
-        String[] columns = {LyricsEnglishRecord.LYRICS_ENG};
-        String[] args = {String.valueOf(hymnNoEng)};
-
-        Cursor cursor = db.query(LyricsEnglishRecord.TABLE_NAME, columns,
-                LyricsEnglishRecord.HYMN_NO_ENG + "=?", args, null, null, null);
+        SQLiteStatement statement = getStatement(SQL_LYRICS_ENG_QUERY);
+        synchronized (statement) {
+            statement.bindLong(1, hymnNoEng);
+            try {
+                return statement.simpleQueryForString();
+            } catch (SQLiteDoneException e) {
+                return null;
+            }
+        }
+    }
 
-        while (cursor.moveToNext()) {
-            lyrics = cursor.getString(0);
+    /**
+     * Get the cached compiled statement of the given sql, compiled on first use.
+     * The statement bindings are not thread safe, so each use must be synchronized on the statement; except the
+     * statement used in one thread only. The synchronized statement must not be used within a transaction, else
+     * its lock is held while the other statement user may be waiting for the transaction database connection.
+     *
+     * @param sql the sql statement
+     *
+     * @return the compiled SQLiteStatement
+     */
+    private SQLiteStatement getStatement(String sql) {
+        synchronized (mStatements) {
+            SQLiteStatement statement = mStatements.get(sql);
+            if (statement == null) {
+                statement = getWritableDatabase().compileStatement(sql);
+                mStatements.put(sql, statement);
+            }
+            return statement;
         }
-        cursor.close();
-        return lyrics;
     }
 
     @Override
-    public SQLiteDatabase getWritableDatabase() {
-        SQLiteDatabase db = super.getWritableDatabase();
-        // db.execSQL("PRAGMA foreign_keys=ON;");
-        String query = String.format("PRAGMA foreign_keys =%s", "ON");
-        db.execSQL(query);
-        return db;
+    public synchronized void close() {
+        synchronized (mStatements) {
+            for (SQLiteStatement statement : mStatements.values()) {
+                statement.close();
+            }
+            mStatements.clear();
+        }
+        super.close();
     }
 
     private static class RealMigrationsHelper implements MigrationsHelper {
@@ -0,0 +1,178 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.persistance;
+
+import java.util.BitSet;
+import java.util.List;
+
+import org.cog.hymnchtv.HymnsApp;
+import org.cog.hymnchtv.MediaType;
+import org.cog.hymnchtv.mediaconfig.MediaConfig;
+import org.cog.hymnchtv.mediaconfig.MediaRecord;
+import org.cog.hymnchtv.search.LyricsIndex;
+
+import timber.log.Timber;
+
+/**
+ * The in-memory media availability index, with one bitset indexed by hymnNo per (hymnType, MediaType) for the
+ * media records in database; and the MediaFileCatalog for the media files in the local media folders.
+ * The index is loaded once in a background thread, and is kept up to date incrementally on the media record store
+ * or delete, including those during the load; so the media availability check of each hymn page needs no database
+ * query or file scan. The media record is reported as not available until it is loaded.
+ *
+ * The hymnNo of the fu hymn is offset by HYMN_DB_NO_MAX, same as in the media record.
+ *
+ * @author Eng Chong Meng
+ */
+public class MediaAvailability {
+    private static volatile MediaAvailability mInstance = null;
+
+    private final int mMediaTypes = MediaType.values().length;
+
+    /* The media availability of each (hymnType, MediaType) in the database */
+    private final BitSet[] mRecordBits;
+
+    /*
+     * The bits updated by the media record store or delete while the index is loading; the loaded record does
+     * not override them, as it may be read before the update. Set to null when the load has completed.
+     */
+    private BitSet[] mUpdatedBits;
+
+    private MediaAvailability() {
+        int size = LyricsIndex.HYMN_TYPES.length * mMediaTypes;
+        mRecordBits = new BitSet[size];
+        mUpdatedBits = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            mRecordBits[i] = new BitSet();
+            mUpdatedBits[i] = new BitSet();
+        }
+    }
+
+    /**
+     * Start the media availability index load from the database in a background thread; call at startup,
+     * so the index is ready for the first hymn page.
+     */
+    public static void prepare() {
+        getInstance();
+    }
+
+    /**
+     * Get the media availability index instance; its load from the database is started on first call.
+     *
+     * @return the MediaAvailability instance
+     */
+    public static MediaAvailability getInstance() {
+        MediaAvailability availability = mInstance;
+        if (availability == null) {
+            synchronized (MediaAvailability.class) {
+                availability = mInstance;
+                if (availability == null) {
+                    // Publish the instance before the load, so no record store or delete in the meantime is missed
+                    availability = new MediaAvailability();
+                    mInstance = availability;
+                    new Thread(availability::load, "MediaAvailability").start();
+                }
+            }
+        }
+        return availability;
+    }
+
+    private void load() {
+        long startTime = System.currentTimeMillis();
+        DatabaseBackend mDB = DatabaseBackend.getInstance(HymnsApp.getGlobalContext());
+        for (String hymnType : LyricsIndex.HYMN_TYPES) {
+            List<MediaRecord> mRecords = mDB.getMediaRecords(hymnType);
+            synchronized (this) {
+                for (MediaRecord mRecord : mRecords) {
+                    int idx = getIndex(mRecord.getHymnType(), mRecord.getMediaType());
+                    if (idx != -1 && mRecord.getHymnNo() >= 0 && !mUpdatedBits[idx].get(mRecord.getHymnNo())) {
+                        mRecordBits[idx].set(mRecord.getHymnNo());
+                    }
+                }
+            }
+        }
+        synchronized (this) {
+            mUpdatedBits = null;
+        }
+        Timber.d("Media availability index loaded in %s ms", System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Check if the hymn media is available either as the media record in database or as the local media file.
+     *
+     * @param hymnType the hymnType
+     * @param hymnNo the hymn number; the fu hymnNo is offset by HYMN_DB_NO_MAX
+     * @param mediaType the MediaType
+     *
+     * @return true if the media is available
+     */
+    public boolean isAvailable(String hymnType, int hymnNo, MediaType mediaType) {
+        int idx = getIndex(hymnType, mediaType);
+        if (idx == -1 || hymnNo < 0)
+            return false;
+
+        synchronized (this) {
+            if (mRecordBits[idx].get(hymnNo))
+                return true;
+        }
+        return MediaFileCatalog.getInstance().hasMediaFile(hymnType + MediaConfig.mediaDir.get(mediaType), hymnNo);
+    }
+
+    /**
+     * Update the index on the media record stored in database; no-op if the index is not created yet,
+     * as the record is then loaded from the database.
+     *
+     * @param mRecord the stored media record
+     */
+    public static void onRecordStored(MediaRecord mRecord) {
+        MediaAvailability availability = mInstance;
+        if (availability != null) {
+            synchronized (availability) {
+                availability.setRecordBit(mRecord, true);
+            }
+        }
+    }
+
+    /**
+     * Update the index on the media record deleted from database.
+     *
+     * @param mRecord the deleted media record
+     */
+    public static void onRecordDeleted(MediaRecord mRecord) {
+        MediaAvailability availability = mInstance;
+        if (availability != null) {
+            synchronized (availability) {
+                availability.setRecordBit(mRecord, false);
+            }
+        }
+    }
+
+    private int getIndex(String hymnType, MediaType mediaType) {
+        int typeIdx = LyricsIndex.getTypeIndex(hymnType);
+        return (typeIdx == -1) ? -1 : typeIdx * mMediaTypes + mediaType.getValue();
+    }
+
+    private void setRecordBit(MediaRecord mRecord, boolean value) {
+        int idx = getIndex(mRecord.getHymnType(), mRecord.getMediaType());
+        if (idx != -1 && mRecord.getHymnNo() >= 0) {
+            mRecordBits[idx].set(mRecord.getHymnNo(), value);
+            if (mUpdatedBits != null) {
+                mUpdatedBits[idx].set(mRecord.getHymnNo());
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.persistance;
+
+import android.os.FileObserver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.cog.hymnchtv.ContentHandler;
+
+import timber.log.Timber;
+
+/**
+ * The catalog of the local media files in each hymn media folder i.e. hymn_db/media_media/ etc, indexed by hymnNo.
+ * Each media folder is scanned only once on its first lookup; the catalog is then kept up to date by the folder
+ * FileObserver and the media file download completion. So the media file lookup takes no directory scan,
+ * independent of the number of the media files in the folder.
+ *
+ * A media file is catalogued under each hymnNo it matches, same as the ContentHandler#getHymnNoFilter().
+ *
+ * @author Eng Chong Meng
+ */
+public class MediaFileCatalog {
+    /* Each digits run in the media file name i.e. the possible hymnNo, with its leading zeros stripped */
+    private static final Pattern HYMN_NO = Pattern.compile("(?<![0-9])0*([0-9]{1,9})(?![0-9])");
+
+    private static final int OBSERVER_EVENTS = FileObserver.CREATE | FileObserver.MOVED_TO
+            | FileObserver.DELETE | FileObserver.MOVED_FROM | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    private static MediaFileCatalog mInstance = null;
+
+    /* The media folder catalog of each media dir i.e. hymnType + MEDIA_xxx */
+    private final Map<String, DirCatalog> mCatalogs = new HashMap<>();
+
+    public static synchronized MediaFileCatalog getInstance() {
+        if (mInstance == null) {
+            mInstance = new MediaFileCatalog();
+        }
+        return mInstance;
+    }
+
+    /**
+     * Get the local media files of the given hymnNo in the media dir.
+     *
+     * @param dir the media local dir e.g. hymnType + MEDIA_MEDIA
+     * @param hymnNo the hymn No
+     *
+     * @return the list of the media files in file name order; empty list if none
+     */
+    public List<File> getMediaFiles(String dir, int hymnNo) {
+        DirCatalog catalog = getCatalog(dir);
+        return (catalog == null) ? Collections.emptyList() : catalog.getFiles(hymnNo);
+    }
+
+    /**
+     * Check if there is any local media file of the given hymnNo in the media dir.
+     *
+     * @param dir the media local dir e.g. hymnType + MEDIA_MEDIA
+     * @param hymnNo the hymn No
+     *
+     * @return true if the media file is found
+     */
+    public boolean hasMediaFile(String dir, int hymnNo) {
+        DirCatalog catalog = getCatalog(dir);
+        return (catalog != null) && catalog.hasFile(hymnNo);
+    }
+
+    private synchronized DirCatalog getCatalog(String dir) {
+        DirCatalog catalog = mCatalogs.get(dir);
+        if (catalog == null || catalog.isInvalid) {
+            if (catalog != null) {
+                catalog.stopWatching();
+            }
+
+            // Not cached if no storage permission, so the media folder is scanned again on next lookup
+            File hymnDir = FileBackend.getHymnchtvStore(dir, true);
+            if (hymnDir == null)
+                return null;
+
+            catalog = new DirCatalog(hymnDir);
+            mCatalogs.put(dir, catalog);
+        }
+        return catalog;
+    }
+
+    /**
+     * Add the new media file e.g. the downloaded file to the catalog of its media folder if loaded; so the file is
+     * available immediately without waiting for the FileObserver event.
+     *
+     * @param mediaFile the new media file
+     */
+    public static void onFileAdded(File mediaFile) {
+        MediaFileCatalog mediaFileCatalog = mInstance;
+        if (mediaFileCatalog == null)
+            return;
+
+        synchronized (mediaFileCatalog) {
+            for (DirCatalog catalog : mediaFileCatalog.mCatalogs.values()) {
+                if (catalog.mDir.equals(mediaFile.getParentFile())) {
+                    catalog.addFile(mediaFile.getName());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * The catalog of a media folder; it must be kept referenced for the FileObserver to stay active.
+     */
+    private static class DirCatalog extends FileObserver {
+        private final File mDir;
+        private final Map<Integer, List<File>> mFiles = new HashMap<>();
+
+        /* Set when the media folder is deleted or moved; the folder is then scanned again on next lookup */
+        private volatile boolean isInvalid = false;
+
+        DirCatalog(File dir) {
+            super(dir.getAbsolutePath(), OBSERVER_EVENTS);
+            mDir = dir;
+
+            // Start watching before the scan, so there is no missing file change in between
+            startWatching();
+            long startTime = System.currentTimeMillis();
+            String[] fileNames = dir.list();
+            if (fileNames != null) {
+                Arrays.sort(fileNames);
+                for (String fileName : fileNames) {
+                    addFile(fileName);
+                }
+            }
+            Timber.d("Media files catalog %s (%s) loaded in %s ms", dir.getName(),
+                    (fileNames == null) ? 0 : fileNames.length, System.currentTimeMillis() - startTime);
+        }
+
+        @Override
+        public void onEvent(int event, String path) {
+            switch (event & FileObserver.ALL_EVENTS) {
+                case FileObserver.CREATE:
+                case FileObserver.MOVED_TO:
+                    if (path != null)
+                        addFile(path);
+                    break;
+
+                case FileObserver.DELETE:
+                case FileObserver.MOVED_FROM:
+                    if (path != null)
+                        removeFile(path);
+                    break;
+
+                case FileObserver.DELETE_SELF:
+                case FileObserver.MOVE_SELF:
+                    isInvalid = true;
+                    break;
+            }
+        }
+
+        synchronized void addFile(String fileName) {
+            File file = new File(mDir, fileName);
+            for (int hymnNo : getHymnNos(fileName)) {
+                List<File> files = mFiles.get(hymnNo);
+                if (files == null) {
+                    files = new ArrayList<>(1);
+                    mFiles.put(hymnNo, files);
+                }
+                if (!files.contains(file)) {
+                    files.add(file);
+                }
+            }
+        }
+
+        synchronized void removeFile(String fileName) {
+            File file = new File(mDir, fileName);
+            for (int hymnNo : getHymnNos(fileName)) {
+                List<File> files = mFiles.get(hymnNo);
+                if (files != null && files.remove(file) && files.isEmpty()) {
+                    mFiles.remove(hymnNo);
+                }
+            }
+        }
+
+        synchronized List<File> getFiles(int hymnNo) {
+            List<File> files = mFiles.get(hymnNo);
+            return (files == null) ? Collections.emptyList() : new ArrayList<>(files);
+        }
+
+        synchronized boolean hasFile(int hymnNo) {
+            return mFiles.containsKey(hymnNo);
+        }
+
+        /**
+         * Get all the hymnNo matched by the given file name; the matched hymnNo is always one of its digits run.
+         */
+        private List<Integer> getHymnNos(String fileName) {
+            List<Integer> hymnNos = new ArrayList<>(1);
+            Matcher matcher = HYMN_NO.matcher(fileName);
+            while (matcher.find()) {
+                int hymnNo = Integer.parseInt(matcher.group(1));
+                if (!hymnNos.contains(hymnNo) && ContentHandler.getHymnNoFilter(hymnNo).accept(mDir, fileName)) {
+                    hymnNos.add(hymnNo);
+                }
+            }
+            return hymnNos;
+        }
+    }
+}
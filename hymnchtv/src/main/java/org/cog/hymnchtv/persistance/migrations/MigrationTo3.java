@@ -7,6 +7,7 @@ import android.database.sqlite.SQLiteDatabase;
 import org.cog.hymnchtv.MainActivity;
 import org.cog.hymnchtv.mediaconfig.LyricsEnglishRecord;
 import org.cog.hymnchtv.mediaconfig.MediaConfig;
+import org.cog.hymnchtv.mediaconfig.MediaRecord;
 import org.cog.hymnchtv.persistance.DatabaseBackend;
 
 import timber.log.Timber;
@@ -35,8 +36,9 @@ public class MigrationTo3 {
 
         for (String hymnType : hymnTypes) {
             // String[] args = new String[]{"HYMN_JIAOCHANG"};
-            String[] args = new String[]{"HYMN_JIAOCHANG"};
-            int count = db.delete(hymnType, MediaConfig.MEDIA_TYPE + "=?", args);
+            String[] args = new String[]{hymnType, "HYMN_JIAOCHANG"};
+            int count = db.delete(MediaRecord.TABLE_NAME, MediaConfig.HYMN_TYPE + "=? AND "
+                    + MediaConfig.MEDIA_TYPE + "=?", args);
             Timber.d("Purge HYMN_URL records for %s (%s)", hymnType, count);
         }
     }
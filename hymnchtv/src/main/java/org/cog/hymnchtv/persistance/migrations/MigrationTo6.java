@@ -0,0 +1,57 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.persistance.migrations;
+
+import static org.cog.hymnchtv.persistance.DatabaseBackend.CREATE_MEDIA_LINK_INDEX;
+import static org.cog.hymnchtv.persistance.DatabaseBackend.CREATE_MEDIA_TABLE;
+import static org.cog.hymnchtv.persistance.DatabaseBackend.MEDIA_HYMN_TYPES;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.cog.hymnchtv.mediaconfig.MediaConfig;
+import org.cog.hymnchtv.mediaconfig.MediaRecord;
+
+import timber.log.Timber;
+
+/**
+ * Merge the per hymnType media tables into the single indexed media table, with the precomputed isLink flag.
+ *
+ * @author Eng Chong Meng
+ */
+public class MigrationTo6 {
+    public static void createMediaTable(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + MediaRecord.TABLE_NAME);
+        db.execSQL(CREATE_MEDIA_TABLE);
+
+        String columns = MediaConfig.HYMN_NO + ", " + MediaConfig.HYMN_FU + ", " + MediaConfig.MEDIA_TYPE + ", "
+                + MediaConfig.MEDIA_URI + ", " + MediaConfig.MEDIA_FILE_PATH;
+        for (String hymnType : MEDIA_HYMN_TYPES) {
+            // The primary key columns are not null in the media table; skip any invalid old record
+            db.execSQL("INSERT OR REPLACE INTO " + MediaRecord.TABLE_NAME + " (" + MediaConfig.HYMN_TYPE + ", "
+                    + columns + ", " + MediaConfig.MEDIA_IS_LINK + ") SELECT ?, " + MediaConfig.HYMN_NO + ", IFNULL("
+                    + MediaConfig.HYMN_FU + ", 0), " + MediaConfig.MEDIA_TYPE + ", " + MediaConfig.MEDIA_URI + ", "
+                    + MediaConfig.MEDIA_FILE_PATH + ", " + MediaConfig.MEDIA_URI + " LIKE 'http%' FROM " + hymnType
+                    + " WHERE " + MediaConfig.HYMN_NO + " IS NOT NULL AND " + MediaConfig.MEDIA_TYPE + " IS NOT NULL",
+                    new Object[]{hymnType});
+            db.execSQL("DROP TABLE IF EXISTS " + hymnType);
+        }
+
+        // Create the index after the data merge, so it is built once in sorted order
+        db.execSQL(CREATE_MEDIA_LINK_INDEX);
+        Timber.d("Merged media tables into %s", MediaRecord.TABLE_NAME);
+    }
+}
@@ -0,0 +1,11 @@
+package org.cog.hymnchtv.persistance.migrations;
+
+import static org.cog.hymnchtv.persistance.DatabaseBackend.CREATE_HYMN_HISTORY_INDEX;
+
+import android.database.sqlite.SQLiteDatabase;
+
+public class MigrationTo7 {
+    public static void createHistoryIndex(SQLiteDatabase db) {
+        db.execSQL(CREATE_HYMN_HISTORY_INDEX);
+    }
+}
@@ -35,6 +35,10 @@ public class Migrations
                 MigrationTo4.addHymnXgTable(db);
             case 4:
                 MigrationTo5.addHymnYbTable(db);
+            case 5:
+                MigrationTo6.createMediaTable(db);
+            case 6:
+                MigrationTo7.createHistoryIndex(db);
         }
     }
 }
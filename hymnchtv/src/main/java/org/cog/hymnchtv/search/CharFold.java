@@ -0,0 +1,127 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.search;
+
+import android.content.res.AssetManager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import org.cog.hymnchtv.HymnsApp;
+
+import timber.log.Timber;
+
+/**
+ * The character fold table generated at build time by the CharFoldBuilder; it folds the traditional Chinese
+ * and the variant characters e.g. 祂 to the canonical search form, as used in the LyricsIndex.
+ * The search string and the lyrics text are folded with this in-memory table for matching, in place of the
+ * OpenCC T2S conversion; so the user may search in either script without any native call.
+ *
+ * The folded text always has the same length as the original text; so the match position in the folded text
+ * can be used directly on the original text for display.
+ *
+ * @author Eng Chong Meng
+ */
+public class CharFold implements LyricsSearchEngine.TextFolder {
+    /* The build time generated char fold asset; see hymnchtv build.gradle generateCharFold */
+    public static final String CHAR_FOLD = "char_fold.idx";
+
+    private static final int MAGIC = 0x48594346;
+    private static final int VERSION = 1;
+
+    private static volatile CharFold mInstance = null;
+
+    /* Direct lookup table for all the BMP characters; null if the fold asset is not available */
+    private final char[] mTable;
+
+    private CharFold(char[] table) {
+        mTable = table;
+    }
+
+    /**
+     * Get the char fold instance, loaded on first call. The identity fold is returned if the fold asset
+     * is not available.
+     *
+     * @return the CharFold instance
+     */
+    public static synchronized CharFold getInstance() {
+        if (mInstance == null) {
+            AssetManager assets = HymnsApp.getGlobalContext().getAssets();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(assets.open(CHAR_FOLD)))) {
+                mInstance = new CharFold(loadTable(in));
+            } catch (IOException e) {
+                Timber.w("Char fold table not available: %s", e.getMessage());
+                mInstance = new CharFold(null);
+            }
+        }
+        return mInstance;
+    }
+
+    /**
+     * Get the char fold instance without waiting for the fold asset loading, e.g. on the UI thread.
+     *
+     * @return the CharFold instance, or null if not yet loaded
+     */
+    public static CharFold getLoadedInstance() {
+        return mInstance;
+    }
+
+    private static char[] loadTable(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Invalid char fold header");
+        }
+
+        int count = in.readInt();
+        char[] keys = new char[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = in.readChar();
+        }
+
+        char[] table = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c < table.length; c++) {
+            table[c] = (char) c;
+        }
+        for (int i = 0; i < count; i++) {
+            table[keys[i]] = in.readChar();
+        }
+        return table;
+    }
+
+    public char fold(char c) {
+        return (mTable == null) ? c : mTable[c];
+    }
+
+    /**
+     * Fold all the characters in the given text to the canonical search form.
+     *
+     * @param text the text to fold
+     *
+     * @return the folded text, with the same length as the given text
+     */
+    @Override
+    public String fold(String text) {
+        if (mTable == null || text == null)
+            return text;
+
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = mTable[chars[i]];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.search;
+
+import static org.cog.hymnchtv.MainActivity.HYMN_BB;
+import static org.cog.hymnchtv.MainActivity.HYMN_DB;
+import static org.cog.hymnchtv.MainActivity.HYMN_ER;
+import static org.cog.hymnchtv.MainActivity.HYMN_XB;
+import static org.cog.hymnchtv.MainActivity.HYMN_XG;
+import static org.cog.hymnchtv.MainActivity.HYMN_YB;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.cog.hymnchtv.HymnsApp;
+
+import timber.log.Timber;
+
+/**
+ * The inverted n-gram index of all the hymn lyrics text, generated at build time by the LyricsIndexBuilder.
+ * The index asset is stored uncompressed in the apk, and is memory-mapped once on first use.
+ *
+ * Each posting entry refers to a lyrics line: (hymnType index << 20) | (hymnNo << 8) | line.
+ * A search string can only be matched in a lyrics line if all its bigrams are found in the same line;
+ * so the intersection of the bigram posting lists gives the candidate lines to be verified.
+ * The lyrics are indexed in their CharFold form, so the search string must be folded before lookup.
+ *
+ * @author Eng Chong Meng
+ */
+public class LyricsIndex {
+    /* The build time generated lyrics index asset; see hymnchtv build.gradle generateLyricsIndex */
+    public static final String LYRICS_INDEX = "lyrics_index.idx";
+
+    private static final int MAGIC = 0x48594958;
+    private static final int VERSION = 2;
+
+    /* The hymnType in the search display order; the array index is the hymnType index used in the index */
+    public static final String[] HYMN_TYPES = {HYMN_DB, HYMN_BB, HYMN_XB, HYMN_XG, HYMN_YB, HYMN_ER};
+
+    private static LyricsIndex mInstance = null;
+
+    private static boolean isLoaded = false;
+
+    private final ByteBuffer mBuffer;
+
+    private final int mGramCount;
+
+    /* Start position of the grams table, offsets table and postings data block in mBuffer */
+    private final int mGramsPos;
+    private final int mOffsetsPos;
+    private final int mPostingsPos;
+
+    private LyricsIndex(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Invalid lyrics index header");
+        }
+        mGramCount = buffer.getInt(8);
+        mGramsPos = 12;
+        mOffsetsPos = mGramsPos + 4 * mGramCount;
+        mPostingsPos = mOffsetsPos + 4 * (mGramCount + 1);
+    }
+
+    /**
+     * Get the lyrics index instance, loaded on first call.
+     *
+     * @return the LyricsIndex or null if the index asset is not available
+     */
+    public static synchronized LyricsIndex getInstance() {
+        if (!isLoaded) {
+            isLoaded = true;
+            AssetManager assets = HymnsApp.getGlobalContext().getAssets();
+            try {
+                mInstance = new LyricsIndex(mapAsset(assets, LYRICS_INDEX));
+            } catch (IOException e) {
+                Timber.w("Lyrics index not available: %s", e.getMessage());
+            }
+        }
+        return mInstance;
+    }
+
+    /**
+     * Memory-map the uncompressed asset; else fallback to read the whole asset into memory.
+     *
+     * @param assets the AssetManager
+     * @param fileName the asset file name
+     *
+     * @return the ByteBuffer containing the asset content
+     */
+    static ByteBuffer mapAsset(AssetManager assets, String fileName) throws IOException {
+        try (AssetFileDescriptor afd = assets.openFd(fileName);
+             FileInputStream inStream = afd.createInputStream()) {
+            return inStream.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+        } catch (IOException e) {
+            // openFd fails if the asset is compressed in the apk
+            Timber.w("Asset %s mapping failed, fallback to read: %s", fileName, e.getMessage());
+        }
+
+        try (InputStream inStream = assets.open(fileName)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = inStream.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        }
+    }
+
+    /**
+     * Get the hymnType index as used in the lyrics index.
+     *
+     * @param hymnType the hymnType
+     *
+     * @return the hymnType index, or -1 if unknown
+     */
+    public static int getTypeIndex(String hymnType) {
+        for (int i = 0; i < HYMN_TYPES.length; i++) {
+            if (HYMN_TYPES[i].equals(hymnType))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the unique hymn key for the hymnType index and hymnNo; same as the posting entry without the line.
+     */
+    public static int getHymnKey(int typeIdx, int hymnNo) {
+        return (typeIdx << 12) | hymnNo;
+    }
+
+    public static int getHymnKey(int posting) {
+        return posting >>> 8;
+    }
+
+    public static int getTypeIndex(int posting) {
+        return posting >>> 20;
+    }
+
+    public static int getHymnNo(int posting) {
+        return (posting >>> 8) & 0xFFF;
+    }
+
+    public static int getLine(int posting) {
+        return posting & 0xFF;
+    }
+
+    private static int gramKey(char c1, char c2) {
+        return (c1 << 16) | c2;
+    }
+
+    /**
+     * Get all the lyrics lines that may contain the given search string; the caller must verify the
+     * actual match against the lyrics text.
+     *
+     * @param sString the search string
+     *
+     * @return the sorted posting entries of the candidate lines; empty if none
+     */
+    public int[] getCandidates(String sString) {
+        int length = sString.length();
+        if (length == 0)
+            return new int[0];
+
+        int[] grams;
+        if (length == 1) {
+            grams = new int[]{gramKey(sString.charAt(0), (char) 0)};
+        }
+        else {
+            grams = new int[length - 1];
+            for (int i = 0; i < length - 1; i++) {
+                grams[i] = gramKey(sString.charAt(i), sString.charAt(i + 1));
+            }
+        }
+
+        // Find each gram posting list; start the intersection with the shortest list
+        int[] gramIdx = new int[grams.length];
+        int shortest = 0;
+        for (int i = 0; i < grams.length; i++) {
+            gramIdx[i] = findGram(grams[i]);
+            if (gramIdx[i] < 0)
+                return new int[0];
+
+            if (getPostingSize(gramIdx[i]) < getPostingSize(gramIdx[shortest]))
+                shortest = i;
+        }
+
+        int[] result = decodePostings(gramIdx[shortest]);
+        int count = result.length;
+        for (int i = 0; i < gramIdx.length && count > 0; i++) {
+            if (i != shortest && gramIdx[i] != gramIdx[shortest]) {
+                count = intersect(result, count, gramIdx[i]);
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Binary search for the gram in the sorted grams table.
+     *
+     * @param gram the gram key
+     *
+     * @return the index of the gram in the grams table, or -1 if not found
+     */
+    private int findGram(int gram) {
+        int low = 0;
+        int high = mGramCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = mBuffer.getInt(mGramsPos + 4 * mid);
+            if (value < gram)
+                low = mid + 1;
+            else if (value > gram)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * The encoded byte size of the posting list; used as an estimate of the posting list length.
+     */
+    private int getPostingSize(int idx) {
+        return mBuffer.getInt(mOffsetsPos + 4 * (idx + 1)) - mBuffer.getInt(mOffsetsPos + 4 * idx);
+    }
+
+    /**
+     * Decode all the posting entries for the gram at the given index.
+     */
+    private int[] decodePostings(int idx) {
+        int pos = mPostingsPos + mBuffer.getInt(mOffsetsPos + 4 * idx);
+        int end = mPostingsPos + mBuffer.getInt(mOffsetsPos + 4 * (idx + 1));
+
+        // The posting entries count cannot be more than the encoded bytes count
+        int[] postings = new int[end - pos];
+        int count = 0;
+        int value = 0;
+        while (pos < end) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = mBuffer.get(pos++);
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            value += delta;
+            postings[count++] = value;
+        }
+        return Arrays.copyOf(postings, count);
+    }
+
+    /**
+     * Intersect the sorted entries in result with the posting list of the gram at the given index;
+     * the posting list is decoded on the fly, and the result array is compacted in place.
+     *
+     * @param result the current intersection result
+     * @param count the valid entries count in result
+     * @param idx the gram index
+     *
+     * @return the new valid entries count in result
+     */
+    private int intersect(int[] result, int count, int idx) {
+        int pos = mPostingsPos + mBuffer.getInt(mOffsetsPos + 4 * idx);
+        int end = mPostingsPos + mBuffer.getInt(mOffsetsPos + 4 * (idx + 1));
+
+        int newCount = 0;
+        int rx = 0;
+        int value = 0;
+        while (pos < end && rx < count) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = mBuffer.get(pos++);
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            value += delta;
+
+            while (rx < count && result[rx] < value) {
+                rx++;
+            }
+            if (rx < count && result[rx] == value) {
+                result[newCount++] = value;
+                rx++;
+            }
+        }
+        return newCount;
+    }
+}
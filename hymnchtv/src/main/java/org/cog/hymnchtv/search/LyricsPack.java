@@ -0,0 +1,174 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.search;
+
+import android.content.res.AssetManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cog.hymnchtv.HymnsApp;
+
+import timber.log.Timber;
+
+/**
+ * The lyrics text of all the hymns, packed at build time by the LyricsPackBuilder into a single asset.
+ * The pack asset is stored uncompressed in the apk, and is memory-mapped once on first use; each hymn lyrics
+ * is then accessed as a slice of the mapped buffer without any asset open or copy.
+ *
+ * The lyrics text is in utf-8, with all the line separators normalized to '\n'.
+ *
+ * The lyrics pre-converted to traditional Chinese for each of the PRE_CONVERSIONS OpenCC configs are packed
+ * in the same format, so the lyrics view needs the native conversion only for the other conversion types.
+ *
+ * @author Eng Chong Meng
+ */
+public class LyricsPack {
+    /* The build time generated lyrics pack asset; see hymnchtv build.gradle generateLyricsPack */
+    public static final String LYRICS_PACK = "lyrics_pack.idx";
+
+    /* The OpenCC configs with the pre-converted lyrics pack; see hymnchtv build.gradle generateConvertedLyricsPack */
+    public static final List<String> PRE_CONVERSIONS = Arrays.asList("s2t.json", "s2tw.json", "s2hk.json");
+
+    private static final int MAGIC = 0x48594C50;
+    private static final int VERSION = 1;
+
+    /* The loaded lyrics pack of each pack asset name; null if the pack asset is not available */
+    private static final Map<String, LyricsPack> mInstances = new HashMap<>();
+
+    private final ByteBuffer mBuffer;
+
+    /* Start position of the offsets table of each hymnType in mBuffer, and its number of entries */
+    private final int[] mOffsetsPos;
+    private final int[] mSizes;
+
+    /* Start position of the text data block in mBuffer */
+    private final int mTextPos;
+
+    private LyricsPack(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Invalid lyrics pack header");
+        }
+
+        int typeCount = buffer.getInt(8);
+        mOffsetsPos = new int[typeCount];
+        mSizes = new int[typeCount];
+
+        int pos = 12;
+        for (int i = 0; i < typeCount; i++) {
+            mSizes[i] = buffer.getInt(pos);
+            mOffsetsPos[i] = pos + 4;
+            pos = mOffsetsPos[i] + 4 * (mSizes[i] + 1);
+        }
+        mTextPos = pos;
+    }
+
+    /**
+     * Get the simplified Chinese lyrics pack instance, loaded on first call.
+     *
+     * @return the LyricsPack or null if the pack asset is not available
+     */
+    public static LyricsPack getInstance() {
+        return getInstance(LYRICS_PACK);
+    }
+
+    /**
+     * Get the lyrics pack instance of the given pack asset, loaded on first call.
+     *
+     * @param packName the lyrics pack asset name
+     *
+     * @return the LyricsPack or null if the pack asset is not available
+     */
+    private static synchronized LyricsPack getInstance(String packName) {
+        if (!mInstances.containsKey(packName)) {
+            LyricsPack lyricsPack = null;
+            AssetManager assets = HymnsApp.getGlobalContext().getAssets();
+            try {
+                lyricsPack = new LyricsPack(LyricsIndex.mapAsset(assets, packName));
+            } catch (IOException e) {
+                Timber.e("Lyrics pack %s not available: %s", packName, e.getMessage());
+            }
+            mInstances.put(packName, lyricsPack);
+        }
+        return mInstances.get(packName);
+    }
+
+    /**
+     * Get the lyrics text of the given hymn as a read-only slice of the mapped pack; no data is copied.
+     * The returned buffer is independent of the pack, so it is safe for use in any thread.
+     *
+     * @param hymnType the hymnType
+     * @param hymnNo the hymn number
+     *
+     * @return the utf-8 lyrics text buffer, or null if the hymn has no lyrics
+     */
+    public ByteBuffer getLyricsBuffer(String hymnType, int hymnNo) {
+        int typeIdx = LyricsIndex.getTypeIndex(hymnType);
+        if (typeIdx < 0 || typeIdx >= mSizes.length || hymnNo < 0 || hymnNo >= mSizes[typeIdx])
+            return null;
+
+        int pos = mOffsetsPos[typeIdx] + 4 * hymnNo;
+        int start = mBuffer.getInt(pos);
+        int end = mBuffer.getInt(pos + 4);
+        if (start == end)
+            return null;
+
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.limit(mTextPos + end).position(mTextPos + start);
+        return buffer.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the lyrics text of the given hymn, decoded directly from the mapped pack.
+     *
+     * @param hymnType the hymnType
+     * @param hymnNo the hymn number
+     *
+     * @return the lyrics text, or null if not available
+     */
+    public static String getLyrics(String hymnType, int hymnNo) {
+        return getLyrics(getInstance(), hymnType, hymnNo);
+    }
+
+    /**
+     * Get the lyrics text of the given hymn, pre-converted with the given OpenCC config.
+     *
+     * @param hymnType the hymnType
+     * @param hymnNo the hymn number
+     * @param config the OpenCC config file name e.g. s2t.json
+     *
+     * @return the converted lyrics text, or null if there is no pre-converted lyrics for the config
+     */
+    public static String getConvertedLyrics(String hymnType, int hymnNo, String config) {
+        if (!PRE_CONVERSIONS.contains(config))
+            return null;
+
+        String packName = "lyrics_pack_" + config.replace(".json", "") + ".idx";
+        return getLyrics(getInstance(packName), hymnType, hymnNo);
+    }
+
+    private static String getLyrics(LyricsPack lyricsPack, String hymnType, int hymnNo) {
+        ByteBuffer buffer = (lyricsPack == null) ? null : lyricsPack.getLyricsBuffer(hymnType, hymnNo);
+        return (buffer == null) ? null : StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.search;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The scoring lyrics matcher for the ranked search mode.
+ * The search string is split by white spaces into search terms; and a hymn matches if any of the terms is found.
+ *
+ * The hymn score is the sum of all its lines score, where each line score is:
+ * a. the number of the terms hits in the line, weighted by the term length;
+ * b. plus the proximity bonus when different terms are found close together in the line;
+ * c. plus the phrase bonus if all the terms are found in sequence in the line;
+ * d. multiply by the line weight: the hymn title (line 1) has the highest weight, then the first few lines.
+ *
+ * The offset of the line with the highest score is returned as the matched text offset for display.
+ * The lines are scored in their folded form if a text folder is given, while the original line is returned.
+ *
+ * @author Eng Chong Meng
+ */
+public class LyricsRanker implements LyricsSearchEngine.HymnMatcher {
+    /* The line weight for the hymn title i.e. line 1 */
+    private static final float TITLE_WEIGHT = 4.0f;
+
+    /* The line weight for the first few lines, including the meter and key info lines */
+    private static final float FIRST_LINES_WEIGHT = 2.0f;
+    private static final int FIRST_LINES_END = 8;
+
+    private static final float PROXIMITY_BONUS = 2.0f;
+    private static final float PHRASE_BONUS = 3.0f;
+
+    private final String[] mTerms;
+
+    /* All the terms in sequence without the white spaces */
+    private final String mPhrase;
+
+    /* The text folder applied on the lyrics text before scoring; may be null */
+    private final LyricsSearchEngine.TextFolder mFolder;
+
+    /**
+     * @param sString the search string, with the terms separated by white spaces
+     */
+    public LyricsRanker(String sString) {
+        this(sString, null);
+    }
+
+    /**
+     * @param sString the search string, with the terms separated by white spaces; already folded by the folder
+     * @param folder the text folder to apply on the lyrics text; null for none
+     */
+    public LyricsRanker(String sString, LyricsSearchEngine.TextFolder folder) {
+        mTerms = getTerms(sString);
+        mPhrase = String.join("", mTerms);
+        mFolder = folder;
+    }
+
+    /**
+     * Split the search string into unique search terms by white spaces.
+     *
+     * @param sString the search string
+     *
+     * @return the search terms
+     */
+    public static String[] getTerms(String sString) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String term : sString.trim().split("\\s+")) {
+            if (!term.isEmpty())
+                terms.add(term);
+        }
+        return terms.toArray(new String[0]);
+    }
+
+    @Override
+    public SearchResult match(String hymnType, int hymnNo, String lyrics) {
+        if (lyrics == null || mTerms.length == 0)
+            return null;
+
+        float hymnScore = 0;
+        float bestScore = 0;
+        int bestOffset = -1;
+
+        String folded = (mFolder == null) ? lyrics : mFolder.fold(lyrics);
+        String[] lines = folded.split("\r?\n");
+
+        // Skip line 0 i.e. the hymn number; the line offset is tracked for the matched text display
+        int offset = lines[0].length();
+        for (int ln = 1; ln < lines.length; ln++) {
+            offset = skipLineEnd(folded, offset);
+            float score = getLineScore(lines[ln]);
+            if (score > 0) {
+                if (ln == 1)
+                    score *= TITLE_WEIGHT;
+                else if (ln < FIRST_LINES_END)
+                    score *= FIRST_LINES_WEIGHT;
+
+                hymnScore += score;
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestOffset = offset;
+                }
+            }
+            offset += lines[ln].length();
+        }
+
+        return (bestOffset == -1) ? null : new SearchResult(hymnType, hymnNo, bestOffset, hymnScore);
+    }
+
+    private static int skipLineEnd(String text, int offset) {
+        if (offset < text.length() && text.charAt(offset) == '\r')
+            offset++;
+        if (offset < text.length() && text.charAt(offset) == '\n')
+            offset++;
+        return offset;
+    }
+
+    /**
+     * Get the un-weighted score of a lyrics line.
+     *
+     * @param line the lyrics line
+     *
+     * @return the line score, 0 if no term is found
+     */
+    private float getLineScore(String line) {
+        float score = 0;
+        int termsFound = 0;
+
+        // The last found position of each term, for the proximity calculation
+        int[] lastPos = new int[mTerms.length];
+        int minGap = Integer.MAX_VALUE;
+
+        for (int t = 0; t < mTerms.length; t++) {
+            String term = mTerms[t];
+            lastPos[t] = -1;
+            int idx = line.indexOf(term);
+            while (idx != -1) {
+                score += term.length();
+                lastPos[t] = idx;
+
+                // Gap to the nearest occurrence of any of the preceding terms
+                for (int p = 0; p < t; p++) {
+                    if (lastPos[p] != -1) {
+                        int gap = (lastPos[p] < idx) ? idx - (lastPos[p] + mTerms[p].length())
+                                : lastPos[p] - (idx + term.length());
+                        minGap = Math.min(minGap, Math.max(0, gap));
+                    }
+                }
+                idx = line.indexOf(term, idx + term.length());
+            }
+            if (lastPos[t] != -1)
+                termsFound++;
+        }
+
+        if (termsFound > 1) {
+            score += termsFound * PROXIMITY_BONUS / (1 + minGap);
+            if (line.contains(mPhrase))
+                score += mTerms.length * PHRASE_BONUS;
+        }
+        return score;
+    }
+}
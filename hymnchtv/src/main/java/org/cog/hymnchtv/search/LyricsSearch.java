@@ -0,0 +1,337 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.search;
+
+import static org.cog.hymnchtv.MainActivity.HYMN_BB;
+import static org.cog.hymnchtv.MainActivity.HYMN_DB;
+import static org.cog.hymnchtv.MainActivity.HYMN_ER;
+import static org.cog.hymnchtv.MainActivity.HYMN_XB;
+import static org.cog.hymnchtv.MainActivity.HYMN_XG;
+import static org.cog.hymnchtv.MainActivity.HYMN_YB;
+import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_BB_NO_MAX;
+import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_DB_NO_TMAX;
+import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_ER_NO_MAX;
+import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_XB_NO_MAX;
+import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_XG_NO_MAX;
+import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_YB_NO_TMAX;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.cog.hymnchtv.search.LyricsSearchEngine.HymnBook;
+import org.cog.hymnchtv.utils.HymnNoValidate;
+
+/**
+ * LyricsSearch performs the lyrics content search in a background thread.
+ * The matched results are delivered on the UI thread in batches, one batch for each hymn book
+ * in the order of DB, BB, XB, XG, YB, ER; together with the search progress update.
+ * In ranked search, the top RANKED_PAGE_SIZE results are delivered in one batch in relevance order on search
+ * completed; the following results are fetched a page at a time with searchMore().
+ * The results carry only the matched line offset; the matched text is derived on display, see SearchCursor.
+ * The search string may be in either simplified or traditional Chinese; both the search string and the
+ * lyrics text are matched in their CharFold form. A search string of latin letters only is looked up in the
+ * hymn titles and first lines pinyin index instead, if available.
+ *
+ * A new search request cancels any search in progress; and no further callback is made for a cancelled search.
+ * The owner must call cancel() when the search results are no longer required e.g. activity is finishing.
+ *
+ * @author Eng Chong Meng
+ */
+public class LyricsSearch {
+    /*
+     * The search engine worker threads count; bounded as the search is mostly asset I/O and utf-8 decoding bound.
+     * Use the benchmark module SearchBenchmark to check the cores vs latency on the target hardware.
+     */
+    private static final int SEARCH_PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /* The max number of ranked results fetched in each page; keeps the ranking heap bounded */
+    public static final int RANKED_PAGE_SIZE = 100;
+
+    /* All the hymn books with their valid hymnNo to be searched, in the search results display order */
+    private static final HymnBook[] mHymnBooks = {
+            createHymnBook(HYMN_DB, HYMN_DB_NO_TMAX),
+            createHymnBook(HYMN_BB, HYMN_BB_NO_MAX),
+            createHymnBook(HYMN_XB, HYMN_XB_NO_MAX),
+            createHymnBook(HYMN_XG, HYMN_XG_NO_MAX),
+            createHymnBook(HYMN_YB, HYMN_YB_NO_TMAX),
+            createHymnBook(HYMN_ER, HYMN_ER_NO_MAX)
+    };
+
+    /* Total number of hymns to be searched, for progress bar max value */
+    public static final int PROGRESS_MAX = getHymnCount();
+
+    /* All search requests are coordinated in sequence in a single background thread */
+    private static final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private static final LyricsSearchEngine mSearchEngine = new LyricsSearchEngine(SEARCH_PARALLELISM);
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final SearchListener mListener;
+
+    /* The current search task; access only on the UI thread */
+    private SearchTask mSearchTask = null;
+
+    /**
+     * The search result listener; all the callbacks are made on the UI thread.
+     */
+    public interface SearchListener {
+        /**
+         * The folded search terms for highlighting the matched text; called before any search results.
+         *
+         * @param terms the search terms; empty for the pinyin search
+         */
+        void onSearchTerms(String[] terms);
+
+        /**
+         * The matched results for a hymn book; called once for each hymn book even if there is no match.
+         * For ranked search, it is called once for each page with the page results in relevance order.
+         *
+         * @param results the matched results
+         */
+        void onSearchResults(List<SearchResult> results);
+
+        /**
+         * Search progress update.
+         *
+         * @param progress the number of hymns searched, with PROGRESS_MAX as the max value
+         */
+        void onSearchProgress(int progress);
+
+        /**
+         * Search has completed; for ranked search, the fetch of a page has completed.
+         *
+         * @param count total number of matched results delivered so far
+         */
+        void onSearchCompleted(int count);
+    }
+
+    public LyricsSearch(SearchListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Create the HymnBook with all the hymnNo from 1 to hymnNoMax, skipping over the invalid range.
+     *
+     * @param hymnType hymnType
+     * @param hymnNoMax the max hymnNo of the hymnType
+     *
+     * @return the HymnBook for the search engine
+     */
+    private static HymnBook createHymnBook(String hymnType, int hymnNoMax) {
+        List<Integer> hymnNos = new ArrayList<>();
+        for (int hymnNo = 1; hymnNo <= hymnNoMax; hymnNo = HymnNoValidate.getNextHymnNo(hymnType, hymnNo)) {
+            hymnNos.add(hymnNo);
+        }
+
+        int[] hymnNoList = new int[hymnNos.size()];
+        for (int i = 0; i < hymnNoList.length; i++) {
+            hymnNoList[i] = hymnNos.get(i);
+        }
+        return new HymnBook(LyricsIndex.getTypeIndex(hymnType), hymnType, hymnNoList);
+    }
+
+    private static int getHymnCount() {
+        int count = 0;
+        for (HymnBook hymnBook : mHymnBooks) {
+            count += hymnBook.hymnNos.length;
+        }
+        return count;
+    }
+
+    /**
+     * Start a new lyrics content search; any search in progress is cancelled.
+     * Must be called on the UI thread.
+     *
+     * @param sString the search string
+     * @param isRanked true for ranked search with the results in relevance order; else in hymn book order
+     */
+    public void search(String sString, boolean isRanked) {
+        cancel();
+        mSearchTask = new SearchTask(sString, isRanked);
+        mExecutor.execute(mSearchTask);
+    }
+
+    /**
+     * Fetch the next page of the ranked results of the current search, if there are more and no fetch in progress.
+     * Must be called on the UI thread.
+     */
+    public void searchMore() {
+        if (hasMore()) {
+            mSearchTask.isLoading = true;
+            mExecutor.execute(mSearchTask);
+        }
+    }
+
+    /**
+     * Must be called on the UI thread.
+     *
+     * @return true if the current ranked search has more results to be fetched with searchMore()
+     */
+    public boolean hasMore() {
+        return (mSearchTask != null) && !mSearchTask.isLoading && mSearchTask.hasMore;
+    }
+
+    /**
+     * Cancel the search in progress if any. Must be called on the UI thread.
+     */
+    public void cancel() {
+        if (mSearchTask != null) {
+            mSearchTask.isCancelled = true;
+            mSearchTask = null;
+        }
+    }
+
+    /**
+     * The background search task for a search string.
+     */
+    private class SearchTask implements Runnable, LyricsSearchEngine.SearchCallback {
+        private final String mSearchString;
+
+        private final boolean isRanked;
+
+        private volatile boolean isCancelled = false;
+
+        /* The rank position of the last fetched page; the search states are accessed only on the search thread */
+        private final LyricsSearchEngine.RankCursor mRankCursor = new LyricsSearchEngine.RankCursor();
+        private LyricsSearchEngine.HymnFilter mFilter;
+        private LyricsSearchEngine.HymnMatcher mMatcher;
+        private int mCount = 0;
+
+        /* The page fetch states; access only on the UI thread */
+        private boolean isLoading = true;
+        private boolean hasMore = false;
+
+        SearchTask(String sString, boolean ranked) {
+            mSearchString = sString;
+            isRanked = ranked;
+        }
+
+        @Override
+        public void run() {
+            if (isCancelled)
+                return;
+
+            if (mMatcher == null) {
+                // Pinyin lookup of the hymn titles and first lines
+                PinyinIndex pinyinIndex = PinyinIndex.isPinyin(mSearchString) ? PinyinIndex.getInstance() : null;
+                if (pinyinIndex != null) {
+                    List<SearchResult> results = pinyinIndex.lookup(mSearchString, Integer.MAX_VALUE);
+                    postIfActive(() -> {
+                        isLoading = false;
+                        mListener.onSearchTerms(new String[0]);
+                        mListener.onSearchResults(results);
+                        mListener.onSearchCompleted(results.size());
+                    });
+                    return;
+                }
+
+                // Fold the search string to the canonical search form, same as the lyrics index and the matchers
+                CharFold charFold = CharFold.getInstance();
+                String sString = charFold.fold(mSearchString);
+
+                // Get the candidate hymns from the prebuilt lyrics index; full scan if the index is not available.
+                // Ranked search matches any of the search terms.
+                String[] terms = isRanked ? LyricsRanker.getTerms(sString) : new String[]{sString};
+                postIfActive(() -> mListener.onSearchTerms(terms));
+
+                BitSet candidates = getCandidates(terms);
+                mFilter = (candidates == null) ? null
+                        : (typeIdx, hymnNo) -> candidates.get(LyricsIndex.getHymnKey(typeIdx, hymnNo));
+                mMatcher = isRanked ? new LyricsRanker(sString, charFold)
+                        : LyricsSearchEngine.getTextMatcher(sString, charFold);
+            }
+
+            final boolean more;
+            if (isRanked) {
+                mCount += mSearchEngine.rank(mHymnBooks, mFilter, LyricsPack::getLyrics, mMatcher,
+                        RANKED_PAGE_SIZE, mRankCursor, this);
+                more = mRankCursor.hasMore();
+            }
+            else {
+                // The matched results are streamed to the listener in book order; no ranking heap is involved
+                mCount = mSearchEngine.search(mHymnBooks, mFilter, LyricsPack::getLyrics, mMatcher,
+                        Integer.MAX_VALUE, this);
+                more = false;
+            }
+
+            final int count = mCount;
+            postIfActive(() -> {
+                isLoading = false;
+                hasMore = more;
+                mListener.onSearchCompleted(count);
+            });
+        }
+
+        @Override
+        public void onBookResults(HymnBook hymnBook, List<SearchResult> results) {
+            postIfActive(() -> mListener.onSearchResults(results));
+        }
+
+        @Override
+        public void onProgress(int progress) {
+            postIfActive(() -> mListener.onSearchProgress(progress));
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        /**
+         * Run the action on the UI thread only if the search has not been cancelled.
+         * The isCancelled is only set on the UI thread, so the check is reliable when the action is run.
+         *
+         * @param action the listener action to run
+         */
+        private void postIfActive(Runnable action) {
+            if (!isCancelled) {
+                mHandler.post(() -> {
+                    if (!isCancelled)
+                        action.run();
+                });
+            }
+        }
+    }
+
+    /**
+     * Get all the candidate hymns that may contain any of the search terms using the prebuilt lyrics index.
+     *
+     * @param terms the search terms
+     *
+     * @return BitSet of the candidate hymn keys, or null if the lyrics index is not available
+     */
+    private BitSet getCandidates(String[] terms) {
+        LyricsIndex lyricsIndex = LyricsIndex.getInstance();
+        if (lyricsIndex == null)
+            return null;
+
+        BitSet candidates = new BitSet();
+        for (String term : terms) {
+            for (int posting : lyricsIndex.getCandidates(term)) {
+                candidates.set(LyricsIndex.getHymnKey(posting));
+            }
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,552 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The parallel lyrics content search engine over the whole (hymnType, hymnNo) space.
+ *
+ * The hymns of each hymn book are split into fixed size chunks; the chunks are claimed in book order by
+ * a bounded pool of worker threads, and the caller thread merges the chunk results strictly in the
+ * same order. Hence the results are always in book then hymnNo order, and the search stops once
+ * the max results count is reached, exactly as a sequential search would.
+ *
+ * In rank mode, all the scored results are merged into a bounded min-heap to keep only the top K results;
+ * the ranked results beyond the top K are fetched a page at a time with a RankCursor.
+ *
+ * The class has no android dependency, so it can be benchmarked on the build host; see the benchmark module.
+ *
+ * @author Eng Chong Meng
+ */
+public class LyricsSearchEngine {
+    /* Number of hymns in each work chunk */
+    private static final int CHUNK_SIZE = 32;
+
+    /* Length of matched text to display*/
+    private static final int RESULT_MAX_LENGTH = 64;
+
+    private final ExecutorService mWorkers;
+
+    private final int mParallelism;
+
+    /**
+     * The hymnNo list of a hymn book to be searched.
+     */
+    public static class HymnBook {
+        /* The hymnType index, as used in the LyricsIndex hymn key */
+        public final int typeIdx;
+        public final String hymnType;
+        /* All the valid hymnNo of the hymn book in ascending order */
+        public final int[] hymnNos;
+
+        public HymnBook(int typeIdx, String hymnType, int[] hymnNos) {
+            this.typeIdx = typeIdx;
+            this.hymnType = hymnType;
+            this.hymnNos = hymnNos;
+        }
+    }
+
+    /**
+     * The lyrics text content provider.
+     */
+    public interface LyricsReader {
+        /**
+         * @param hymnType hymnType
+         * @param hymnNo hymnNo
+         *
+         * @return the lyrics text of the hymn, or null if not available
+         */
+        String getLyrics(String hymnType, int hymnNo);
+    }
+
+    /**
+     * The hymn filter to skip the hymns that cannot contain the search string e.g. based on the LyricsIndex.
+     */
+    public interface HymnFilter {
+        /**
+         * @param typeIdx the hymnType index
+         * @param hymnNo hymnNo
+         *
+         * @return true if the hymn may contain the search string
+         */
+        boolean accept(int typeIdx, int hymnNo);
+    }
+
+    /**
+     * The lyrics matcher for a search request; must be thread safe as it is called by all the workers.
+     */
+    public interface HymnMatcher {
+        /**
+         * @param hymnType hymnType
+         * @param hymnNo hymnNo
+         * @param lyrics the lyrics text of the hymn; may be null
+         *
+         * @return the matched result, or null if the lyrics does not match
+         */
+        SearchResult match(String hymnType, int hymnNo, String lyrics);
+    }
+
+    /**
+     * The text folder to map the text to its canonical search form e.g. CharFold; the folded text must have
+     * the same length as the original text.
+     */
+    public interface TextFolder {
+        String fold(String text);
+    }
+
+    /**
+     * The search callback; all methods are called on the thread calling search() or rank().
+     */
+    public interface SearchCallback {
+        /**
+         * The matched results for a hymn book; called once for each hymn book searched even if there is no match.
+         * For rank(), it is called once only with the ranked results, and with a null hymnBook.
+         */
+        void onBookResults(HymnBook hymnBook, List<SearchResult> results);
+
+        /**
+         * @param progress the number of hymns searched
+         */
+        void onProgress(int progress);
+
+        /**
+         * @return true to abort the search
+         */
+        boolean isCancelled();
+    }
+
+    /**
+     * Create a search engine with the given number of worker threads.
+     *
+     * @param parallelism the max number of worker threads
+     */
+    public LyricsSearchEngine(int parallelism) {
+        mParallelism = Math.max(1, parallelism);
+        mWorkers = Executors.newFixedThreadPool(mParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "LyricsSearch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Release the worker threads; the engine cannot be used after shutdown.
+     */
+    public void shutdown() {
+        mWorkers.shutdown();
+    }
+
+    /**
+     * Get the default matcher that finds the search string in the lyrics text.
+     *
+     * @param sString the search string
+     *
+     * @return the HymnMatcher
+     */
+    public static HymnMatcher getTextMatcher(String sString) {
+        return (hymnType, hymnNo, lyrics) -> {
+            int offset = getMatchOffset(lyrics, sString);
+            return (offset == -1) ? null : new SearchResult(hymnType, hymnNo, offset, 0);
+        };
+    }
+
+    /**
+     * Get the matcher that finds the folded search string in the folded lyrics text; the folded text has the same
+     * length as the original text, so the match offset applies to the original lyrics text for display.
+     *
+     * @param sString the search string, already folded by the given folder
+     * @param folder the text folder to apply on the lyrics text
+     *
+     * @return the HymnMatcher
+     */
+    public static HymnMatcher getTextMatcher(String sString, TextFolder folder) {
+        return (hymnType, hymnNo, lyrics) -> {
+            int offset = getMatchOffset(folder.fold(lyrics), sString);
+            return (offset == -1) ? null : new SearchResult(hymnType, hymnNo, offset, 0);
+        };
+    }
+
+    /**
+     * Search all the hymn books for the matched hymns; blocking until completed or cancelled.
+     * The results are delivered in book then hymnNo order, in one batch per hymn book.
+     *
+     * @param hymnBooks the hymn books to search in the results order
+     * @param filter the candidate hymns filter; null to search all
+     * @param reader the lyrics text provider
+     * @param matcher the lyrics matcher
+     * @param countMax the max number of results; Integer.MAX_VALUE for all
+     * @param callback the search callback
+     *
+     * @return the number of matched results
+     */
+    public int search(HymnBook[] hymnBooks, HymnFilter filter, LyricsReader reader, HymnMatcher matcher,
+            int countMax, SearchCallback callback) {
+        OrderedConsumer consumer = new OrderedConsumer(countMax, callback);
+        runChunks(hymnBooks, filter, reader, matcher, callback, consumer);
+        return consumer.count;
+    }
+
+    /**
+     * Search all the hymn books, and keep only the topK scored results ranked after the cursor position
+     * in a bounded min-heap. The ranked results are delivered in one batch in descending score order on completion;
+     * results with the same score are kept in book then hymnNo order.
+     * The cursor is then advanced to the last delivered result, so the next page can be fetched with the same cursor,
+     * provided the hymn books, filter and matcher are unchanged.
+     *
+     * @param hymnBooks the hymn books to search
+     * @param filter the candidate hymns filter; null to search all
+     * @param reader the lyrics text provider
+     * @param matcher the scoring lyrics matcher
+     * @param topK the max number of results in the page
+     * @param cursor the rank position of the last page, or null to get the first page only
+     * @param callback the search callback
+     *
+     * @return the number of ranked results in the page
+     */
+    public int rank(HymnBook[] hymnBooks, HymnFilter filter, LyricsReader reader, HymnMatcher matcher,
+            int topK, RankCursor cursor, SearchCallback callback) {
+        RankedConsumer consumer = new RankedConsumer(topK, (cursor == null) ? new RankCursor() : cursor);
+        if (!runChunks(hymnBooks, filter, reader, matcher, callback, consumer))
+            return 0;
+
+        List<SearchResult> results = consumer.getResults();
+        callback.onBookResults(null, results);
+        return results.size();
+    }
+
+    /**
+     * Run the matcher on all the hymns of the hymn books in parallel, and feed each chunk results
+     * to the consumer strictly in chunk order on the caller thread.
+     *
+     * @return true if all the chunks are completed; false if stopped by the consumer or cancelled
+     */
+    private boolean runChunks(HymnBook[] hymnBooks, HymnFilter filter, LyricsReader reader, HymnMatcher matcher,
+            SearchCallback callback, ChunkConsumer consumer) {
+        // Split each hymn book into work chunks, so a chunk never crosses the hymn book boundary
+        List<Chunk> chunks = new ArrayList<>();
+        for (HymnBook hymnBook : hymnBooks) {
+            for (int start = 0; start < hymnBook.hymnNos.length; start += CHUNK_SIZE) {
+                chunks.add(new Chunk(hymnBook, start, Math.min(start + CHUNK_SIZE, hymnBook.hymnNos.length)));
+            }
+        }
+
+        SearchJob job = new SearchJob(chunks, filter, reader, matcher, callback);
+        int workerCount = Math.min(mParallelism, chunks.size());
+        for (int i = 0; i < workerCount; i++) {
+            mWorkers.execute(job);
+        }
+
+        // Merge the chunk results in order as each chunk completes
+        int progress = 0;
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                Chunk chunk = chunks.get(i);
+                chunk.done.await();
+                if (callback.isCancelled())
+                    return false;
+
+                progress += chunk.end - chunk.start;
+                boolean isBookEnd = (i + 1 == chunks.size()) || (chunks.get(i + 1).hymnBook != chunk.hymnBook);
+                boolean isContinue = consumer.accept(chunk, isBookEnd);
+                callback.onProgress(progress);
+
+                if (!isContinue)
+                    return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            // Let the workers skip all the remaining chunks
+            job.isStopped = true;
+        }
+        return true;
+    }
+
+    /**
+     * Find the given search string in the lyrics text, skipping over the hymn number line.
+     *
+     * @param lyrics the lyrics text, or its folded text
+     * @param sString the search string
+     *
+     * @return the start offset of the matched line, or -1 if not found
+     */
+    public static int getMatchOffset(String lyrics, String sString) {
+        if (lyrics == null)
+            return -1;
+
+        // The lyrics text starts after the hymn number line; same as in LyricsRanker#match()
+        int lyricsStart = lyrics.indexOf('\n') + 1;
+        if (lyricsStart == 0)
+            return -1;
+
+        int matchIdx = lyrics.indexOf(sString, lyricsStart);
+        if (matchIdx == -1)
+            return -1;
+
+        // find the start of the line for display
+        return Math.max(lyricsStart, lyrics.lastIndexOf("\n", matchIdx) + 1);
+    }
+
+    /**
+     * Get the lyrics text from the given offset for display.
+     *
+     * @param lyrics the lyrics text
+     * @param offset the start offset of the matched line
+     *
+     * @return the matched text of max RESULT_MAX_LENGTH for display, or null if not available
+     */
+    public static String getMatchText(String lyrics, int offset) {
+        if (lyrics == null || offset < 0 || offset >= lyrics.length())
+            return null;
+
+        return lyrics.substring(offset, Math.min(lyrics.length(), offset + RESULT_MAX_LENGTH));
+    }
+
+    /**
+     * The consumer of the completed chunk results.
+     */
+    private interface ChunkConsumer {
+        /**
+         * @param chunk the completed chunk
+         * @param isBookEnd true if it is the last chunk of the hymn book
+         *
+         * @return false to stop the search
+         */
+        boolean accept(Chunk chunk, boolean isBookEnd);
+    }
+
+    /**
+     * Collect the chunk results in order up to the max count, and deliver them in one batch per hymn book.
+     */
+    private static class OrderedConsumer implements ChunkConsumer {
+        private final int mCountMax;
+        private final SearchCallback mCallback;
+
+        private List<SearchResult> mResults = new ArrayList<>();
+        int count = 0;
+
+        OrderedConsumer(int countMax, SearchCallback callback) {
+            mCountMax = countMax;
+            mCallback = callback;
+        }
+
+        @Override
+        public boolean accept(Chunk chunk, boolean isBookEnd) {
+            for (SearchResult result : chunk.results) {
+                if (count < mCountMax) {
+                    mResults.add(result);
+                    count++;
+                }
+            }
+
+            boolean isLimit = (count >= mCountMax);
+            if (isLimit || isBookEnd) {
+                mCallback.onBookResults(chunk.hymnBook, mResults);
+                mResults = new ArrayList<>();
+            }
+            return !isLimit;
+        }
+    }
+
+    /**
+     * Keep the topK scored results in a bounded min-heap; the min-heap head is the lowest score,
+     * or the later merged one for the same score.
+     */
+    private static class RankedConsumer implements ChunkConsumer {
+        private static final Comparator<Ranked> ORDER = (r1, r2) -> (r1.result.score != r2.result.score)
+                ? Float.compare(r1.result.score, r2.result.score) : Integer.compare(r2.seq, r1.seq);
+
+        private final int mTopK;
+        private final RankCursor mCursor;
+        private final PriorityQueue<Ranked> mHeap;
+
+        private int mSeq = 0;
+
+        /* Number of the results ranked after the cursor, including those not kept in the heap */
+        private int mCount = 0;
+
+        RankedConsumer(int topK, RankCursor cursor) {
+            mTopK = topK;
+            mCursor = cursor;
+            mHeap = new PriorityQueue<>(Math.min(topK, CHUNK_SIZE) + 1, ORDER);
+        }
+
+        @Override
+        public boolean accept(Chunk chunk, boolean isBookEnd) {
+            for (SearchResult result : chunk.results) {
+                Ranked ranked = new Ranked(result, mSeq++);
+                if (!mCursor.isRankedAfter(ranked))
+                    continue;
+
+                mCount++;
+                if (mHeap.size() < mTopK) {
+                    mHeap.offer(ranked);
+                }
+                else if (ORDER.compare(ranked, mHeap.peek()) > 0) {
+                    mHeap.poll();
+                    mHeap.offer(ranked);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Get the ranked results, and advance the cursor to the last result.
+         *
+         * @return the ranked results in descending score order
+         */
+        List<SearchResult> getResults() {
+            List<Ranked> rankedList = new ArrayList<>(mHeap);
+            rankedList.sort(Collections.reverseOrder(ORDER));
+
+            List<SearchResult> results = new ArrayList<>(rankedList.size());
+            for (Ranked ranked : rankedList) {
+                results.add(ranked.result);
+            }
+
+            if (!rankedList.isEmpty()) {
+                mCursor.moveTo(rankedList.get(rankedList.size() - 1));
+            }
+            mCursor.hasMore = mCount > rankedList.size();
+            return results;
+        }
+    }
+
+    /**
+     * The rank position of the last delivered ranked result, to fetch the ranked results page by page.
+     * The results are ranked in descending score order, then in their book then hymnNo order.
+     */
+    public static class RankCursor {
+        private float mScore = Float.POSITIVE_INFINITY;
+        private int mSeq = -1;
+
+        private boolean hasMore = true;
+
+        /**
+         * @return true if there are more ranked results after the cursor position
+         */
+        public boolean hasMore() {
+            return hasMore;
+        }
+
+        /**
+         * @return true if the result is ranked after the cursor position
+         */
+        private boolean isRankedAfter(Ranked ranked) {
+            return (ranked.result.score < mScore) || (ranked.result.score == mScore && ranked.seq > mSeq);
+        }
+
+        private void moveTo(Ranked ranked) {
+            mScore = ranked.result.score;
+            mSeq = ranked.seq;
+        }
+    }
+
+    /**
+     * A scored result with its merge sequence, for a stable ranking order.
+     */
+    private static class Ranked {
+        final SearchResult result;
+        final int seq;
+
+        Ranked(SearchResult result, int seq) {
+            this.result = result;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * A range of hymns in a hymn book to be searched by a worker.
+     */
+    private static class Chunk {
+        final HymnBook hymnBook;
+        final int start;
+        final int end;
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<SearchResult> results = new ArrayList<>();
+
+        Chunk(HymnBook hymnBook, int start, int end) {
+            this.hymnBook = hymnBook;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * The search job run by each worker; each worker repeatedly claims the next chunk in order until all are claimed.
+     * A chunk is always marked done, even when it is skipped on stopped or cancelled.
+     */
+    private static class SearchJob implements Runnable {
+        private final List<Chunk> mChunks;
+        private final HymnFilter mFilter;
+        private final LyricsReader mReader;
+        private final HymnMatcher mMatcher;
+        private final SearchCallback mCallback;
+
+        private final AtomicInteger mNextChunk = new AtomicInteger();
+
+        private volatile boolean isStopped = false;
+
+        SearchJob(List<Chunk> chunks, HymnFilter filter, LyricsReader reader, HymnMatcher matcher,
+                SearchCallback callback) {
+            mChunks = chunks;
+            mFilter = filter;
+            mReader = reader;
+            mMatcher = matcher;
+            mCallback = callback;
+        }
+
+        @Override
+        public void run() {
+            int idx;
+            while ((idx = mNextChunk.getAndIncrement()) < mChunks.size()) {
+                Chunk chunk = mChunks.get(idx);
+                try {
+                    if (!isStopped && !mCallback.isCancelled()) {
+                        searchChunk(chunk);
+                    }
+                } finally {
+                    chunk.done.countDown();
+                }
+            }
+        }
+
+        private void searchChunk(Chunk chunk) {
+            HymnBook hymnBook = chunk.hymnBook;
+            for (int i = chunk.start; i < chunk.end; i++) {
+                int hymnNo = hymnBook.hymnNos[i];
+                if (mFilter != null && !mFilter.accept(hymnBook.typeIdx, hymnNo))
+                    continue;
+
+                SearchResult result = mMatcher.match(hymnBook.hymnType, hymnNo, mReader.getLyrics(hymnBook.hymnType, hymnNo));
+                if (result != null) {
+                    chunk.results.add(result);
+                }
+            }
+        }
+    }
+}
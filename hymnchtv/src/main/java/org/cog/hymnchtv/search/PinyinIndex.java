@@ -0,0 +1,180 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.search;
+
+import android.content.res.AssetManager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+import org.cog.hymnchtv.HymnsApp;
+
+import timber.log.Timber;
+
+/**
+ * The pinyin index of all the hymn titles and first lyrics lines, generated at build time by the PinyinIndexBuilder.
+ * The whole index is loaded into memory on first use; each lookup is a binary search on the sorted pinyin keys,
+ * followed by a linear scan of all the keys with the same prefix, i.e. well under 10ms per lookup.
+ *
+ * The user may enter either the full pinyin e.g. "abafu", or the pinyin initials e.g. "abf"; without the tone marks,
+ * and with or without spaces.
+ *
+ * @author Eng Chong Meng
+ */
+public class PinyinIndex {
+    /* The build time generated pinyin index asset; see hymnchtv build.gradle generatePinyinIndex */
+    public static final String PINYIN_INDEX = "hymn_pinyin.idx";
+
+    private static final int MAGIC = 0x48595059;
+    private static final int VERSION = 1;
+
+    private static PinyinIndex mInstance = null;
+
+    private static boolean isLoaded = false;
+
+    /* Hymn index to the hymn key, title and first line */
+    private final int[] mHymnKeys;
+    private final String[] mTitles;
+    private final String[] mFirstLines;
+
+    /* The sorted pinyin keys and their entry values: (hymn index << 1) | (1 if first line else 0 for title) */
+    private final String[] mKeys;
+    private final int[] mValues;
+
+    private PinyinIndex(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Invalid pinyin index header");
+        }
+
+        int hymnCount = in.readInt();
+        mHymnKeys = new int[hymnCount];
+        mTitles = new String[hymnCount];
+        mFirstLines = new String[hymnCount];
+        for (int i = 0; i < hymnCount; i++) {
+            mHymnKeys[i] = in.readInt();
+            mTitles[i] = in.readUTF();
+            mFirstLines[i] = in.readUTF();
+        }
+
+        int entryCount = in.readInt();
+        mKeys = new String[entryCount];
+        mValues = new int[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            // Share the same String instance for the repeated keys
+            String key = in.readUTF();
+            mKeys[i] = (i > 0 && key.equals(mKeys[i - 1])) ? mKeys[i - 1] : key;
+            mValues[i] = in.readInt();
+        }
+    }
+
+    /**
+     * Get the pinyin index instance, loaded on first call.
+     *
+     * @return the PinyinIndex or null if the index asset is not available
+     */
+    public static synchronized PinyinIndex getInstance() {
+        if (!isLoaded) {
+            isLoaded = true;
+            AssetManager assets = HymnsApp.getGlobalContext().getAssets();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(assets.open(PINYIN_INDEX)))) {
+                mInstance = new PinyinIndex(in);
+            } catch (IOException e) {
+                Timber.w("Pinyin index not available: %s", e.getMessage());
+            }
+        }
+        return mInstance;
+    }
+
+    /**
+     * Check if the search string is a pinyin query i.e. contains only latin letters and spaces.
+     *
+     * @param sString the search string
+     *
+     * @return true if the search string should be looked up in the pinyin index
+     */
+    public static boolean isPinyin(String sString) {
+        return sString != null && sString.matches("^[a-zA-Z\\s]*[a-zA-Z][a-zA-Z\\s]*$");
+    }
+
+    /**
+     * Find all the hymns with their title or first line pinyin starting with the given pinyin.
+     * The title matches are returned before the first line matches; each hymn is returned once only.
+     *
+     * @param pinyin the pinyin search string, either the full pinyin or the initials
+     * @param countMax the maximum number of results to return
+     *
+     * @return the matched results, with the title or the first line as the matched text
+     */
+    public List<SearchResult> lookup(String pinyin, int countMax) {
+        String prefix = pinyin.replaceAll("\\s", "").toLowerCase(Locale.US);
+        List<SearchResult> titleResults = new ArrayList<>();
+        List<SearchResult> lineResults = new ArrayList<>();
+        if (prefix.isEmpty())
+            return titleResults;
+
+        BitSet found = new BitSet(mHymnKeys.length);
+        for (int i = lowerBound(prefix); i < mKeys.length && mKeys[i].startsWith(prefix); i++) {
+            int hymnIdx = mValues[i] >>> 1;
+            boolean isFirstLine = (mValues[i] & 1) != 0;
+            if (!isFirstLine && !found.get(hymnIdx)) {
+                found.set(hymnIdx);
+                titleResults.add(createResult(hymnIdx, mTitles[hymnIdx]));
+            }
+        }
+
+        for (int i = lowerBound(prefix); i < mKeys.length && mKeys[i].startsWith(prefix); i++) {
+            int hymnIdx = mValues[i] >>> 1;
+            if (!found.get(hymnIdx)) {
+                found.set(hymnIdx);
+                lineResults.add(createResult(hymnIdx, mFirstLines[hymnIdx]));
+            }
+        }
+
+        titleResults.addAll(lineResults);
+        return (titleResults.size() > countMax) ? titleResults.subList(0, countMax) : titleResults;
+    }
+
+    private SearchResult createResult(int hymnIdx, String matchText) {
+        int hymnKey = mHymnKeys[hymnIdx];
+        return new SearchResult(LyricsIndex.HYMN_TYPES[hymnKey >>> 12], hymnKey & 0xFFF, matchText);
+    }
+
+    /**
+     * Binary search for the first key that is not less than the given prefix.
+     *
+     * @param prefix the pinyin prefix
+     *
+     * @return the index of the first key >= prefix; or mKeys.length if none
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = mKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mKeys[mid].compareTo(prefix) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
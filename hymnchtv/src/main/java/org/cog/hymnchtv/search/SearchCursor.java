@@ -0,0 +1,108 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.search;
+
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The cursor of all the search matched results, kept as compact (hymnType, hymnNo, matchOffset) records.
+ * The records are stored in fixed size int pages, so the cursor grows without copying as the results are received;
+ * the matched text for display is not kept, but is derived on demand for the rows being shown only.
+ *
+ * Only the results with the matched text given directly e.g. pinyin search results have their text kept.
+ *
+ * @author Eng Chong Meng
+ */
+public class SearchCursor {
+    private static final int PAGE_SIZE = 256;
+
+    /* Each record is the hymn key: (hymnType index << 12) | hymnNo; and the matched line offset */
+    private final List<int[]> mKeyPages = new ArrayList<>();
+    private final List<int[]> mOffsetPages = new ArrayList<>();
+
+    /* The given matched text of the records by position, if any */
+    private final SparseArray<String> mMatchTexts = new SparseArray<>();
+
+    private int mCount = 0;
+
+    /**
+     * Append the search results to the cursor.
+     *
+     * @param results the search results
+     */
+    public void addAll(List<SearchResult> results) {
+        for (SearchResult result : results) {
+            add(result);
+        }
+    }
+
+    public void add(SearchResult result) {
+        int page = mCount / PAGE_SIZE;
+        int idx = mCount % PAGE_SIZE;
+        if (idx == 0) {
+            mKeyPages.add(new int[PAGE_SIZE]);
+            mOffsetPages.add(new int[PAGE_SIZE]);
+        }
+
+        mKeyPages.get(page)[idx] = LyricsIndex.getHymnKey(LyricsIndex.getTypeIndex(result.hymnType), result.hymnNo);
+        mOffsetPages.get(page)[idx] = result.matchOffset;
+        if (result.matchText != null) {
+            mMatchTexts.put(mCount, result.matchText);
+        }
+        mCount++;
+    }
+
+    public void clear() {
+        mKeyPages.clear();
+        mOffsetPages.clear();
+        mMatchTexts.clear();
+        mCount = 0;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public String getHymnType(int position) {
+        return LyricsIndex.HYMN_TYPES[getHymnKey(position) >>> 12];
+    }
+
+    public int getHymnNo(int position) {
+        return getHymnKey(position) & 0xFFF;
+    }
+
+    /**
+     * @return the start offset of the matched line in the lyrics text; -1 if the matched text is given
+     */
+    public int getMatchOffset(int position) {
+        return mOffsetPages.get(position / PAGE_SIZE)[position % PAGE_SIZE];
+    }
+
+    /**
+     * @return the given matched text; null if it must be derived from the lyrics text with the match offset
+     */
+    public String getMatchText(int position) {
+        return mMatchTexts.get(position);
+    }
+
+    private int getHymnKey(int position) {
+        return mKeyPages.get(position / PAGE_SIZE)[position % PAGE_SIZE];
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.search;
+
+/**
+ * The lyrics content search matched result of a hymn.
+ * The matched text for display is either given directly e.g. pinyin search of the hymn title, or is derived from
+ * the lyrics text on demand with the matchOffset; so a search need not keep the text of all its results.
+ *
+ * @author Eng Chong Meng
+ */
+public class SearchResult {
+    public final String hymnType;
+    public final int hymnNo;
+    /* The matched text for display; null to derive from the lyrics text at matchOffset */
+    public final String matchText;
+    /* The start of the matched line in the lyrics text; -1 if matchText is given */
+    public final int matchOffset;
+    /* The relevance score in ranked search; 0 for the normal search */
+    public final float score;
+
+    public SearchResult(String hymnType, int hymnNo, String matchText) {
+        this.hymnType = hymnType;
+        this.hymnNo = hymnNo;
+        this.matchText = matchText;
+        this.matchOffset = -1;
+        this.score = 0;
+    }
+
+    public SearchResult(String hymnType, int hymnNo, int matchOffset, float score) {
+        this.hymnType = hymnType;
+        this.hymnNo = hymnNo;
+        this.matchText = null;
+        this.matchOffset = matchOffset;
+        this.score = score;
+    }
+}
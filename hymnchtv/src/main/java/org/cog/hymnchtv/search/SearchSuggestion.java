@@ -0,0 +1,286 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.search;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The search-as-you-type suggestions for the main search field.
+ *
+ * All the lyrics lines matching a query are kept in a LRU cache, keyed by the folded query. When the new query
+ * extends a cached query e.g. user types another character, the new matched lines must be a subset of the cached
+ * lines; so the suggestions are obtained by filtering the cached lines in memory without any lyrics asset access.
+ * Only a query without any usable cached prefix is looked up via the LyricsIndex in the background thread,
+ * after the user has stopped typing for DEBOUNCE_DELAY. The pinyin lookup, and the first use loading of the
+ * CharFold and PinyinIndex are also done in the background thread.
+ *
+ * All the public methods and the listener callback are on the UI thread.
+ *
+ * @author Eng Chong Meng
+ */
+public class SearchSuggestion {
+    /* Wait for the user to pause typing before starting the lyrics index lookup */
+    private static final long DEBOUNCE_DELAY = 300;
+
+    /* Number of recent queries matched lines to keep in the cache */
+    private static final int CACHE_SIZE = 32;
+
+    /* Max number of matched lines kept for a query; the query cannot be used for narrowing if exceeded */
+    private static final int LINES_MAX = 2000;
+
+    /* Max number of suggestions for display */
+    public static final int SUGGESTION_MAX = 20;
+
+    private static final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final LruCache<String, QueryLines> mCache = new LruCache<>(CACHE_SIZE);
+
+    private final SuggestionListener mListener;
+
+    /* The current user query text; the suggestions for any other query are ignored */
+    private String mQuery = "";
+
+    /* The debounced lookup pending to start */
+    private Runnable mPendingLookup = null;
+
+    /**
+     * The suggestions listener; called on the UI thread.
+     */
+    public interface SuggestionListener {
+        /**
+         * @param query the query text as given in query()
+         * @param suggestions the matched hymns in book order with the matched line; empty if none
+         */
+        void onSuggestions(String query, List<SearchResult> suggestions);
+    }
+
+    /**
+     * A matched lyrics line.
+     */
+    private static class MatchedLine {
+        final String hymnType;
+        final int hymnNo;
+        final String line;
+        /* The line in CharFold form for matching */
+        final String folded;
+
+        MatchedLine(String hymnType, int hymnNo, String line, String folded) {
+            this.hymnType = hymnType;
+            this.hymnNo = hymnNo;
+            this.line = line;
+            this.folded = folded;
+        }
+    }
+
+    /**
+     * All the matched lyrics lines of a query, in book then hymnNo order.
+     */
+    private static class QueryLines {
+        final List<MatchedLine> lines;
+        /* false if the lines were truncated at LINES_MAX */
+        final boolean isComplete;
+
+        QueryLines(List<MatchedLine> lines, boolean isComplete) {
+            this.lines = lines;
+            this.isComplete = isComplete;
+        }
+    }
+
+    public SearchSuggestion(SuggestionListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Update the suggestions for the user entered query text. The suggestions are returned immediately if they
+     * can be derived from the cache; else after the debounced background lookup.
+     *
+     * @param text the user entered query text
+     */
+    public void query(String text) {
+        cancel();
+        mQuery = text;
+
+        String sString = text.trim();
+        if (sString.isEmpty()) {
+            mListener.onSuggestions(text, Collections.emptyList());
+            return;
+        }
+
+        if (PinyinIndex.isPinyin(sString)) {
+            mExecutor.execute(() -> {
+                PinyinIndex pinyinIndex = PinyinIndex.getInstance();
+                List<SearchResult> suggestions = (pinyinIndex == null) ? Collections.emptyList()
+                        : pinyinIndex.lookup(sString, SUGGESTION_MAX);
+                postIfCurrent(text, () -> mListener.onSuggestions(text, suggestions));
+            });
+            return;
+        }
+
+        // Load the char fold table on first use, then repeat the query
+        CharFold charFold = CharFold.getLoadedInstance();
+        if (charFold == null) {
+            mExecutor.execute(() -> {
+                CharFold.getInstance();
+                postIfCurrent(text, () -> query(text));
+            });
+            return;
+        }
+
+        String folded = charFold.fold(sString);
+        QueryLines queryLines = getCachedLines(folded);
+        if (queryLines != null) {
+            mListener.onSuggestions(text, getSuggestions(queryLines));
+            return;
+        }
+
+        mPendingLookup = () -> {
+            mPendingLookup = null;
+            mExecutor.execute(() -> {
+                QueryLines result = lookup(folded);
+                mHandler.post(() -> {
+                    mCache.put(folded, result);
+                    if (text.equals(mQuery))
+                        mListener.onSuggestions(text, getSuggestions(result));
+                });
+            });
+        };
+        mHandler.postDelayed(mPendingLookup, DEBOUNCE_DELAY);
+    }
+
+    /**
+     * Run the action on the UI thread only if the query text is still the current user query.
+     *
+     * @param text the query text
+     * @param action the action to run
+     */
+    private void postIfCurrent(String text, Runnable action) {
+        mHandler.post(() -> {
+            if (text.equals(mQuery))
+                action.run();
+        });
+    }
+
+    /**
+     * Cancel the pending lookup; and ignore the lookup result in progress if any.
+     */
+    public void cancel() {
+        mQuery = "";
+        if (mPendingLookup != null) {
+            mHandler.removeCallbacks(mPendingLookup);
+            mPendingLookup = null;
+        }
+    }
+
+    /**
+     * Get the matched lines of the query from the cache; or by narrowing down the matched lines of the
+     * longest cached query prefix.
+     *
+     * @param folded the folded query
+     *
+     * @return the query matched lines; or null if not derivable from the cache
+     */
+    private QueryLines getCachedLines(String folded) {
+        QueryLines queryLines = mCache.get(folded);
+        if (queryLines != null)
+            return queryLines;
+
+        for (int len = folded.length() - 1; len > 0; len--) {
+            QueryLines prefixLines = mCache.get(folded.substring(0, len));
+            if (prefixLines != null && prefixLines.isComplete) {
+                List<MatchedLine> lines = new ArrayList<>();
+                for (MatchedLine matchedLine : prefixLines.lines) {
+                    if (matchedLine.folded.contains(folded))
+                        lines.add(matchedLine);
+                }
+                queryLines = new QueryLines(lines, true);
+                mCache.put(folded, queryLines);
+                return queryLines;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find all the lyrics lines matching the folded query via the LyricsIndex candidate lines.
+     *
+     * @param folded the folded query
+     *
+     * @return the query matched lines
+     */
+    private static QueryLines lookup(String folded) {
+        List<MatchedLine> lines = new ArrayList<>();
+        LyricsIndex lyricsIndex = LyricsIndex.getInstance();
+        if (lyricsIndex == null)
+            return new QueryLines(lines, false);
+
+        CharFold charFold = CharFold.getInstance();
+        int hymnKey = -1;
+        String[] lyricsLines = null;
+
+        for (int posting : lyricsIndex.getCandidates(folded)) {
+            if (lines.size() == LINES_MAX)
+                return new QueryLines(lines, false);
+
+            String hymnType = LyricsIndex.HYMN_TYPES[LyricsIndex.getTypeIndex(posting)];
+            int hymnNo = LyricsIndex.getHymnNo(posting);
+
+            // The postings are sorted, so each hymn lyrics is read once only
+            if (LyricsIndex.getHymnKey(posting) != hymnKey) {
+                hymnKey = LyricsIndex.getHymnKey(posting);
+                String lyrics = LyricsPack.getLyrics(hymnType, hymnNo);
+                lyricsLines = (lyrics == null) ? new String[0] : lyrics.split("\r?\n");
+            }
+
+            int ln = LyricsIndex.getLine(posting);
+            if (ln < lyricsLines.length) {
+                String line = lyricsLines[ln];
+                String foldedLine = charFold.fold(line);
+                if (foldedLine.contains(folded)) {
+                    lines.add(new MatchedLine(hymnType, hymnNo, line, foldedLine));
+                }
+            }
+        }
+        return new QueryLines(lines, true);
+    }
+
+    /**
+     * Get the suggestions from the matched lines, with only the first matched line of each hymn.
+     */
+    private static List<SearchResult> getSuggestions(QueryLines queryLines) {
+        List<SearchResult> suggestions = new ArrayList<>();
+        MatchedLine last = null;
+        for (MatchedLine matchedLine : queryLines.lines) {
+            if (last == null || last.hymnNo != matchedLine.hymnNo || !last.hymnType.equals(matchedLine.hymnType)) {
+                suggestions.add(new SearchResult(matchedLine.hymnType, matchedLine.hymnNo, matchedLine.line));
+                if (suggestions.size() == SUGGESTION_MAX)
+                    break;
+            }
+            last = matchedLine;
+        }
+        return suggestions;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.service.download;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The byte range [start, end] of the file downloaded in one connection of a DownloadJob; end is -1 if the file
+ * size is unknown. The chunks progress is saved in the download state as "start:end:position,..." for resume.
+ *
+ * The class has no android dependency, so it can be unit tested on the build host; see the benchmark module.
+ *
+ * @author Eng Chong Meng
+ */
+class DownloadChunk {
+    /* The minimum chunk size of the multi-connection download; smaller file is downloaded in one connection */
+    static final long CHUNK_MIN_SIZE = 2 * 1024 * 1024;
+
+    /* The maximum number of chunks i.e. connections of each download job */
+    static final int MAX_CHUNKS = 4;
+
+    final long start;
+    volatile long end;
+    volatile long position;
+
+    DownloadChunk(long start, long end, long position) {
+        this.start = start;
+        this.end = end;
+        this.position = position;
+    }
+
+    boolean isComplete() {
+        return end >= 0 && position > end;
+    }
+
+    /**
+     * Split the file into the download chunks; the file is downloaded in one connection if the server has no
+     * http range support, or the file is smaller than 2 x CHUNK_MIN_SIZE.
+     *
+     * @param totalBytes the file size; -1 if unknown
+     * @param isRanged true if the server supports http range request
+     *
+     * @return the download chunks covering the whole file, in the file order
+     */
+    static List<DownloadChunk> split(long totalBytes, boolean isRanged) {
+        List<DownloadChunk> chunks = new ArrayList<>();
+        if (!isRanged) {
+            chunks.add(new DownloadChunk(0, (totalBytes > 0) ? totalBytes - 1 : -1, 0));
+        }
+        else {
+            int count = (int) Math.max(1, Math.min(MAX_CHUNKS, totalBytes / CHUNK_MIN_SIZE));
+            long chunkSize = totalBytes / count;
+            for (int i = 0; i < count; i++) {
+                long start = i * chunkSize;
+                long end = (i == count - 1) ? totalBytes - 1 : start + chunkSize - 1;
+                chunks.add(new DownloadChunk(start, end, start));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * @param chunks the download chunks
+     *
+     * @return the total number of bytes downloaded in all the chunks
+     */
+    static long getDownloadedBytes(List<DownloadChunk> chunks) {
+        long downloaded = 0;
+        for (DownloadChunk chunk : chunks) {
+            downloaded += chunk.position - chunk.start;
+        }
+        return downloaded;
+    }
+
+    /**
+     * @param chunks the download chunks
+     *
+     * @return the chunks progress for the download state save
+     */
+    static String format(List<DownloadChunk> chunks) {
+        StringBuilder ranges = new StringBuilder();
+        for (DownloadChunk chunk : chunks) {
+            if (ranges.length() > 0)
+                ranges.append(',');
+            ranges.append(chunk.start).append(':').append(chunk.end).append(':').append(chunk.position);
+        }
+        return ranges.toString();
+    }
+
+    /**
+     * @param ranges the chunks progress as saved by format()
+     *
+     * @return the download chunks
+     * @throws IllegalArgumentException if the saved chunks progress is invalid
+     */
+    static List<DownloadChunk> parse(String ranges) {
+        List<DownloadChunk> chunks = new ArrayList<>();
+        for (String range : ranges.split(",")) {
+            String[] values = range.split(":");
+            if (values.length != 3)
+                throw new IllegalArgumentException("Invalid chunk: " + range);
+
+            DownloadChunk chunk = new DownloadChunk(Long.parseLong(values[0]), Long.parseLong(values[1]),
+                    Long.parseLong(values[2]));
+            if (chunk.position < chunk.start || (chunk.end >= 0 && chunk.position > chunk.end + 1))
+                throw new IllegalArgumentException("Invalid chunk position: " + range);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
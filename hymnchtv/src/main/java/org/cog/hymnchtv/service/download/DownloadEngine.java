@@ -0,0 +1,171 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.service.download;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * The in-app media file download engine, based on OkHttp. Each download job is resumable across failures and
+ * app restarts via the http range request; a large file is downloaded in multiple chunks in parallel.
+ * The number of the active download jobs, and the total number of connections of all the jobs are bounded.
+ *
+ * Each failed connection is retried with exponential backoff, resuming from its last received byte;
+ * and the downloaded file can be verified against the expected sha-256 digest before its completion.
+ *
+ * @author Eng Chong Meng
+ */
+public class DownloadEngine {
+    /* The minimum interval between the progress events of each job */
+    public static final long PROGRESS_INTERVAL = 500; // ms
+
+    /* The default maximum number of the concurrent download jobs; each job may use multiple connections */
+    private static final int MAX_JOBS = 2;
+
+    /* The default maximum number of the concurrent connections of all the download jobs */
+    private static final int MAX_CONNECTIONS = 4;
+
+    /* The stalled connection is dropped and retried after the read timeout */
+    private static final int CONNECT_TIMEOUT = 15; // seconds
+    private static final int READ_TIMEOUT = 30; // seconds
+
+    private static DownloadEngine mInstance = null;
+
+    private final OkHttpClient mHttpClient;
+    private final ThreadPoolExecutor mJobExecutor;
+    private final ThreadPoolExecutor mConnectionExecutor;
+
+    /* The queued or active download jobs, keyed by the destFile */
+    private final Map<File, DownloadJob> mDownloadJobs = new HashMap<>();
+
+    private DownloadEngine() {
+        mHttpClient = new OkHttpClient.Builder()
+                .connectTimeout(CONNECT_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT, TimeUnit.SECONDS)
+                .build();
+
+        mJobExecutor = newExecutor(MAX_JOBS, "DownloadJob");
+        mConnectionExecutor = newExecutor(MAX_CONNECTIONS, "DownloadConnection");
+    }
+
+    public static synchronized DownloadEngine getInstance() {
+        if (mInstance == null) {
+            mInstance = new DownloadEngine();
+        }
+        return mInstance;
+    }
+
+    private static ThreadPoolExecutor newExecutor(int size, String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Queue the given download request; the download is started when there is a free job slot.
+     *
+     * @param request the download request
+     * @param listener the download job events listener
+     *
+     * @return the download job, or the existing job of the same destFile if it is not cancelled
+     */
+    public synchronized DownloadJob enqueue(DownloadRequest request, DownloadListener listener) {
+        DownloadJob job = mDownloadJobs.get(request.getDestFile());
+        // A cancelled job is kept until its run has ended; it is replaced by the new job, which waits for it to end
+        if (job == null || job.isCancelled()) {
+            job = new DownloadJob(this, request, listener, job);
+            mDownloadJobs.put(request.getDestFile(), job);
+            mJobExecutor.execute(job);
+        }
+        return job;
+    }
+
+    /**
+     * Get the queued or active download job of the given destFile.
+     *
+     * @param destFile the download destination file
+     *
+     * @return the download job or null if none, or if it has been cancelled
+     */
+    public synchronized DownloadJob getJob(File destFile) {
+        DownloadJob job = mDownloadJobs.get(destFile);
+        return (job == null || job.isCancelled()) ? null : job;
+    }
+
+    /**
+     * Set the maximum number of the concurrent download jobs.
+     *
+     * @param maxJobs the maximum number of the active jobs
+     */
+    public void setMaxJobs(int maxJobs) {
+        setPoolSize(mJobExecutor, maxJobs);
+    }
+
+    /**
+     * Set the maximum number of the concurrent connections of all the download jobs.
+     *
+     * @param maxConnections the maximum number of connections
+     */
+    public void setMaxConnections(int maxConnections) {
+        setPoolSize(mConnectionExecutor, maxConnections);
+    }
+
+    private static synchronized void setPoolSize(ThreadPoolExecutor executor, int size) {
+        size = Math.max(1, size);
+        // The core pool size must never be above the maximum pool size
+        if (size > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        }
+        else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    OkHttpClient getHttpClient() {
+        return mHttpClient;
+    }
+
+    /**
+     * Run the given connection task of a download job within the global connections limit.
+     */
+    <T> Future<T> submitConnection(Callable<T> task) {
+        return mConnectionExecutor.submit(task);
+    }
+
+    synchronized void onJobEnded(DownloadJob job) {
+        // The ended job may have been replaced by a new job of the same destFile
+        File destFile = job.getRequest().getDestFile();
+        if (mDownloadJobs.get(destFile) == job) {
+            mDownloadJobs.remove(destFile);
+        }
+    }
+}
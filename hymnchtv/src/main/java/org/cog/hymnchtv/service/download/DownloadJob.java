@@ -0,0 +1,554 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.service.download;
+
+import android.os.SystemClock;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import org.cog.hymnchtv.persistance.FileBackend;
+import org.cog.hymnchtv.persistance.MediaFileCatalog;
+
+import timber.log.Timber;
+
+/**
+ * A download job of the DownloadEngine. The file is downloaded into a part file in the hymnchtv tmp dir, with its
+ * download state i.e. the file size, validator and the chunks progress saved periodically in the meta file;
+ * so an interrupted download is resumed from the last saved state, even after the app restart.
+ * The part file is moved to the request destFile only on the successful download and verification.
+ *
+ * @author Eng Chong Meng
+ */
+public class DownloadJob implements Runnable {
+    /* The connection retry attempts, with exponential backoff from INITIAL_BACKOFF up to MAX_BACKOFF */
+    private static final int MAX_RETRIES = 6;
+    private static final long INITIAL_BACKOFF = 1000; // ms
+    private static final long MAX_BACKOFF = 30000; // ms
+
+    /* The interval between each download state save */
+    private static final long STATE_SAVE_INTERVAL = 2000; // ms
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final DownloadEngine mEngine;
+    private final DownloadRequest mRequest;
+    private final DownloadListener mListener;
+
+    private File mPartFile;
+    private File mStateFile;
+
+    /* The download state; the chunks are set up by the probe request or loaded from the state file */
+    private long mTotalBytes = -1;
+    private String mValidator = null;
+    private boolean mIsRanged = false;
+    private final List<DownloadChunk> mChunks = new ArrayList<>();
+
+    private final AtomicLong mDownloadedBytes = new AtomicLong(0);
+    private final AtomicLong mLastProgressTime = new AtomicLong(0);
+    private long mLastSaveTime = 0;
+
+    /* The in progress http calls, for cancellation */
+    private final Set<Call> mCalls = new HashSet<>();
+
+    private volatile boolean isCancelled = false;
+
+    /* Set to stop all the other chunks on a chunk download failure */
+    private volatile boolean isAborted = false;
+
+    /* The cancelled job of the same destFile it replaces; it must have ended before this job uses the part file */
+    private final DownloadJob mPreviousJob;
+
+    /* Released when the job run has ended, and the part file is no longer in use */
+    private final CountDownLatch mEnded = new CountDownLatch(1);
+
+    DownloadJob(DownloadEngine engine, DownloadRequest request, DownloadListener listener, DownloadJob previousJob) {
+        mEngine = engine;
+        mRequest = request;
+        mListener = listener;
+        mPreviousJob = previousJob;
+    }
+
+    public DownloadRequest getRequest() {
+        return mRequest;
+    }
+
+    public long getDownloadedBytes() {
+        return mDownloadedBytes.get();
+    }
+
+    /**
+     * @return the file size, or -1 if it is not known yet
+     */
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * Cancel the download; the partial download is kept, so the same download can be resumed later.
+     */
+    public void cancel() {
+        isCancelled = true;
+        cancelCalls();
+    }
+
+    private boolean isStopped() {
+        return isCancelled || isAborted;
+    }
+
+    @Override
+    public void run() {
+        String reason = null;
+        try {
+            if (mPreviousJob != null) {
+                mPreviousJob.awaitEnded();
+            }
+
+            File tmpDir = FileBackend.getHymnchtvStore(FileBackend.TMP, true);
+            if (tmpDir == null)
+                throw new IOException("No storage access permission");
+
+            File destFile = mRequest.getDestFile();
+            String partName = String.format(Locale.US, "%s.%08x.part", destFile.getName(), destFile.getAbsolutePath().hashCode());
+            mPartFile = new File(tmpDir, partName);
+            mStateFile = new File(tmpDir, partName + ".state");
+
+            // Restart the download once from scratch if the online file has changed since the partial download
+            for (boolean isRestart = false; ; isRestart = true) {
+                // The abort flag of the failed chunks is only for the previous pass; all its chunks have ended
+                isAborted = false;
+                try {
+                    if (isRestart || !loadState()) {
+                        deleteState();
+                        retry(this::probe);
+                    }
+                    downloadChunks();
+                    break;
+                } catch (ResourceChangedException e) {
+                    if (isRestart)
+                        throw e;
+                    Timber.w("Download file changed, restart download: %s", mRequest.getUrl());
+                }
+            }
+            complete();
+        } catch (IOException e) {
+            reason = isCancelled ? "Download cancelled" : e.getMessage();
+            if (mStateFile != null && mPartFile.exists()) {
+                saveState();
+            }
+            Timber.w("Download failed (%s/%s): %s; %s", mDownloadedBytes.get(), mTotalBytes, mRequest.getUrl(), reason);
+        } finally {
+            mEngine.onJobEnded(this);
+            mEnded.countDown();
+        }
+
+        if (reason == null) {
+            mListener.onProgress(this, mDownloadedBytes.get(), mTotalBytes);
+            mListener.onCompleted(this);
+        }
+        else {
+            mListener.onFailed(this, reason);
+        }
+    }
+
+    /**
+     * Wait for the job run to end, including its final state save.
+     */
+    private void awaitEnded() throws InterruptedIOException {
+        try {
+            mEnded.await();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Download interrupted");
+        }
+    }
+
+    /**
+     * Probe the online file size, validator and http range support with a single byte range request.
+     */
+    private void probe() throws IOException {
+        Request request = new Request.Builder().url(mRequest.getUrl()).header("Range", "bytes=0-0").build();
+        Call call = newCall(request);
+        try (Response response = call.execute()) {
+            checkStatus(response);
+
+            // Weak ETag cannot be used in the If-Range validation
+            mValidator = response.header("ETag");
+            if (mValidator == null || mValidator.startsWith("W/")) {
+                mValidator = response.header("Last-Modified");
+            }
+
+            mTotalBytes = -1;
+            mIsRanged = false;
+            if (response.code() == 206) {
+                // Content-Range: bytes 0-0/12345
+                String contentRange = response.header("Content-Range");
+                int idx = (contentRange == null) ? -1 : contentRange.lastIndexOf('/');
+                if (idx != -1) {
+                    try {
+                        mTotalBytes = Long.parseLong(contentRange.substring(idx + 1).trim());
+                        mIsRanged = true;
+                    } catch (NumberFormatException e) {
+                        Timber.w("Unknown content range: %s", contentRange);
+                    }
+                }
+            }
+            else {
+                mTotalBytes = response.body().contentLength();
+            }
+        } finally {
+            removeCall(call);
+        }
+
+        mChunks.clear();
+        mChunks.addAll(DownloadChunk.split(mTotalBytes, mIsRanged));
+        mDownloadedBytes.set(0);
+        Timber.d("Download file size: %s; ranged: %s; chunks: %s; %s", mTotalBytes, mIsRanged, mChunks.size(), mRequest.getUrl());
+    }
+
+    /**
+     * Download all the incomplete chunks in parallel, each within the global connections limit.
+     */
+    private void downloadChunks() throws IOException {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (DownloadChunk chunk : mChunks) {
+            if (!chunk.isComplete()) {
+                futures.add(mEngine.submitConnection(() -> {
+                    retry(() -> downloadChunk(chunk));
+                    return null;
+                }));
+            }
+        }
+
+        IOException exception = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                // Stop all the other chunks on the first failure
+                if (exception == null) {
+                    exception = (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+                    isAborted = true;
+                    cancelCalls();
+                }
+            } catch (InterruptedException e) {
+                isAborted = true;
+                cancelCalls();
+                throw new InterruptedIOException("Download interrupted");
+            }
+        }
+        if (exception != null)
+            throw exception;
+    }
+
+    private void downloadChunk(DownloadChunk chunk) throws IOException {
+        if (chunk.isComplete())
+            return;
+
+        Request.Builder builder = new Request.Builder().url(mRequest.getUrl());
+        if (mIsRanged) {
+            builder.header("Range", "bytes=" + chunk.position + "-" + chunk.end);
+            if (mValidator != null)
+                builder.header("If-Range", mValidator);
+        }
+        else if (chunk.position > 0) {
+            // No resume without http range support; restart the download from the beginning
+            mDownloadedBytes.addAndGet(-chunk.position);
+            chunk.position = 0;
+        }
+
+        Call call = newCall(builder.build());
+        try (Response response = call.execute()) {
+            checkStatus(response);
+            // The full content is returned if the file has changed i.e. If-Range validation failed
+            if (mIsRanged && response.code() != 206)
+                throw new ResourceChangedException();
+
+            try (InputStream in = response.body().byteStream();
+                 RandomAccessFile out = new RandomAccessFile(mPartFile, "rw")) {
+                if (!mIsRanged)
+                    out.setLength(0);
+                out.seek(chunk.position);
+
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (!isStopped()) {
+                    int len = buffer.length;
+                    if (chunk.end >= 0) {
+                        long remain = chunk.end - chunk.position + 1;
+                        if (remain <= 0)
+                            break;
+                        len = (int) Math.min(len, remain);
+                    }
+
+                    int count = in.read(buffer, 0, len);
+                    if (count == -1)
+                        break;
+
+                    out.write(buffer, 0, count);
+                    chunk.position += count;
+                    onBytesReceived(count);
+                }
+            }
+        } finally {
+            removeCall(call);
+        }
+
+        if (isStopped())
+            throw new InterruptedIOException("Download stopped");
+
+        if (chunk.end < 0) {
+            // The content of unknown length is complete on the end of stream
+            chunk.end = chunk.position - 1;
+            mTotalBytes = chunk.position;
+        }
+        else if (chunk.position <= chunk.end) {
+            throw new EOFException("Incomplete download: " + chunk.position + "/" + chunk.end);
+        }
+    }
+
+    /**
+     * Verify and move the completed part file to the destFile.
+     */
+    private void complete() throws IOException {
+        long size = mPartFile.length();
+        if (size < mRequest.getMinSize()) {
+            deleteState();
+            throw new IOException("Invalid file size: " + size);
+        }
+
+        String sha256 = mRequest.getSha256();
+        if (sha256 != null && !sha256.equalsIgnoreCase(getSha256(mPartFile))) {
+            deleteState();
+            throw new IOException("File checksum mismatch");
+        }
+
+        File destFile = mRequest.getDestFile();
+        if ((destFile.exists() && !destFile.delete()) || !mPartFile.renameTo(destFile)) {
+            throw new IOException("Failed to move file to: " + destFile.getAbsolutePath());
+        }
+        mStateFile.delete();
+        MediaFileCatalog.onFileAdded(destFile);
+        Timber.d("Downloaded file: %s (%s)", destFile.getName(), size);
+    }
+
+    /**
+     * Run the given connection task, retried with exponential backoff on the recoverable failure.
+     */
+    private void retry(IoTask task) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                task.run();
+                return;
+            } catch (IOException e) {
+                if (isStopped() || attempt > MAX_RETRIES || !isRecoverable(e))
+                    throw e;
+
+                // Backoff with random jitter, so the parallel chunks do not retry in sync
+                long backoff = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << (attempt - 1));
+                backoff += ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                Timber.w("Download retry #%s in %s ms: %s", attempt, backoff, e.getMessage());
+                saveState();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Download interrupted");
+                }
+            }
+        }
+    }
+
+    private static boolean isRecoverable(IOException e) {
+        if (e instanceof ResourceChangedException)
+            return false;
+
+        if (e instanceof HttpStatusException) {
+            // Only the server error, request timeout and too many requests are recoverable
+            int code = ((HttpStatusException) e).code;
+            return code >= 500 || code == 408 || code == 429;
+        }
+        return true;
+    }
+
+    private static void checkStatus(Response response) throws HttpStatusException {
+        if (!response.isSuccessful()) {
+            throw new HttpStatusException(response.code());
+        }
+    }
+
+    private void onBytesReceived(int count) {
+        long downloaded = mDownloadedBytes.addAndGet(count);
+        long now = SystemClock.elapsedRealtime();
+        long lastTime = mLastProgressTime.get();
+        if (now - lastTime >= DownloadEngine.PROGRESS_INTERVAL && mLastProgressTime.compareAndSet(lastTime, now)) {
+            mListener.onProgress(this, downloaded, mTotalBytes);
+            if (now - mLastSaveTime >= STATE_SAVE_INTERVAL) {
+                saveState();
+            }
+        }
+    }
+
+    private Call newCall(Request request) throws IOException {
+        Call call = mEngine.getHttpClient().newCall(request);
+        synchronized (mCalls) {
+            if (isStopped())
+                throw new InterruptedIOException("Download stopped");
+            mCalls.add(call);
+        }
+        return call;
+    }
+
+    private void removeCall(Call call) {
+        synchronized (mCalls) {
+            mCalls.remove(call);
+        }
+    }
+
+    private void cancelCalls() {
+        synchronized (mCalls) {
+            for (Call call : mCalls) {
+                call.cancel();
+            }
+        }
+    }
+
+    /**
+     * Load the saved download state of the same url if its part file exists.
+     *
+     * @return true if the download state is loaded
+     */
+    private synchronized boolean loadState() {
+        if (!mPartFile.exists() || !mStateFile.exists())
+            return false;
+
+        Properties state = new Properties();
+        try (InputStream in = new FileInputStream(mStateFile)) {
+            state.load(in);
+            if (!mRequest.getUrl().equals(state.getProperty("url")))
+                return false;
+
+            mTotalBytes = Long.parseLong(state.getProperty("total"));
+            mValidator = state.getProperty("validator");
+            mIsRanged = Boolean.parseBoolean(state.getProperty("ranged"));
+
+            mChunks.clear();
+            mChunks.addAll(DownloadChunk.parse(state.getProperty("chunks")));
+            mDownloadedBytes.set(DownloadChunk.getDownloadedBytes(mChunks));
+        } catch (IOException | RuntimeException e) {
+            Timber.w("Invalid download state: %s", e.getMessage());
+            return false;
+        }
+        Timber.d("Resume download (%s/%s): %s", mDownloadedBytes.get(), mTotalBytes, mRequest.getUrl());
+        return true;
+    }
+
+    private synchronized void saveState() {
+        if (mChunks.isEmpty())
+            return;
+
+        Properties state = new Properties();
+        state.setProperty("url", mRequest.getUrl());
+        state.setProperty("total", Long.toString(mTotalBytes));
+        state.setProperty("ranged", Boolean.toString(mIsRanged));
+        state.setProperty("chunks", DownloadChunk.format(mChunks));
+        if (mValidator != null)
+            state.setProperty("validator", mValidator);
+
+        try (OutputStream out = new FileOutputStream(mStateFile)) {
+            state.store(out, null);
+        } catch (IOException e) {
+            Timber.w("Save download state failed: %s", e.getMessage());
+        }
+        mLastSaveTime = SystemClock.elapsedRealtime();
+    }
+
+    private synchronized void deleteState() {
+        mPartFile.delete();
+        mStateFile.delete();
+        mChunks.clear();
+        mDownloadedBytes.set(0);
+    }
+
+    private static String getSha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    private interface IoTask {
+        void run() throws IOException;
+    }
+
+    private static class HttpStatusException extends IOException {
+        final int code;
+
+        HttpStatusException(int code) {
+            super("Http error: " + code);
+            this.code = code;
+        }
+    }
+
+    private static class ResourceChangedException extends IOException {
+        ResourceChangedException() {
+            super("Download file has changed");
+        }
+    }
+}
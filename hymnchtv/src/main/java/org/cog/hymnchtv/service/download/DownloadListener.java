@@ -0,0 +1,49 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.service.download;
+
+/**
+ * The download job events listener of the DownloadEngine. All the events are called on the download
+ * worker threads; the UI listener must post the update to the main thread.
+ *
+ * @author Eng Chong Meng
+ */
+public interface DownloadListener {
+    /**
+     * The download progress, called at most once every DownloadEngine.PROGRESS_INTERVAL.
+     *
+     * @param job the download job
+     * @param downloadedBytes the number of bytes downloaded so far, including the resumed partial download
+     * @param totalBytes the file size; -1 if unknown
+     */
+    void onProgress(DownloadJob job, long downloadedBytes, long totalBytes);
+
+    /**
+     * The download has completed, and the file is moved to the request destFile.
+     *
+     * @param job the download job
+     */
+    void onCompleted(DownloadJob job);
+
+    /**
+     * The download has failed after all the retries, or is cancelled.
+     *
+     * @param job the download job
+     * @param reason the failure reason
+     */
+    void onFailed(DownloadJob job, String reason);
+}
@@ -0,0 +1,86 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.service.download;
+
+import java.io.File;
+
+/**
+ * The media file download request of the DownloadEngine.
+ *
+ * @author Eng Chong Meng
+ */
+public class DownloadRequest {
+    private final String mUrl;
+    private final File mDestFile;
+
+    /* The expected sha-256 hex digest of the downloaded file; null if not verified */
+    private String mSha256 = null;
+
+    /* The minimum valid downloaded file size; some sites return a dummy file for non-existing link */
+    private long mMinSize = 0;
+
+    /**
+     * Create a download request.
+     *
+     * @param url the encoded download link
+     * @param destFile the destination file on the download completion
+     */
+    public DownloadRequest(String url, File destFile) {
+        mUrl = url;
+        mDestFile = destFile;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public File getDestFile() {
+        return mDestFile;
+    }
+
+    public String getSha256() {
+        return mSha256;
+    }
+
+    /**
+     * Verify the downloaded file with the given sha-256 hex digest.
+     *
+     * @param sha256 the expected sha-256 hex digest of the file
+     *
+     * @return this request
+     */
+    public DownloadRequest setSha256(String sha256) {
+        mSha256 = sha256;
+        return this;
+    }
+
+    public long getMinSize() {
+        return mMinSize;
+    }
+
+    /**
+     * Treat the downloaded file smaller than minSize as failed.
+     *
+     * @param minSize the minimum valid file size in bytes
+     *
+     * @return this request
+     */
+    public DownloadRequest setMinSize(long minSize) {
+        mMinSize = minSize;
+        return this;
+    }
+}
@@ -0,0 +1,635 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.service.download;
+
+import static org.cog.hymnchtv.MainActivity.HYMN_BB;
+import static org.cog.hymnchtv.MainActivity.HYMN_DB;
+import static org.cog.hymnchtv.MainActivity.HYMN_ER;
+import static org.cog.hymnchtv.MainActivity.HYMN_XB;
+import static org.cog.hymnchtv.MainActivity.HYMN_XG;
+import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_BB_NO_MAX;
+import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_DB_NO_MAX;
+import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_ER_NO_MAX;
+import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_XB_NO_MAX;
+import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_XG_NO_MAX;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cog.hymnchtv.ContentHandler;
+import org.cog.hymnchtv.HymnsApp;
+import org.cog.hymnchtv.MediaType;
+import org.cog.hymnchtv.mediaconfig.MediaConfig;
+import org.cog.hymnchtv.persistance.FileBackend;
+import org.cog.hymnchtv.utils.HymnCatalog;
+
+import timber.log.Timber;
+
+/**
+ * The offline pack scheduler queues the download of all the missing HYMN_CHANGSHI/HYMN_BANZOU media files of
+ * a hymn book or a hymnNo range; so the device can be fully provisioned for use without network connectivity.
+ *
+ * The pack queue is persisted, and the downloads are run by the OfflinePackService JobScheduler job, only when
+ * the user selected network and charging constraints are met. When the job is stopped e.g. on the constraints
+ * lost, all the active downloads are paused and are then resumed from the partial download on the next run.
+ * A pack is removed from the queue only after all its media files have been downloaded. The pack with any failed
+ * media file is kept in the queue, and is scanned again for its missing media files on the next run i.e. rescheduled
+ * with the JobScheduler backoff; it is no longer run after MAX_PACK_RUNS, and is shown as incomplete in the queue.
+ *
+ * All the scheduler states are accessed on the main thread only.
+ *
+ * @author Eng Chong Meng
+ */
+public class OfflinePackScheduler implements DownloadListener {
+    /* The offline pack queue and settings */
+    private static final String PREF_OFFLINE_PACK = "OfflinePack";
+    private static final String PREF_PACK_QUEUE = "PackQueue";
+    private static final String PREF_MAX_JOBS = "MaxJobs";
+    private static final String PREF_UNMETERED_ONLY = "UnmeteredOnly";
+    private static final String PREF_CHARGING_ONLY = "ChargingOnly";
+
+    public static final int DEFAULT_MAX_JOBS = 2;
+    public static final int MAX_JOBS_LIMIT = 6;
+
+    /* The hymn books with the predefined online media download links, and their max hymnNo */
+    public static final Map<String, Integer> PACK_HYMN_TYPES = Map.of(
+            HYMN_DB, HYMN_DB_NO_MAX,
+            HYMN_BB, HYMN_BB_NO_MAX,
+            HYMN_XB, HYMN_XB_NO_MAX,
+            HYMN_XG, HYMN_XG_NO_MAX,
+            HYMN_ER, HYMN_ER_NO_MAX
+    );
+
+    private static final int JOB_ID = 0x4f50;
+
+    /* The maximum number of the job runs of a pack with any media file failed */
+    private static final int MAX_PACK_RUNS = 3;
+
+    // The minimum valid media file size; the server returns a tiny file if the file is not found online
+    private static final long MIN_FILE_SIZE = 200;
+
+    /* The aggregate progress report and throughput sampling interval */
+    private static final long PROGRESS_INTERVAL = 1000; // ms
+
+    private static OfflinePackScheduler mInstance = null;
+
+    private final Context mContext;
+    private final SharedPreferences mPref;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /* The persisted pack queue */
+    private final List<Pack> mPacks = new ArrayList<>();
+
+    /* The running job and its pack media files; the pending files are downloaded in queue order */
+    private JobService mJobService = null;
+    private JobParameters mJobParams = null;
+    private final List<Pack> mRunPacks = new ArrayList<>();
+    private final Deque<DownloadRequest> mPendingFiles = new ArrayDeque<>();
+    private final Set<DownloadJob> mActiveJobs = new HashSet<>();
+
+    /* The pack of each pending or active media file of the running job, keyed by the destFile */
+    private final Map<File, Pack> mFilePacks = new HashMap<>();
+
+    /* The aggregate progress of the running job */
+    private int mTotalCount;
+    private int mCompletedCount;
+    private int mFailedCount;
+    private int mDeferredCount;
+    private int mDownloadedCount;
+    private long mCompletedBytes;
+    private final ThroughputEstimator mEstimator = new ThroughputEstimator();
+
+    private ProgressListener mProgressListener = null;
+
+    private OfflinePackScheduler(Context context) {
+        mContext = context;
+        mPref = context.getSharedPreferences(PREF_OFFLINE_PACK, Context.MODE_PRIVATE);
+
+        String packQueue = mPref.getString(PREF_PACK_QUEUE, "");
+        for (String packString : packQueue.split(";")) {
+            Pack pack = Pack.fromString(packString);
+            if (pack != null) {
+                mPacks.add(pack);
+            }
+        }
+    }
+
+    public static synchronized OfflinePackScheduler getInstance() {
+        if (mInstance == null) {
+            mInstance = new OfflinePackScheduler(HymnsApp.getGlobalContext());
+        }
+        return mInstance;
+    }
+
+    /**
+     * The aggregate offline pack download progress listener; called on the main thread.
+     */
+    public interface ProgressListener {
+        /**
+         * @param completed the number of media files downloaded in this run
+         * @param failed the number of media files failed in this run
+         * @param total the number of media files to download in this run
+         * @param bytesPerSecond the aggregate download throughput
+         * @param etaSeconds the estimated remaining time; -1 if unknown
+         */
+        void onPackProgress(int completed, int failed, int total, long bytesPerSecond, long etaSeconds);
+
+        /**
+         * The offline pack queue or running state has changed.
+         */
+        void onPackStateChanged();
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        mProgressListener = listener;
+    }
+
+    /**
+     * Queue the offline pack of the given hymn book range, and schedule its download.
+     *
+     * @param hymnType the hymnType, one of PACK_HYMN_TYPES
+     * @param mediaType HYMN_CHANGSHI or HYMN_BANZOU
+     * @param fromNo the first hymnNo
+     * @param toNo the last hymnNo, inclusive
+     */
+    public void addPack(String hymnType, MediaType mediaType, int fromNo, int toNo) {
+        Integer maxNo = PACK_HYMN_TYPES.get(hymnType);
+        if (maxNo == null)
+            return;
+
+        Pack pack = new Pack(hymnType, mediaType, Math.max(1, fromNo), Math.min(maxNo, toNo));
+        mPacks.add(pack);
+        savePackQueue();
+
+        // Include the new pack into the running job; else schedule a new job
+        if (mJobParams != null) {
+            mRunPacks.add(pack);
+            loadPackFiles(pack);
+        }
+        else {
+            scheduleJob();
+        }
+        notifyStateChanged();
+    }
+
+    /**
+     * Clear the offline pack queue, and stop all its active downloads.
+     */
+    public void cancelAll() {
+        mPacks.clear();
+        savePackQueue();
+        getJobScheduler().cancel(JOB_ID);
+        if (mJobParams != null) {
+            stopRun();
+            mJobService.jobFinished(mJobParams, false);
+            mJobParams = null;
+            mJobService = null;
+        }
+        notifyStateChanged();
+    }
+
+    public List<Pack> getPacks() {
+        return new ArrayList<>(mPacks);
+    }
+
+    public boolean isRunning() {
+        return mJobParams != null;
+    }
+
+    public int getMaxJobs() {
+        return mPref.getInt(PREF_MAX_JOBS, DEFAULT_MAX_JOBS);
+    }
+
+    public boolean isUnmeteredOnly() {
+        return mPref.getBoolean(PREF_UNMETERED_ONLY, true);
+    }
+
+    public boolean isChargingOnly() {
+        return mPref.getBoolean(PREF_CHARGING_ONLY, false);
+    }
+
+    /**
+     * Update the download settings; the pending pack job is rescheduled with the new constraints.
+     *
+     * @param maxJobs the maximum number of concurrent downloads
+     * @param unmeteredOnly download only on unmetered network e.g. Wi-Fi
+     * @param chargingOnly download only while the device is charging
+     */
+    public void setSettings(int maxJobs, boolean unmeteredOnly, boolean chargingOnly) {
+        maxJobs = Math.max(1, Math.min(MAX_JOBS_LIMIT, maxJobs));
+        boolean isConstraintsChanged = (unmeteredOnly != isUnmeteredOnly()) || (chargingOnly != isChargingOnly());
+        mPref.edit()
+                .putInt(PREF_MAX_JOBS, maxJobs)
+                .putBoolean(PREF_UNMETERED_ONLY, unmeteredOnly)
+                .putBoolean(PREF_CHARGING_ONLY, chargingOnly)
+                .apply();
+
+        if (mJobParams != null) {
+            setEngineLimit(maxJobs);
+            startDownloads();
+        }
+
+        // Rescheduling stops the running job; it is then restarted once the new constraints are met
+        if (isConstraintsChanged && hasRunnablePack()) {
+            scheduleJob();
+        }
+    }
+
+    private void scheduleJob() {
+        JobInfo jobInfo = new JobInfo.Builder(JOB_ID, new ComponentName(mContext, OfflinePackService.class))
+                .setRequiredNetworkType(isUnmeteredOnly() ? JobInfo.NETWORK_TYPE_UNMETERED : JobInfo.NETWORK_TYPE_ANY)
+                .setRequiresCharging(isChargingOnly())
+                .setPersisted(true)
+                .build();
+        if (getJobScheduler().schedule(jobInfo) != JobScheduler.RESULT_SUCCESS) {
+            Timber.e("Offline pack job schedule failed");
+        }
+    }
+
+    private JobScheduler getJobScheduler() {
+        return (JobScheduler) mContext.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    }
+
+    /**
+     * Start the offline pack job run; called from OfflinePackService.
+     *
+     * @return true if the job is running, false if there is nothing to do
+     */
+    boolean onStartJob(JobService jobService, JobParameters params) {
+        mRunPacks.clear();
+        for (Pack pack : mPacks) {
+            if (!pack.isIncomplete())
+                mRunPacks.add(pack);
+        }
+        if (mRunPacks.isEmpty())
+            return false;
+
+        mJobService = jobService;
+        mJobParams = params;
+        mPendingFiles.clear();
+        mFilePacks.clear();
+        mTotalCount = mCompletedCount = mFailedCount = mDeferredCount = 0;
+        mDownloadedCount = 0;
+        mCompletedBytes = 0;
+        mEstimator.reset();
+
+        setEngineLimit(getMaxJobs());
+        for (Pack pack : mRunPacks) {
+            pack.isLoaded = false;
+            pack.missingCount = 0;
+            loadPackFiles(pack);
+        }
+        mHandler.postDelayed(progressReporter, PROGRESS_INTERVAL);
+        notifyStateChanged();
+        return true;
+    }
+
+    /**
+     * Stop the running offline pack job e.g. on the constraints lost; called from OfflinePackService.
+     * The active downloads are paused, and are resumed on the next job run.
+     */
+    void onStopJob() {
+        if (mJobParams != null) {
+            Timber.d("Offline pack job stopped: %s/%s", mCompletedCount, mTotalCount);
+            stopRun();
+            mJobParams = null;
+            mJobService = null;
+            notifyStateChanged();
+        }
+    }
+
+    private void stopRun() {
+        mHandler.removeCallbacks(progressReporter);
+        mPendingFiles.clear();
+        mFilePacks.clear();
+        for (DownloadJob job : mActiveJobs) {
+            job.cancel();
+        }
+        mActiveJobs.clear();
+    }
+
+    /**
+     * Leave one extra download job slot for the user initiated media download while the offline pack is running.
+     */
+    private void setEngineLimit(int maxJobs) {
+        DownloadEngine.getInstance().setMaxJobs(maxJobs + 1);
+    }
+
+    /**
+     * Find all the missing media files of the given pack in a background thread, and queue them for download.
+     */
+    private void loadPackFiles(Pack pack) {
+        final JobParameters params = mJobParams;
+        new Thread(() -> {
+            List<DownloadRequest> requests = getMissingFiles(pack);
+            mHandler.post(() -> {
+                // Drop the result if the job has since been stopped
+                if (params != mJobParams)
+                    return;
+
+                Timber.d("Offline pack %s: %s missing files", pack, requests.size());
+                for (DownloadRequest request : requests) {
+                    mFilePacks.put(request.getDestFile(), pack);
+                }
+                mPendingFiles.addAll(requests);
+                mTotalCount += requests.size();
+                pack.isLoaded = true;
+                startDownloads();
+                checkRunCompleted();
+            });
+        }).start();
+    }
+
+    private static List<DownloadRequest> getMissingFiles(Pack pack) {
+        List<DownloadRequest> requests = new ArrayList<>();
+        String dir = pack.hymnType + MediaConfig.mediaDir.get(pack.mediaType);
+        File subDir = FileBackend.getHymnchtvStore(dir, true);
+        if (subDir == null) {
+            Timber.w("No storage access permission for offline pack: %s", dir);
+            return requests;
+        }
+
+        HymnCatalog hymnCatalog = HymnCatalog.getInstance();
+        for (int hymnNo = pack.fromNo; hymnNo <= pack.toNo; hymnNo++) {
+            if (!hymnCatalog.contains(pack.hymnType, hymnNo) || ContentHandler.isFileExist(dir, hymnNo, null))
+                continue;
+
+            // The built-in midi files are used for the hymn banzou if available
+            if (pack.mediaType == MediaType.HYMN_BANZOU && HymnsApp.getFileResId(getMidiName(pack.hymnType, hymnNo), "raw") != 0)
+                continue;
+
+            String[] dnLink = ContentHandler.getDownloadLink(pack.hymnType, hymnNo, pack.mediaType);
+            if (dnLink != null) {
+                // Same local media file name as the user initiated download
+                String hymnTitle = hymnCatalog.getTitle(pack.hymnType, hymnNo).replaceAll("[，、‘’！：；。？]", "");
+                File destFile = new File(subDir, dnLink[0] + hymnNo + hymnTitle + dnLink[1]);
+                requests.add(new DownloadRequest(dnLink[2], destFile).setMinSize(MIN_FILE_SIZE));
+            }
+        }
+        return requests;
+    }
+
+    private static String getMidiName(String hymnType, int hymnNo) {
+        return (HYMN_DB.equals(hymnType) ? ContentHandler.MIDI_DB : ContentHandler.MIDI_BB) + hymnNo;
+    }
+
+    /**
+     * Start the pending downloads up to the concurrent downloads limit.
+     */
+    private void startDownloads() {
+        DownloadEngine engine = DownloadEngine.getInstance();
+        int maxJobs = getMaxJobs();
+        while (mActiveJobs.size() < maxJobs && !mPendingFiles.isEmpty()) {
+            DownloadRequest request = mPendingFiles.poll();
+            // Skip the file already downloaded since the pack is loaded
+            if (request.getDestFile().exists()) {
+                mFilePacks.remove(request.getDestFile());
+                mCompletedCount++;
+                continue;
+            }
+
+            // Skip the file being downloaded by the user; its pack is checked again on the next run,
+            // as the user download outcome is not known here
+            if (engine.getJob(request.getDestFile()) != null) {
+                mDeferredCount++;
+                onFileIncomplete(request);
+                continue;
+            }
+            mActiveJobs.add(engine.enqueue(request, this));
+        }
+    }
+
+    @Override
+    public void onProgress(DownloadJob job, long downloadedBytes, long totalBytes) {
+        // The aggregate progress is sampled by the progressReporter
+    }
+
+    @Override
+    public void onCompleted(DownloadJob job) {
+        mHandler.post(() -> {
+            if (mActiveJobs.remove(job)) {
+                mFilePacks.remove(job.getRequest().getDestFile());
+                mCompletedCount++;
+                mDownloadedCount++;
+                mCompletedBytes += job.getDownloadedBytes();
+                startDownloads();
+                checkRunCompleted();
+            }
+        });
+    }
+
+    @Override
+    public void onFailed(DownloadJob job, String reason) {
+        mHandler.post(() -> {
+            if (mActiveJobs.remove(job)) {
+                mFailedCount++;
+                onFileIncomplete(job.getRequest());
+                Timber.w("Offline pack file failed: %s; %s", job.getRequest().getDestFile().getName(), reason);
+                startDownloads();
+                checkRunCompleted();
+            }
+        });
+    }
+
+    private void onFileIncomplete(DownloadRequest request) {
+        Pack pack = mFilePacks.remove(request.getDestFile());
+        if (pack != null) {
+            pack.missingCount++;
+        }
+    }
+
+    /**
+     * Once all the media files of the run have been attempted: remove the fully downloaded packs from the queue;
+     * and reschedule the packs with any media file failed or deferred, up to MAX_PACK_RUNS.
+     */
+    private void checkRunCompleted() {
+        if (mJobParams == null || !mActiveJobs.isEmpty() || !mPendingFiles.isEmpty())
+            return;
+
+        for (Pack pack : mRunPacks) {
+            if (!pack.isLoaded)
+                return;
+        }
+
+        Timber.d("Offline pack completed: %s/%s; failed: %s; deferred: %s",
+                mCompletedCount, mTotalCount, mFailedCount, mDeferredCount);
+        reportProgress();
+        mHandler.removeCallbacks(progressReporter);
+
+        boolean needsReschedule = false;
+        for (Pack pack : mRunPacks) {
+            if (pack.missingCount == 0) {
+                mPacks.remove(pack);
+            }
+            else {
+                pack.failedRuns++;
+                needsReschedule |= !pack.isIncomplete();
+                Timber.w("Offline pack %s: %s files missing after run %s", pack, pack.missingCount, pack.failedRuns);
+            }
+        }
+        savePackQueue();
+
+        // The failed packs are run again with the JobScheduler backoff; else run again for the packs added after this run
+        JobService jobService = mJobService;
+        JobParameters params = mJobParams;
+        mJobService = null;
+        mJobParams = null;
+        jobService.jobFinished(params, needsReschedule);
+
+        if (!needsReschedule && hasRunnablePack()) {
+            scheduleJob();
+        }
+        notifyStateChanged();
+    }
+
+    private boolean hasRunnablePack() {
+        for (Pack pack : mPacks) {
+            if (!pack.isIncomplete())
+                return true;
+        }
+        return false;
+    }
+
+    private final Runnable progressReporter = new Runnable() {
+        @Override
+        public void run() {
+            reportProgress();
+            mHandler.postDelayed(this, PROGRESS_INTERVAL);
+        }
+    };
+
+    /**
+     * Report the aggregate throughput, and the remaining time with the total size estimated from the average size
+     * of the media files known so far.
+     */
+    private void reportProgress() {
+        long bytes = mCompletedBytes;
+        long knownBytes = mCompletedBytes;
+        int knownCount = mDownloadedCount;
+        for (DownloadJob job : mActiveJobs) {
+            bytes += job.getDownloadedBytes();
+            if (job.getTotalBytes() > 0) {
+                knownBytes += job.getTotalBytes();
+                knownCount++;
+            }
+        }
+
+        // The remaining files of unknown size, excluding the files in progress with known size
+        int remainCount = mTotalCount - mCompletedCount - mFailedCount - mDeferredCount - (knownCount - mDownloadedCount);
+        long totalBytes = (knownCount == 0) ? -1 : knownBytes + (knownBytes / knownCount) * Math.max(0, remainCount);
+        mEstimator.update(bytes, totalBytes);
+
+        if (mProgressListener != null) {
+            mProgressListener.onPackProgress(mCompletedCount, mFailedCount, mTotalCount,
+                    mEstimator.getBytesPerSecond(), mEstimator.getRemainingSeconds());
+        }
+    }
+
+    private void notifyStateChanged() {
+        if (mProgressListener != null) {
+            mProgressListener.onPackStateChanged();
+        }
+    }
+
+    private void savePackQueue() {
+        StringBuilder packQueue = new StringBuilder();
+        for (Pack pack : mPacks) {
+            if (packQueue.length() > 0)
+                packQueue.append(';');
+            packQueue.append(pack);
+        }
+        mPref.edit().putString(PREF_PACK_QUEUE, packQueue.toString()).apply();
+    }
+
+    /**
+     * An offline pack of the media files of a hymn book range.
+     */
+    public static class Pack {
+        public final String hymnType;
+        public final MediaType mediaType;
+        public final int fromNo;
+        public final int toNo;
+
+        /* The number of the job runs ended with any media file missing, and the missing files of the last run */
+        private int failedRuns = 0;
+        private int missingCount = 0;
+
+        /* Set when its missing media files are queued for download in the running job */
+        private boolean isLoaded = false;
+
+        Pack(String hymnType, MediaType mediaType, int fromNo, int toNo) {
+            this.hymnType = hymnType;
+            this.mediaType = mediaType;
+            this.fromNo = fromNo;
+            this.toNo = toNo;
+        }
+
+        /**
+         * @return true if the pack has any media file still missing after MAX_PACK_RUNS; it is no longer run
+         */
+        public boolean isIncomplete() {
+            return failedRuns >= MAX_PACK_RUNS;
+        }
+
+        /**
+         * @return the number of the media files missing in the last run
+         */
+        public int getMissingCount() {
+            return missingCount;
+        }
+
+        static Pack fromString(String packString) {
+            String[] values = packString.split(",");
+            if (values.length != 4 && values.length != 6)
+                return null;
+
+            try {
+                Pack pack = new Pack(values[0], MediaType.valueOf(values[1]), Integer.parseInt(values[2]), Integer.parseInt(values[3]));
+                if (values.length == 6) {
+                    pack.failedRuns = Integer.parseInt(values[4]);
+                    pack.missingCount = Integer.parseInt(values[5]);
+                }
+                return pack;
+            } catch (IllegalArgumentException e) {
+                Timber.w("Invalid offline pack: %s", packString);
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return hymnType + "," + mediaType.name() + "," + fromNo + "," + toNo + "," + failedRuns + "," + missingCount;
+        }
+    }
+}
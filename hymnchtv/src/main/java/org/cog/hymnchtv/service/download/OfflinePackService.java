@@ -0,0 +1,45 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.service.download;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+
+/**
+ * The JobScheduler job service of the OfflinePackScheduler; the job is run only when its network and
+ * charging constraints are met, and is persisted across the device reboot.
+ *
+ * @author Eng Chong Meng
+ */
+public class OfflinePackService extends JobService {
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        return OfflinePackScheduler.getInstance().onStartJob(this, params);
+    }
+
+    /**
+     * Pause the active downloads when the job constraints are no longer met, or the job execution limit is reached.
+     *
+     * @return true to reschedule the job, so the remaining downloads are resumed on the next run
+     */
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        OfflinePackScheduler scheduler = OfflinePackScheduler.getInstance();
+        scheduler.onStopJob();
+        return !scheduler.getPacks().isEmpty();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.service.download;
+
+import android.os.SystemClock;
+
+/**
+ * The download throughput and remaining time estimator, shared by all the download progress displays.
+ * The throughput is an exponentially weighted moving average over time, so it is independent of the
+ * progress update rate i.e. the irregular progress events still give a stable and accurate speed display.
+ *
+ * The estimator is thread-safe, so it can be updated directly from the download worker threads and read
+ * on the UI thread; and it makes no allocation on each update.
+ *
+ * @author Eng Chong Meng
+ */
+public class ThroughputEstimator {
+    /* The default time constant of the moving average; a larger value gives a smoother but slower response */
+    public static final long DEFAULT_TIME_CONSTANT = 3000; // ms
+
+    private final double mTimeConstant;
+
+    private long mTotalBytes = -1;
+    private long mTransferredBytes = 0;
+    private long mLastTime = -1;
+
+    /* The smoothed throughput in bytes per millisecond */
+    private double mRate = 0;
+
+    public ThroughputEstimator() {
+        this(DEFAULT_TIME_CONSTANT);
+    }
+
+    /**
+     * @param timeConstant the moving average time constant in ms
+     */
+    public ThroughputEstimator(long timeConstant) {
+        mTimeConstant = timeConstant;
+    }
+
+    /**
+     * Reset the estimator for a new transfer.
+     */
+    public synchronized void reset() {
+        mTotalBytes = -1;
+        mTransferredBytes = 0;
+        mLastTime = -1;
+        mRate = 0;
+    }
+
+    /**
+     * Update the estimator with the transfer progress at the current time.
+     *
+     * @param transferredBytes the total number of bytes transferred so far
+     * @param totalBytes the transfer size; -1 if unknown
+     */
+    public void update(long transferredBytes, long totalBytes) {
+        update(transferredBytes, totalBytes, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Update the estimator with the transfer progress.
+     *
+     * @param transferredBytes the total number of bytes transferred so far
+     * @param totalBytes the transfer size; -1 if unknown
+     * @param timestamp the progress time in ms, on a monotonic clock e.g. SystemClock.elapsedRealtime()
+     */
+    public synchronized void update(long transferredBytes, long totalBytes, long timestamp) {
+        mTotalBytes = totalBytes;
+        if (mLastTime == -1 || transferredBytes < mTransferredBytes) {
+            // First sample, or the transfer has restarted from a lower position
+            mLastTime = timestamp;
+            mTransferredBytes = transferredBytes;
+            return;
+        }
+
+        long timeElapsed = timestamp - mLastTime;
+        if (timeElapsed <= 0)
+            return;
+
+        double rate = (double) (transferredBytes - mTransferredBytes) / timeElapsed;
+        if (mRate == 0) {
+            mRate = rate;
+        }
+        else {
+            double alpha = 1 - Math.exp(-timeElapsed / mTimeConstant);
+            mRate += alpha * (rate - mRate);
+        }
+        mTransferredBytes = transferredBytes;
+        mLastTime = timestamp;
+    }
+
+    public synchronized long getTransferredBytes() {
+        return mTransferredBytes;
+    }
+
+    public synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    /**
+     * @return the smoothed throughput in bytes per second
+     */
+    public synchronized long getBytesPerSecond() {
+        return (long) (mRate * 1000);
+    }
+
+    /**
+     * @return the estimated remaining time in seconds; -1 if unknown
+     */
+    public synchronized long getRemainingSeconds() {
+        if (mTotalBytes <= 0 || mRate <= 0)
+            return -1;
+
+        return (long) (Math.max(0, mTotalBytes - mTransferredBytes) / (mRate * 1000));
+    }
+}
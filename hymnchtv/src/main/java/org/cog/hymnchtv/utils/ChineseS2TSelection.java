@@ -28,6 +28,7 @@ import android.widget.RadioGroup;
 
 import androidx.activity.OnBackPressedCallback;
 
+import com.zqc.opencc.android.lib.ChineseConverter;
 import com.zqc.opencc.android.lib.ConversionType;
 
 import org.cog.hymnchtv.BaseActivity;
@@ -135,6 +136,7 @@ public class ChineseS2TSelection extends BaseActivity implements View.OnClickLis
             SharedPreferences.Editor editor = mSharedPref.edit();
             editor.putString(ContentView.PREF_CONVERSION_TYPE, mConversionType.toString());
             editor.apply();
+            ChineseConverter.prepare(this, mConversionType);
         }
 
         Intent result = new Intent();
@@ -0,0 +1,203 @@
+/*
+ * hymnchtv: COG hymns' lyrics viewer and player client
+ * Copyright 2020 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cog.hymnchtv.utils;
+
+import android.content.res.AssetManager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.cog.hymnchtv.HymnsApp;
+import org.cog.hymnchtv.search.LyricsIndex;
+
+import timber.log.Timber;
+
+/**
+ * The hymn metadata catalog generated at build time by the HymnCatalogBuilder, with one record per hymn:
+ * the hymn category, title, title info, first lyrics phrase, English hymn number and lyrics score page count.
+ *
+ * The catalog is loaded once into the primitive arrays, indexed directly by the hymn key; so all the lookups
+ * are done in memory without any lyrics or toc file access. The lookup of a hymn not in the catalog returns
+ * the empty string, with the page count defaults to 1.
+ *
+ * @author Eng Chong Meng
+ */
+public class HymnCatalog {
+    /* The build time generated hymn catalog asset; see hymnchtv build.gradle generateHymnCatalog */
+    public static final String HYMN_CATALOG = "hymn_catalog.idx";
+
+    private static final int MAGIC = 0x48594354;
+    private static final int VERSION = 1;
+
+    /* The record fields in the text block */
+    private static final int FIELD_CATEGORY = 0;
+    private static final int FIELD_TITLE = 1;
+    private static final int FIELD_TITLE_INFO = 2;
+    private static final int FIELD_PHRASE = 3;
+    private static final int FIELD_COUNT = 4;
+
+    private static HymnCatalog mInstance = null;
+
+    /* The record index of each hymn key; -1 if the hymn is not in the catalog */
+    private final int[] mRecords;
+
+    private final short[] mEngNos;
+    private final byte[] mPages;
+
+    /* The start of each record field in mText; the end of a field is the start of the next field */
+    private final int[] mBounds;
+    private final char[] mText;
+
+    private HymnCatalog() {
+        mRecords = new int[LyricsIndex.HYMN_TYPES.length << 12];
+        Arrays.fill(mRecords, -1);
+        mEngNos = new short[0];
+        mPages = new byte[0];
+        mBounds = new int[]{0};
+        mText = new char[0];
+    }
+
+    private HymnCatalog(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Invalid hymn catalog header");
+        }
+
+        int count = in.readInt();
+        mRecords = new int[LyricsIndex.HYMN_TYPES.length << 12];
+        Arrays.fill(mRecords, -1);
+        for (int i = 0; i < count; i++) {
+            mRecords[in.readInt()] = i;
+        }
+
+        mEngNos = new short[count];
+        for (int i = 0; i < count; i++) {
+            mEngNos[i] = in.readShort();
+        }
+
+        mPages = new byte[count];
+        in.readFully(mPages);
+
+        mBounds = new int[FIELD_COUNT * count + 1];
+        for (int i = 0; i < mBounds.length; i++) {
+            mBounds[i] = in.readInt();
+        }
+
+        mText = new char[in.readInt()];
+        for (int i = 0; i < mText.length; i++) {
+            mText[i] = in.readChar();
+        }
+    }
+
+    /**
+     * Get the hymn catalog instance, loaded on first call. An empty catalog is returned if the catalog asset
+     * is not available.
+     *
+     * @return the HymnCatalog instance
+     */
+    public static synchronized HymnCatalog getInstance() {
+        if (mInstance == null) {
+            AssetManager assets = HymnsApp.getGlobalContext().getAssets();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(assets.open(HYMN_CATALOG)))) {
+                mInstance = new HymnCatalog(in);
+            } catch (IOException e) {
+                Timber.e("Hymn catalog not available: %s", e.getMessage());
+                mInstance = new HymnCatalog();
+            }
+        }
+        return mInstance;
+    }
+
+    /**
+     * Get the catalog record index of the given hymn.
+     *
+     * @return the record index, or -1 if the hymn is not in the catalog
+     */
+    private int getRecord(String hymnType, int hymnNo) {
+        int typeIdx = LyricsIndex.getTypeIndex(hymnType);
+        if (typeIdx == -1 || hymnNo < 0 || hymnNo > 0xFFF)
+            return -1;
+        return mRecords[LyricsIndex.getHymnKey(typeIdx, hymnNo)];
+    }
+
+    private String getField(String hymnType, int hymnNo, int field) {
+        int record = getRecord(hymnType, hymnNo);
+        if (record == -1)
+            return "";
+
+        int start = mBounds[FIELD_COUNT * record + field];
+        return new String(mText, start, mBounds[FIELD_COUNT * record + field + 1] - start);
+    }
+
+    public boolean contains(String hymnType, int hymnNo) {
+        return getRecord(hymnType, hymnNo) != -1;
+    }
+
+    /**
+     * @return the hymn category e.g. 颂赞三一神; empty if none
+     */
+    public String getCategory(String hymnType, int hymnNo) {
+        return getField(hymnType, hymnNo, FIELD_CATEGORY);
+    }
+
+    /**
+     * @return the hymn title with the category stripped off
+     */
+    public String getTitle(String hymnType, int hymnNo) {
+        return getField(hymnType, hymnNo, FIELD_TITLE);
+    }
+
+    /**
+     * @return the hymn title with the category intact e.g. 颂赞三一神－他的计划
+     */
+    public String getFullTitle(String hymnType, int hymnNo) {
+        String category = getCategory(hymnType, hymnNo);
+        String title = getTitle(hymnType, hymnNo);
+        return category.isEmpty() ? title : category + "－" + title;
+    }
+
+    /**
+     * @return the hymn title additional info e.g.（诗篇二篇）（英1094）; empty if none
+     */
+    public String getTitleInfo(String hymnType, int hymnNo) {
+        return getField(hymnType, hymnNo, FIELD_TITLE_INFO);
+    }
+
+    /**
+     * @return the first phrase of the lyrics, with at least 6 characters if possible
+     */
+    public String getFirstPhrase(String hymnType, int hymnNo) {
+        return getField(hymnType, hymnNo, FIELD_PHRASE);
+    }
+
+    /**
+     * @return the English hymn number as in the toc ch2eng file; null if none
+     */
+    public Integer getEngNo(String hymnType, int hymnNo) {
+        int record = getRecord(hymnType, hymnNo);
+        return (record == -1 || mEngNos[record] == 0) ? null : (int) mEngNos[record];
+    }
+
+    /**
+     * @return the number of the lyrics score pages; 1 if the hymn is not in the catalog
+     */
+    public int getPageCount(String hymnType, int hymnNo) {
+        int record = getRecord(hymnType, hymnNo);
+        return (record == -1) ? 1 : mPages[record];
+    }
+}
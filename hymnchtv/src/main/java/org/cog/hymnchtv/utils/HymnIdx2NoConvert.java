@@ -31,9 +31,6 @@ import static org.cog.hymnchtv.utils.HymnNoValidate.HYMN_YB_NO_TMAX;
 import static org.cog.hymnchtv.utils.HymnNoValidate.rangeBbLimit;
 import static org.cog.hymnchtv.utils.HymnNoValidate.rangeErLimit;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import timber.log.Timber;
 
 /**
@@ -41,40 +38,11 @@ import timber.log.Timber;
  * It also checks for converted hymn lyrics number is within the supported ranges.
  * Currently, the HymnTypes supported are 儿童诗歌, 新歌颂咏, 新詩歌本, 补充本 and 大本詩歌
  * The returned result is used by the caller to create the reference and fetch the actual content file
+ * The number of lyrics score pages of the hymn is taken from the HymnCatalog
  *
  * @author Eng Chong Meng
  */
 public class HymnIdx2NoConvert {
-    /**
-     * Lyric scores with multi-pages for the specified 补充本 hymn number
-     */
-    private static final Map<Integer, Integer> hymn_pages_bb = new HashMap<Integer, Integer>() {{
-        put(9, 2);
-        put(148, 2);
-        put(257, 2);
-        put(512, 2);
-        put(702, 3);
-        put(909, 3);
-    }};
-
-    /**
-     * Lyric scores with multi-pages for the specified 大本詩歌 hymn number
-     */
-    private static final Map<Integer, Integer> hymn_pages_db = new HashMap<Integer, Integer>() {{
-        put(128, 2);
-        put(152, 5);
-        put(164, 1);
-        put(188, 2);
-        put(310, 2);
-        put(316, 2);
-        put(388, 3);
-        put(465, 3);
-        put(469, 2);
-        put(717, 2);
-        put(758, 2);
-        put(776, 2);
-    }};
-
     /* 补充本: hymn maximum number in per 100, 200, 300 ranges etc; it is used to compute valid hymn number */
     // Auto generated valid range for 補充本 based on rangeBbLimit
     private static final int[] rangeMaxBB = new int[rangeBbLimit.length];
@@ -129,9 +97,6 @@ public class HymnIdx2NoConvert {
         /* Cumulative of previous ranges unused index; use as start of the next 100 range index */
         int idxUnused;
 
-        /* The number of lyrics scores pages for computed hymnNo */
-        Integer pageCount;
-
         switch (hymnType) {
             // 儿童诗歌
             case HYMN_ER:
@@ -200,16 +165,14 @@ public class HymnIdx2NoConvert {
                 }
 
                 if (hymnNo <= HYMN_BB_NO_MAX) {
-                    pageCount = hymn_pages_bb.get(hymnNo);
-                    hymn_No_Page = new int[]{hymnNo, (pageCount == null) ? 1 : pageCount};
+                    hymn_No_Page = new int[]{hymnNo, HymnCatalog.getInstance().getPageCount(hymnType, hymnNo)};
                 }
                 break;
 
             // 大本詩歌
             case HYMN_DB:
                 if (hymnNo <= HYMN_DB_NO_TMAX) {
-                    pageCount = hymn_pages_db.get(hymnNo);
-                    hymn_No_Page = new int[]{hymnNo, (pageCount == null) ? 1 : pageCount};
+                    hymn_No_Page = new int[]{hymnNo, HymnCatalog.getInstance().getPageCount(hymnType, hymnNo)};
                 }
                 break;
         }
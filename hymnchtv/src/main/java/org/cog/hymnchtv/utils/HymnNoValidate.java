@@ -123,6 +123,36 @@ public class HymnNoValidate {
         }
     }
 
+    /**
+     * Get the next hymnNo of the given hymnType, skipping over the invalid range defined
+     * in rangeBbLimit for 補充本 and rangeErLimit for 儿童诗歌.
+     * Note: The returned hymnNo may be over the hymnType max hymnNo, or be one with no contents e.g. rangeXbInvalid.
+     *
+     * @param hymnType The hymnTye
+     * @param hymnNo The current hymnNo
+     *
+     * @return the next hymnNo
+     */
+    public static int getNextHymnNo(String hymnType, int hymnNo) {
+        int[] rangeLimit = null;
+        if (HYMN_BB.equals(hymnType)) {
+            rangeLimit = rangeBbLimit;
+        }
+        else if (HYMN_ER.equals(hymnType)) {
+            rangeLimit = rangeErLimit;
+        }
+
+        hymnNo++;
+        if (rangeLimit != null) {
+            for (int rx = 0; rx < rangeLimit.length; rx++) {
+                if (hymnNo == rangeLimit[rx]) {
+                    return 100 * (rx + 1) + 1;
+                }
+            }
+        }
+        return hymnNo;
+    }
+
     /**
      * Check the hymnNo is valid for the given hymnType.
      *
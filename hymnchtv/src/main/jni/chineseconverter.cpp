@@ -1,22 +1,95 @@
 #include <jni.h>
 #include <malloc.h>
+#include <string>
+#include <vector>
 #include "Converter.hpp"
 #include "Config.hpp"
 
+#define LOG_TAG "ChineseConverter"
+
+#ifdef __ANDROID__
+#include <android/log.h>
+#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+#else
+// The host build e.g. for the benchmark module
+#include <cstdio>
+#define LOGE(...) (fprintf(stderr, LOG_TAG ": " __VA_ARGS__), fputc('\n', stderr))
+#endif
+
+/*
+ * The native converter handle is a heap allocated ConverterPtr, so the converter with all its loaded
+ * dictionaries is kept alive until the handle is released.
+ */
+static opencc::ConverterPtr *toConverter(jlong handle) {
+    return reinterpret_cast<opencc::ConverterPtr *>(handle);
+}
+
 extern "C"
-jstring
-Java_com_zqc_opencc_android_lib_ChineseConverter_convert(
-        JNIEnv *env, jclass type, jstring text_, jstring configFile_, jstring absoluteDataFolderPath_) {
-    const char *text = env->GetStringUTFChars(text_, 0);
+jlong
+Java_com_zqc_opencc_android_lib_NativeConverter_nativeCreate(
+        JNIEnv *env, jclass type, jstring configFile_, jstring absoluteDataFolderPath_) {
     const char *configFile = env->GetStringUTFChars(configFile_, 0);
     const char *absoluteDataFolderPath = env->GetStringUTFChars(absoluteDataFolderPath_, 0);
+    std::string configPath = std::string(absoluteDataFolderPath) + "/" + std::string(configFile);
 
-    opencc::Config config;
-    opencc::ConverterPtr converter = config.NewFromFile(std::string(absoluteDataFolderPath) + "/" + std::string(configFile));
-
-    env->ReleaseStringUTFChars(text_, text);
     env->ReleaseStringUTFChars(configFile_, configFile);
     env->ReleaseStringUTFChars(absoluteDataFolderPath_, absoluteDataFolderPath);
 
-    return env->NewStringUTF(converter->Convert(text).c_str());
-}
\ No newline at end of file
+    try {
+        opencc::Config config;
+        return reinterpret_cast<jlong>(new opencc::ConverterPtr(config.NewFromFile(configPath)));
+    } catch (const std::exception &e) {
+        LOGE("Failed to create converter %s: %s", configPath.c_str(), e.what());
+        return 0;
+    }
+}
+
+/*
+ * Convert all the packed utf-8 texts in the input direct buffer, with offsets[i] the start of text i and
+ * offsets[count] the end of the last text. The converted texts are returned packed in the same way, with
+ * their start offsets filled into outOffsets.
+ */
+extern "C"
+jbyteArray
+Java_com_zqc_opencc_android_lib_NativeConverter_nativeConvertBatch(
+        JNIEnv *env, jclass type, jlong handle, jobject input_, jintArray offsets_, jintArray outOffsets_) {
+    const char *input = static_cast<const char *>(env->GetDirectBufferAddress(input_));
+    jsize count = env->GetArrayLength(offsets_) - 1;
+
+    std::vector<jint> offsets(count + 1);
+    env->GetIntArrayRegion(offsets_, 0, count + 1, offsets.data());
+    if (input == nullptr && offsets[count] > 0) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), "Input is not a direct buffer");
+        return nullptr;
+    }
+
+    std::string output;
+    std::vector<jint> outOffsets(count + 1, 0);
+    try {
+        for (jsize i = 0; i < count; i++) {
+            jint length = offsets[i + 1] - offsets[i];
+            if (length > 0) {
+                output += (*toConverter(handle))->Convert(std::string(input + offsets[i], length));
+            }
+            outOffsets[i + 1] = static_cast<jint>(output.size());
+        }
+    } catch (const std::exception &e) {
+        // Never let the c++ exception cross the jni boundary; it aborts the process
+        LOGE("Failed to convert: %s", e.what());
+        env->ThrowNew(env->FindClass("java/lang/RuntimeException"), e.what());
+        return nullptr;
+    }
+    env->SetIntArrayRegion(outOffsets_, 0, count + 1, outOffsets.data());
+
+    jbyteArray result = env->NewByteArray(static_cast<jsize>(output.size()));
+    env->SetByteArrayRegion(result, 0, static_cast<jsize>(output.size()),
+                            reinterpret_cast<const jbyte *>(output.data()));
+    return result;
+}
+
+extern "C"
+void
+Java_com_zqc_opencc_android_lib_NativeConverter_nativeRelease(
+        JNIEnv *env, jclass type, jlong handle) {
+    delete toConverter(handle);
+}